@@ -0,0 +1,575 @@
+package ua.pro.baynova.duplicatefinder.app;
+
+import ua.pro.baynova.duplicatefinder.compare.DirectoryComparator;
+import ua.pro.baynova.duplicatefinder.concurrent.CancellationToken;
+import ua.pro.baynova.duplicatefinder.concurrent.MultiThreadFileIndexer;
+import ua.pro.baynova.duplicatefinder.concurrent.MultiThreadHashCalculator;
+import ua.pro.baynova.duplicatefinder.concurrent.ProgressTracker;
+import ua.pro.baynova.duplicatefinder.index.ExternalDuplicateFinder;
+import ua.pro.baynova.duplicatefinder.index.IndexScope;
+import ua.pro.baynova.duplicatefinder.index.IndexStorage;
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.DiskPathTable;
+import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+import ua.pro.baynova.duplicatefinder.scanner.ScanFilter;
+import ua.pro.baynova.duplicatefinder.util.Json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Точка входа командной строки:
+ * <pre>
+ *   index   &lt;директория&gt; [--output файл]            индексация и сохранение индекса
+ *   dupes   &lt;директория&gt; | --index файл [--top K]     группы дубликатов
+ *   compare &lt;директория A&gt; &lt;директория B&gt;           общее содержимое двух деревьев
+ *   query   &lt;файл индекса&gt; --hash|--path|--under|--ext|--size   запрос к сохраненному индексу
+ * </pre>
+ * Результат - один JSON-объект в stdout. Журнал библиотеки уходит в stderr с --verbose
+ * и отбрасывается без него, поэтому stdout можно сразу передавать в jq или другой программе.
+ *
+ * Старт без лишней работы: баннеров нет, пулы потоков и дайджесты создаются только
+ * той командой, которой они нужны (query и dupes --index не создают ни одного потока).
+ * Время от запуска до первого прочитанного байта выводится в поле timing.
+ */
+public final class DuplicateFinderCli {
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_ERROR = 1;
+    private static final int EXIT_USAGE = 2;
+
+    private static final Set<String> FLAGS = Set.of("verbose", "include-hidden", "archives", "xattr-cache");
+
+    private static final String USAGE = """
+            Использование: DuplicateFinderCli <команда> [аргументы] [опции]
+              index   <директория> [--output файл]
+              dupes   <директория> | --index файл [--top K [--ranking wasted|count|hash]]
+              compare <директория A> <директория B>
+              query   <файл индекса> (--hash H | --path P | --under DIR | --ext E | --size N)
+            Опции:
+              --threads N            потоков хеширования (по умолчанию - число ядер)
+              --algorithm ALG        MD5, SHA-1, SHA-256 (по умолчанию MD5)
+              --also ALG[,ALG]       дополнительные хеши за то же чтение
+              --engine ENGINE        memory (по умолчанию), streaming или external (только dupes)
+              --memory-mb N          память сортировки для external (по умолчанию 64)
+              --work-dir DIR         директория прогонов для external
+              --read-timeout-ms N    пропускать файлы, чтение которых зависло дольше N мс
+              --min-size N --max-size N --ext E[,E] --exclude-ext E[,E] --prune DIR[,DIR]
+              --include-hidden --archives --xattr-cache --verbose
+            """;
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final long startNanos;
+    private final long startupMillis;
+
+    private DuplicateFinderCli(PrintStream out, PrintStream err, long startNanos, long startupMillis) {
+        this.out = out;
+        this.err = err;
+        this.startNanos = startNanos;
+        this.startupMillis = startupMillis;
+    }
+
+    public static void main(String[] args) {
+        long startNanos = System.nanoTime();
+        // время старта JVM до main - без JMX, который сам стоит десятков миллисекунд
+        long startupMillis = ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
+
+        System.exit(new DuplicateFinderCli(System.out, System.err, startNanos, startupMillis).run(args));
+    }
+
+    /**
+     * Выполняет команду (для встраивания и тестов - без System.exit)
+     * @param args аргументы командной строки
+     * @param out куда писать JSON
+     * @param err куда писать ошибки и журнал с --verbose
+     * @return код выхода: 0 - успех, 1 - ошибка выполнения, 2 - неверные аргументы
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        return new DuplicateFinderCli(out, err, System.nanoTime(), -1).run(args);
+    }
+
+    private int run(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return EXIT_USAGE;
+        }
+
+        // библиотека пишет прогресс в System.out - на время команды он перенаправляется
+        PrintStream originalOut = System.out;
+        System.setOut(options.has("verbose") ? err : new PrintStream(OutputStream.nullOutputStream()));
+
+        try {
+            StringBuilder json = switch (options.command) {
+                case "index" -> index(options);
+                case "dupes" -> dupes(options);
+                case "compare" -> compare(options);
+                case "query" -> query(options);
+                default -> throw new IllegalArgumentException("Неизвестная команда: " + options.command);
+            };
+            // null - команда уже вывела результат потоком
+            if (json != null) {
+                out.println(json);
+            }
+            out.flush();
+            return EXIT_OK;
+
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return EXIT_USAGE;
+        } catch (Exception e) {
+            err.println("Ошибка: " + e.getMessage());
+            return EXIT_ERROR;
+        } finally {
+            System.setOut(originalOut);
+        }
+    }
+
+    private StringBuilder index(Options options) throws Exception {
+        String directory = options.positional(0, "директория");
+        String engine = options.get("engine", "memory");
+
+        MultiThreadFileIndexer indexer = createIndexer(options);
+        SimpleFileIndex index = indexer.getFileIndex();
+
+        switch (engine) {
+            case "memory" -> {
+                indexer.setKeepDuplicateGroups(false);
+                indexer.indexDirectory(directory);
+            }
+            case "streaming" -> indexer.indexDirectoryStreaming(directory, new CancellationToken());
+            case "external" -> throw new IllegalArgumentException("Движок external поддерживается только командой dupes");
+            default -> throw new IllegalArgumentException("Неизвестный движок: " + engine);
+        }
+        long firstByteNanos = firstByteOf(indexer.getProgress());
+
+        String output = options.get("output", null);
+        if (output != null) {
+            IndexStorage.save(index, Paths.get(output));
+        }
+
+        SimpleFileIndex.IndexStatistics statistics = index.getStatistics();
+        StringBuilder json = new StringBuilder("{\"command\":\"index\",\"root\":");
+        Json.appendString(json, directory);
+        json.append(",\"engine\":");
+        Json.appendString(json, engine);
+        json.append(",\"files\":").append(statistics.getTotalFiles());
+        json.append(",\"totalSize\":").append(statistics.getTotalSize());
+        json.append(",\"duplicateGroups\":").append(statistics.getDuplicateGroups());
+        json.append(",\"duplicateFiles\":").append(statistics.getDuplicateFiles());
+        json.append(",\"wastedBytes\":").append(statistics.getDuplicateSize());
+        json.append(",\"index\":");
+        Json.appendString(json, output);
+        json.append(",\"stragglers\":");
+        appendPaths(json, indexer.getStragglers());
+        appendTiming(json, firstByteNanos);
+        return json.append('}');
+    }
+
+    private StringBuilder dupes(Options options) throws Exception {
+        String indexFile = options.get("index", null);
+        String engine = options.get("engine", "memory");
+        int top = options.getInt("top", 0);
+        SimpleFileIndex.GroupRanking ranking = parseRanking(options.get("ranking", "wasted"));
+
+        if (engine.equals("external")) {
+            if (indexFile != null || top > 0) {
+                throw new IllegalArgumentException("Движок external не поддерживает --index и --top");
+            }
+            return dupesExternal(options, options.positional(0, "директория"));
+        }
+
+        SimpleFileIndex index;
+        long firstByteNanos = 0;
+        if (indexFile != null) {
+            index = IndexStorage.load(Paths.get(indexFile));
+        } else {
+            MultiThreadFileIndexer indexer = createIndexer(options);
+            index = indexer.getFileIndex();
+            String directory = options.positional(0, "директория или --index");
+            switch (engine) {
+                case "memory" -> {
+                    indexer.setKeepDuplicateGroups(false);
+                    indexer.indexDirectory(directory);
+                }
+                case "streaming" -> indexer.indexDirectoryStreaming(directory, new CancellationToken());
+                default -> throw new IllegalArgumentException("Неизвестный движок: " + engine);
+            }
+            firstByteNanos = firstByteOf(indexer.getProgress());
+        }
+
+        List<List<FileInfo>> groups = top > 0 ? index.findTopDuplicateGroups(top, ranking) : index.findDuplicates();
+
+        StringBuilder json = new StringBuilder("{\"command\":\"dupes\",\"groups\":[");
+        long wastedBytes = 0;
+        for (int i = 0; i < groups.size(); i++) {
+            List<FileInfo> group = groups.get(i);
+            List<String> paths = new ArrayList<>(group.size());
+            group.forEach(fileInfo -> paths.add(fileInfo.getPath()));
+            if (i > 0) {
+                json.append(',');
+            }
+            appendGroup(json, index.keyOf(group.get(0)), group.get(0).getSize(), paths);
+            wastedBytes += group.get(0).getSize() * (group.size() - 1);
+        }
+        json.append("],\"groupCount\":").append(groups.size());
+        json.append(",\"wastedBytes\":").append(wastedBytes);
+        appendTiming(json, firstByteNanos);
+        return json.append('}');
+    }
+
+    /**
+     * Дубликаты через внешнюю сортировку: пути - в DiskPathTable, пары (размер, хеш) - в прогоны на диске.
+     * Обход дерева ленивый, индекс в памяти не строится, а группы выводятся в out по мере слияния,
+     * поэтому ни пути, ни результат не держатся в куче целиком.
+     * @return null - JSON уже выведен
+     */
+    private StringBuilder dupesExternal(Options options, String directory) throws Exception {
+        String algorithm = options.get("algorithm", "MD5");
+        int threads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+        long memoryBudget = options.getInt("memory-mb", 64) * 1024L * 1024;
+
+        String workDirectoryOption = options.get("work-dir", null);
+        Path workDirectory = workDirectoryOption != null
+                ? Files.createDirectories(Paths.get(workDirectoryOption))
+                : Files.createTempDirectory("duplicate-finder");
+
+        MultiThreadHashCalculator hashCalculator = new MultiThreadHashCalculator(threads, algorithm);
+        hashCalculator.setXattrCacheEnabled(options.has("xattr-cache"));
+        hashCalculator.setReadTimeout(options.getLong("read-timeout-ms", 0));
+        FileScanner scanner = new FileScanner(buildScanFilter(options), null, false, 20, options.has("archives"));
+        long firstByteNanos;
+        long[] wastedBytes = {0};
+        int groupCount;
+
+        try (DiskPathTable paths = new DiskPathTable(workDirectory);
+             ExternalDuplicateFinder finder = new ExternalDuplicateFinder(workDirectory, algorithm, memoryBudget, threads)) {
+            try (var tasks = scanner.streamDirectory(directory)) {
+                hashCalculator.processStream(tasks, fileInfo -> {
+                    try {
+                        finder.add(fileInfo.getSize(), fileInfo.getHash(), paths.add(fileInfo.getPath()));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Прервано", e);
+                    }
+                }, new CancellationToken());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            firstByteNanos = firstByteOf(hashCalculator.getProgress());
+
+            out.print("{\"command\":\"dupes\",\"engine\":\"external\",\"groups\":[");
+            StringBuilder group = new StringBuilder();
+            boolean[] first = {true};
+            groupCount = finder.findDuplicates((size, hexDigest, pathIds) -> {
+                List<String> groupPaths = new ArrayList<>(pathIds.length);
+                try {
+                    for (int pathId : pathIds) {
+                        groupPaths.add(paths.get(pathId));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                group.setLength(0);
+                if (!first[0]) {
+                    group.append(',');
+                }
+                first[0] = false;
+                appendGroup(group, hexDigest, size, groupPaths);
+                out.print(group);
+                wastedBytes[0] += size * (pathIds.length - 1);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            if (workDirectoryOption == null) {
+                Files.deleteIfExists(workDirectory);
+            }
+        }
+
+        StringBuilder tail = new StringBuilder("],\"groupCount\":").append(groupCount);
+        tail.append(",\"wastedBytes\":").append(wastedBytes[0]);
+        appendTiming(tail, firstByteNanos);
+        out.println(tail.append('}'));
+        return null;
+    }
+
+    private StringBuilder compare(Options options) throws Exception {
+        String directoryA = options.positional(0, "директория A");
+        String directoryB = options.positional(1, "директория B");
+
+        DirectoryComparator comparator = new DirectoryComparator(
+                new FileScanner(buildScanFilter(options), null, false, 20, options.has("archives")),
+                options.getInt("threads", Runtime.getRuntime().availableProcessors()),
+                options.get("algorithm", "MD5"));
+        DirectoryComparator.ComparisonResult result = comparator.compare(directoryA, directoryB);
+
+        StringBuilder json = new StringBuilder("{\"command\":\"compare\",\"a\":");
+        Json.appendString(json, directoryA);
+        json.append(",\"b\":");
+        Json.appendString(json, directoryB);
+        json.append(",\"sharedBytes\":").append(result.getSharedBytes());
+        json.append(",\"shared\":[");
+        for (int i = 0; i < result.shared.size(); i++) {
+            DirectoryComparator.SharedContent content = result.shared.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"hash\":");
+            Json.appendString(json, content.getHash());
+            json.append(",\"size\":").append(content.getSize());
+            json.append(",\"a\":");
+            appendPaths(json, pathsOf(content.getFilesA()));
+            json.append(",\"b\":");
+            appendPaths(json, pathsOf(content.getFilesB()));
+            json.append('}');
+        }
+        json.append("],\"onlyInA\":");
+        appendPaths(json, taskPaths(result.onlyInA));
+        json.append(",\"onlyInB\":");
+        appendPaths(json, taskPaths(result.onlyInB));
+        json.append(",\"failedFiles\":").append(result.failedFiles);
+        appendTiming(json, 0);
+        return json.append('}');
+    }
+
+    private StringBuilder query(Options options) throws Exception {
+        SimpleFileIndex index = IndexStorage.load(Paths.get(options.positional(0, "файл индекса")));
+        index.setVerbose(false);
+
+        StringBuilder json = new StringBuilder("{\"command\":\"query\"");
+        if (options.get("path", null) != null) {
+            String path = options.get("path", null);
+            FileInfo fileInfo = index.getByPath(path);
+            json.append(",\"file\":");
+            if (fileInfo != null) {
+                Json.appendFileInfo(json, fileInfo);
+            } else {
+                json.append("null");
+            }
+            json.append(",\"duplicates\":");
+            Json.appendFileInfos(json, index.findDuplicatesOf(path));
+        } else if (options.get("hash", null) != null) {
+            json.append(",\"files\":");
+            Json.appendFileInfos(json, index.findByHash(options.get("hash", null)));
+        } else {
+            IndexScope scope = parseScope(options);
+            json.append(",\"scope\":");
+            Json.appendString(json, scope.toString());
+            json.append(",\"groups\":[");
+            List<List<FileInfo>> groups = index.findDuplicates(scope);
+            for (int i = 0; i < groups.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                Json.appendFileInfos(json, groups.get(i));
+            }
+            json.append(']');
+        }
+        appendTiming(json, 0);
+        return json.append('}');
+    }
+
+    private static IndexScope parseScope(Options options) {
+        if (options.get("under", null) != null) {
+            return IndexScope.underDirectory(options.get("under", null));
+        }
+        if (options.get("ext", null) != null) {
+            return IndexScope.withExtension(options.get("ext", null));
+        }
+        if (options.get("size", null) != null) {
+            return IndexScope.ofSize(options.getLong("size", 0));
+        }
+        throw new IllegalArgumentException("Для query нужен один из параметров --hash, --path, --under, --ext, --size");
+    }
+
+    private MultiThreadFileIndexer createIndexer(Options options) {
+        MultiThreadFileIndexer indexer = new MultiThreadFileIndexer(
+                options.getInt("threads", Runtime.getRuntime().availableProcessors()),
+                options.get("algorithm", "MD5"));
+        indexer.getFileIndex().setVerbose(false);
+        indexer.setScanFilter(buildScanFilter(options));
+        indexer.setScanArchives(options.has("archives"));
+        indexer.setXattrCacheEnabled(options.has("xattr-cache"));
+        indexer.setReadTimeout(options.getLong("read-timeout-ms", 0));
+        if (options.get("also", null) != null) {
+            indexer.setAdditionalAlgorithms(options.getList("also"));
+        }
+        return indexer;
+    }
+
+    private static ScanFilter buildScanFilter(Options options) {
+        ScanFilter.Builder builder = ScanFilter.builder()
+                .minSize(Math.max(1, options.getLong("min-size", 1)))
+                .maxSize(options.getLong("max-size", Long.MAX_VALUE));
+        if (!options.has("include-hidden")) {
+            builder.excludeHiddenFiles().pruneHiddenDirectories();
+        }
+        if (options.get("ext", null) != null && !options.command.equals("query")) {
+            builder.includeExtensions(options.getList("ext"));
+        }
+        if (options.get("exclude-ext", null) != null) {
+            builder.excludeExtensions(options.getList("exclude-ext"));
+        }
+        if (options.get("prune", null) != null) {
+            builder.pruneDirectories(options.getList("prune"));
+        }
+        return builder.build();
+    }
+
+    private static SimpleFileIndex.GroupRanking parseRanking(String ranking) {
+        return switch (ranking) {
+            case "wasted" -> SimpleFileIndex.GroupRanking.WASTED_BYTES;
+            case "count" -> SimpleFileIndex.GroupRanking.FILE_COUNT;
+            case "hash" -> SimpleFileIndex.GroupRanking.HASH;
+            default -> throw new IllegalArgumentException("Неизвестный порядок групп: " + ranking);
+        };
+    }
+
+    private static long firstByteOf(ProgressTracker progress) {
+        return progress != null ? progress.getFirstByteNanos() : 0;
+    }
+
+    /**
+     * Время: старт JVM до main, от main до первого прочитанного байта (-1, если файлы не читались) и всего
+     */
+    private void appendTiming(StringBuilder json, long firstByteNanos) {
+        long now = System.nanoTime();
+        json.append(",\"timing\":{\"startupMillis\":").append(startupMillis);
+        json.append(",\"timeToFirstByteMillis\":")
+                .append(firstByteNanos != 0 ? (firstByteNanos - startNanos) / 1_000_000 : -1);
+        json.append(",\"totalMillis\":").append((now - startNanos) / 1_000_000);
+        json.append('}');
+    }
+
+    private static void appendGroup(StringBuilder json, String hash, long size, List<String> paths) {
+        Collections.sort(paths);
+        json.append("{\"hash\":");
+        Json.appendString(json, hash);
+        json.append(",\"size\":").append(size);
+        json.append(",\"files\":");
+        appendPaths(json, paths);
+        json.append('}');
+    }
+
+    private static void appendPaths(StringBuilder json, List<String> paths) {
+        json.append('[');
+        for (int i = 0; i < paths.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            Json.appendString(json, paths.get(i));
+        }
+        json.append(']');
+    }
+
+    private static List<String> pathsOf(List<FileInfo> files) {
+        List<String> paths = new ArrayList<>(files.size());
+        files.forEach(fileInfo -> paths.add(fileInfo.getPath()));
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static List<String> taskPaths(List<FileScanner.FileTask> tasks) {
+        List<String> paths = new ArrayList<>(tasks.size());
+        tasks.forEach(task -> paths.add(task.getPath()));
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * Разобранные аргументы: команда, позиционные аргументы и опции --ключ значение (или --ключ=значение)
+     */
+    private static final class Options {
+        private final String command;
+        private final List<String> positional = new ArrayList<>();
+        private final Map<String, String> values = new HashMap<>();
+        private final Set<String> flags = new HashSet<>();
+
+        private Options(String command) {
+            this.command = command;
+        }
+
+        static Options parse(String[] args) {
+            if (args.length == 0) {
+                throw new IllegalArgumentException("Не указана команда");
+            }
+
+            Options options = new Options(args[0]);
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    options.positional.add(arg);
+                    continue;
+                }
+
+                String name = arg.substring(2);
+                int equals = name.indexOf('=');
+                if (equals >= 0) {
+                    options.values.put(name.substring(0, equals), name.substring(equals + 1));
+                } else if (FLAGS.contains(name)) {
+                    options.flags.add(name);
+                } else if (i + 1 < args.length) {
+                    options.values.put(name, args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Не указано значение для --" + name);
+                }
+            }
+            return options;
+        }
+
+        boolean has(String flag) {
+            return flags.contains(flag);
+        }
+
+        String get(String name, String defaultValue) {
+            return values.getOrDefault(name, defaultValue);
+        }
+
+        String[] getList(String name) {
+            return values.get(name).split(",");
+        }
+
+        int getInt(String name, int defaultValue) {
+            return (int) getLong(name, defaultValue);
+        }
+
+        long getLong(String name, long defaultValue) {
+            String value = values.get(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("--" + name + " ожидает число: " + value);
+            }
+        }
+
+        String positional(int position, String description) {
+            if (position >= positional.size()) {
+                throw new IllegalArgumentException("Не указан аргумент: " + description);
+            }
+            return positional.get(position);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package ua.pro.baynova.duplicatefinder.compare;
+
+import ua.pro.baynova.duplicatefinder.concurrent.MultiThreadHashCalculator;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+import ua.pro.baynova.duplicatefinder.scanner.ScanFilter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Сравнение двух деревьев: что из A есть в B и наоборот.
+ * Хешируются только файлы, размер которых встречается в обоих деревьях.
+ * Дубликаты внутри одного дерева не ищутся - это и экономит большую часть чтения.
+ *
+ * Деревья могут пересекаться (одно вложено в другое или передано дважды): сторона
+ * каждого файла отмечается при сканировании, а файл из обоих деревьев хешируется
+ * один раз и считается присутствующим в обоих.
+ */
+public class DirectoryComparator {
+
+    private static final int SIDE_A = 1;
+    private static final int SIDE_B = 2;
+
+    private final FileScanner fileScanner;
+    private final int numberOfThreads;
+    private final String algorithm;
+
+    public DirectoryComparator() {
+        this(Runtime.getRuntime().availableProcessors(), "MD5");
+    }
+
+    public DirectoryComparator(int numberOfThreads, String algorithm) {
+        this(new FileScanner(ScanFilter.defaults(), null, false, 20, false), numberOfThreads, algorithm);
+    }
+
+    /**
+     * @param fileScanner сканер для обоих деревьев
+     * @param numberOfThreads потоков хеширования
+     * @param algorithm алгоритм хеширования
+     */
+    public DirectoryComparator(FileScanner fileScanner, int numberOfThreads, String algorithm) {
+        this.fileScanner = fileScanner;
+        this.numberOfThreads = numberOfThreads;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Сравнивает два дерева
+     * @param directoryA первое дерево
+     * @param directoryB второе дерево
+     */
+    public ComparisonResult compare(String directoryA, String directoryB) throws Exception {
+        long startTime = System.currentTimeMillis();
+
+        List<FileScanner.FileTask> tasksA;
+        List<FileScanner.FileTask> tasksB;
+
+        ExecutorService scanners = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<FileScanner.FileTask>> futureA = scanners.submit(() -> fileScanner.scanDirectory(directoryA));
+            Future<List<FileScanner.FileTask>> futureB = scanners.submit(() -> fileScanner.scanDirectory(directoryB));
+            tasksA = futureA.get();
+            tasksB = futureB.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        } finally {
+            scanners.shutdown();
+        }
+
+        Set<Long> sizesA = new HashSet<>();
+        for (FileScanner.FileTask task : tasksA) {
+            sizesA.add(task.getSize());
+        }
+        Set<Long> sharedSizes = new HashSet<>();
+        for (FileScanner.FileTask task : tasksB) {
+            if (sizesA.contains(task.getSize())) {
+                sharedSizes.add(task.getSize());
+            }
+        }
+
+        ComparisonResult result = new ComparisonResult();
+        result.scannedA = tasksA.size();
+        result.scannedB = tasksB.size();
+
+        // путь -> задача и стороны, в которых он найден (файл в пересечении деревьев - в обеих)
+        Map<String, FileScanner.FileTask> candidatesByPath = new LinkedHashMap<>();
+        Map<String, Integer> sides = new HashMap<>();
+        splitBySize(tasksA, sharedSizes, candidatesByPath, result.onlyInA, sides, SIDE_A);
+        splitBySize(tasksB, sharedSizes, candidatesByPath, result.onlyInB, sides, SIDE_B);
+        List<FileScanner.FileTask> candidates = new ArrayList<>(candidatesByPath.values());
+        result.hashedFiles = candidates.size();
+
+        System.out.printf("Общих размеров: %d, хешируем %d из %d файлов%n",
+                sharedSizes.size(), candidates.size(), tasksA.size() + tasksB.size());
+
+        List<FileInfo> hashed = new MultiThreadHashCalculator(numberOfThreads, algorithm).processFiles(candidates);
+
+        Map<String, SharedContent> byHash = new HashMap<>();
+        for (FileInfo fileInfo : hashed) {
+            SharedContent content = byHash.computeIfAbsent(fileInfo.getHash(),
+                    hash -> new SharedContent(hash, fileInfo.getSize()));
+            int side = sides.get(fileInfo.getPath());
+            if ((side & SIDE_A) != 0) {
+                content.filesA.add(fileInfo);
+            }
+            if ((side & SIDE_B) != 0) {
+                content.filesB.add(fileInfo);
+            }
+        }
+
+        for (SharedContent content : byHash.values()) {
+            if (!content.filesA.isEmpty() && !content.filesB.isEmpty()) {
+                result.shared.add(content);
+            } else {
+                List<FileScanner.FileTask> target = content.filesA.isEmpty() ? result.onlyInB : result.onlyInA;
+                for (FileInfo fileInfo : content.filesA.isEmpty() ? content.filesB : content.filesA) {
+                    target.add(candidatesByPath.get(fileInfo.getPath()));
+                }
+            }
+        }
+
+        result.failedFiles = candidates.size() - hashed.size();
+        result.shared.sort((c1, c2) -> Long.compare(c2.getSize(), c1.getSize()));
+        result.duration = System.currentTimeMillis() - startTime;
+
+        System.out.printf("Общего содержимого: %d, только в A: %d, только в B: %d%n",
+                result.shared.size(), result.onlyInA.size(), result.onlyInB.size());
+        return result;
+    }
+
+    private void splitBySize(List<FileScanner.FileTask> tasks, Set<Long> sharedSizes,
+                             Map<String, FileScanner.FileTask> candidates, List<FileScanner.FileTask> onlyHere,
+                             Map<String, Integer> sides, int side) {
+        for (FileScanner.FileTask task : tasks) {
+            if (sharedSizes.contains(task.getSize())) {
+                candidates.putIfAbsent(task.getPath(), task);
+                sides.merge(task.getPath(), side, (a, b) -> a | b);
+            } else {
+                onlyHere.add(task);
+            }
+        }
+    }
+
+    /**
+     * Содержимое, которое есть в обоих деревьях
+     */
+    public static class SharedContent {
+        private final String hash;
+        private final long size;
+        private final List<FileInfo> filesA = new ArrayList<>();
+        private final List<FileInfo> filesB = new ArrayList<>();
+
+        public SharedContent(String hash, long size) {
+            this.hash = hash;
+            this.size = size;
+        }
+
+        public String getHash() { return hash; }
+        public long getSize() { return size; }
+        public List<FileInfo> getFilesA() { return filesA; }
+        public List<FileInfo> getFilesB() { return filesB; }
+
+        @Override
+        public String toString() {
+            return String.format("SharedContent{hash='%s...', size=%d, inA=%d, inB=%d}",
+                    hash.substring(0, Math.min(8, hash.length())), size, filesA.size(), filesB.size());
+        }
+    }
+
+    public static class ComparisonResult {
+
+        public final List<SharedContent> shared = new ArrayList<>();
+        public final List<FileScanner.FileTask> onlyInA = new ArrayList<>();
+        public final List<FileScanner.FileTask> onlyInB = new ArrayList<>();
+
+        public int scannedA;
+        public int scannedB;
+        public int hashedFiles;
+        public int failedFiles;
+        public long duration;
+
+        public long getSharedBytes() {
+            return shared.stream().mapToLong(SharedContent::getSize).sum();
+        }
+    }
+}
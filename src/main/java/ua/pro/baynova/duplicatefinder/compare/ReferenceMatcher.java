@@ -0,0 +1,175 @@
+package ua.pro.baynova.duplicatefinder.compare;
+
+import ua.pro.baynova.duplicatefinder.concurrent.MultiThreadHashCalculator;
+import ua.pro.baynova.duplicatefinder.index.IndexStorage;
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+import ua.pro.baynova.duplicatefinder.scanner.ScanFilter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Сверка нового дерева с заранее построенным эталонным индексом.
+ * Файлы эталона никогда не читаются - используются только сохраненные размеры и хеши.
+ * Новые файлы, размера которых нет в эталоне, отсекаются без чтения;
+ * хешируются только кандидаты с совпавшим размером.
+ *
+ * Поиск идет по ключу группировки эталона: если для него выбран другой алгоритм
+ * ({@link SimpleFileIndex#setPrimaryDigest(String)}), кандидаты хешируются и им.
+ */
+public class ReferenceMatcher {
+
+    private final SimpleFileIndex referenceIndex;
+    private final Set<Long> referenceSizes;
+    private final int numberOfThreads;
+    private final String algorithm;
+    private final String keyAlgorithm;
+
+    public ReferenceMatcher(SimpleFileIndex referenceIndex) {
+        this(referenceIndex, Runtime.getRuntime().availableProcessors(), "MD5");
+    }
+
+    /**
+     * @param referenceIndex эталонный индекс
+     * @param numberOfThreads потоков хеширования
+     * @param algorithm алгоритм, которым построен эталон
+     */
+    public ReferenceMatcher(SimpleFileIndex referenceIndex, int numberOfThreads, String algorithm) {
+        if (referenceIndex == null) {
+            throw new IllegalArgumentException("Эталонный индекс не может быть null");
+        }
+
+        this.referenceIndex = referenceIndex;
+        this.numberOfThreads = numberOfThreads;
+        this.algorithm = algorithm;
+        this.keyAlgorithm = referenceIndex.getPrimaryDigest() != null ? referenceIndex.getPrimaryDigest() : algorithm;
+        this.referenceSizes = new HashSet<>();
+
+        List<FileInfo> referenceFiles = referenceIndex.getAllFiles();
+        for (FileInfo fileInfo : referenceFiles) {
+            referenceSizes.add(fileInfo.getSize());
+        }
+
+        if (!referenceFiles.isEmpty()) {
+            checkAlgorithm(referenceIndex.keyOf(referenceFiles.get(0)));
+        }
+    }
+
+    /**
+     * Загружает эталон из файла, сохраненного IndexStorage
+     */
+    public static ReferenceMatcher fromIndexFile(Path indexFile, int numberOfThreads, String algorithm)
+            throws IOException {
+        return new ReferenceMatcher(IndexStorage.load(indexFile), numberOfThreads, algorithm);
+    }
+
+    /**
+     * Сканирует новое дерево и находит файлы, которые уже есть в эталоне
+     * @param directoryPath путь к новому дереву
+     */
+    public MatchResult match(String directoryPath) throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        MatchResult result = new MatchResult();
+
+        FileScanner scanner = new FileScanner(ScanFilter.defaults(), null, false, 20, false);
+        List<FileScanner.FileTask> tasks = scanner.scanDirectory(directoryPath);
+        result.scannedFiles = tasks.size();
+
+        List<FileScanner.FileTask> candidates = new ArrayList<>();
+        for (FileScanner.FileTask task : tasks) {
+            if (referenceSizes.contains(task.getSize())) {
+                candidates.add(task);
+            } else {
+                result.skippedBytes += task.getSize();
+            }
+        }
+        result.candidateFiles = candidates.size();
+
+        System.out.printf("Кандидатов по размеру: %d из %d (не читаем %s)%n",
+                candidates.size(), tasks.size(), formatBytes(result.skippedBytes));
+
+        MultiThreadHashCalculator calculator = new MultiThreadHashCalculator(numberOfThreads, algorithm);
+        if (!keyAlgorithm.equals(algorithm)) {
+            calculator.setAdditionalAlgorithms(keyAlgorithm);
+        }
+        List<FileInfo> hashed = calculator.processFiles(candidates);
+
+        for (FileInfo newFile : hashed) {
+            String key = keyAlgorithm.equals(algorithm) ? newFile.getHash() : newFile.getDigest(keyAlgorithm);
+            List<FileInfo> copies = referenceIndex.findByHash(key);
+            if (copies.isEmpty()) {
+                result.newFiles.add(newFile);
+            } else {
+                result.matches.add(new Match(newFile, copies));
+            }
+        }
+
+        result.duration = System.currentTimeMillis() - startTime;
+        System.out.printf("Уже есть в эталоне: %d файлов, новых среди кандидатов: %d%n",
+                result.matches.size(), result.newFiles.size());
+        return result;
+    }
+
+    private void checkAlgorithm(String sampleHash) {
+        try {
+            int expectedLength = MessageDigest.getInstance(keyAlgorithm).getDigestLength() * 2;
+            if (sampleHash.length() != expectedLength) {
+                throw new IllegalArgumentException("Эталон построен другим алгоритмом: длина хеша " +
+                        sampleHash.length() + ", у " + keyAlgorithm + " - " + expectedLength);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Неподдерживаемый алгоритм: " + keyAlgorithm, e);
+        }
+    }
+
+    private String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024 * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.1f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    /**
+     * Новый файл и его копии в эталоне
+     */
+    public static class Match {
+        private final FileInfo newFile;
+        private final List<FileInfo> referenceCopies;
+
+        public Match(FileInfo newFile, List<FileInfo> referenceCopies) {
+            this.newFile = newFile;
+            this.referenceCopies = referenceCopies;
+        }
+
+        public FileInfo getNewFile() { return newFile; }
+        public List<FileInfo> getReferenceCopies() { return referenceCopies; }
+
+        @Override
+        public String toString() {
+            return String.format("Match{new='%s', copies=%d}", newFile.getPath(), referenceCopies.size());
+        }
+    }
+
+    public static class MatchResult {
+
+        public final List<Match> matches = new ArrayList<>();
+        public final List<FileInfo> newFiles = new ArrayList<>();
+
+        public int scannedFiles;
+        public int candidateFiles;
+        public long skippedBytes;
+        public long duration;
+
+        /**
+         * Файлы, отсеянные по размеру, тоже новые - но их хеши не вычислялись
+         */
+        public int getNewFilesCount() {
+            return scannedFiles - matches.size();
+        }
+    }
+}
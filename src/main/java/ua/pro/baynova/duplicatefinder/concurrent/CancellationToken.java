@@ -0,0 +1,76 @@
+package ua.pro.baynova.duplicatefinder.concurrent;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Токен отмены индексации: ручная отмена из любого потока и/или бюджет времени.
+ * Проверяется при обходе дерева, перед каждым файлом и после каждого прочитанного блока,
+ * поэтому даже чтение большого файла останавливается почти сразу.
+ */
+public class CancellationToken {
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final long deadlineNanos;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Токен без ограничения по времени
+     */
+    public CancellationToken() {
+        this.deadlineNanos = NO_DEADLINE;
+    }
+
+    private CancellationToken(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Токен, который сам отменяется по истечении бюджета времени
+     * @param budget сколько времени дается на всю индексацию
+     */
+    public static CancellationToken withTimeout(Duration budget) {
+        if (budget == null || budget.isNegative()) {
+            throw new IllegalArgumentException("Бюджет времени должен быть неотрицательным");
+        }
+        return new CancellationToken(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * Запрашивает отмену (можно вызывать из любого потока)
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || isDeadlineExceeded();
+    }
+
+    public boolean isDeadlineExceeded() {
+        return deadlineNanos != NO_DEADLINE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Сколько осталось до дедлайна (Long.MAX_VALUE если дедлайна нет)
+     */
+    public long getRemainingMillis() {
+        if (deadlineNanos == NO_DEADLINE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    /**
+     * @throws CancellationException если индексация отменена или вышел бюджет времени
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Индексация отменена");
+        }
+        if (isDeadlineExceeded()) {
+            throw new CancellationException("Истек бюджет времени индексации");
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package ua.pro.baynova.duplicatefinder.concurrent;
+
+import ua.pro.baynova.duplicatefinder.index.IndexStorage;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Журнал контрольных точек долгой индексации.
+ * Каждый вычисленный FileInfo дописывается в журнал, журнал периодически
+ * сбрасывается на диск. После падения или kill повторный запуск с тем же журналом
+ * не хеширует заново файлы, у которых совпали размер и время изменения.
+ *
+ * Оборванная последняя запись (процесс убит посреди записи) при открытии отбрасывается.
+ */
+public class IndexingCheckpoint implements AutoCloseable {
+
+    private static final int MAGIC = 0x44555043; // "DUPC"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte RECORD_FILE = 1;
+    private static final byte RECORD_SCAN_COMPLETE = 2;
+
+    private static final int DEFAULT_FLUSH_EVERY_RECORDS = 1000;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5000;
+
+    private final Path journalFile;
+    private final String rootPath;
+    private final Map<String, FileInfo> completedFiles;
+    private final int previousScanCount;
+
+    private final int flushEveryRecords;
+    private final long flushIntervalMillis;
+
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private int unflushedRecords = 0;
+    private long lastFlushTime = System.currentTimeMillis();
+    private boolean writeFailed = false;
+
+    private IndexingCheckpoint(Path journalFile, String rootPath, Map<String, FileInfo> completedFiles,
+                               int previousScanCount, int flushEveryRecords, long flushIntervalMillis) {
+        this.journalFile = journalFile;
+        this.rootPath = rootPath;
+        this.completedFiles = completedFiles;
+        this.previousScanCount = previousScanCount;
+        this.flushEveryRecords = flushEveryRecords;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Открывает журнал для директории. Если журнал уже есть и относится к той же
+     * директории - его записи становятся доступны для продолжения.
+     * @param journalFile файл журнала
+     * @param rootPath индексируемая директория
+     */
+    public static IndexingCheckpoint open(Path journalFile, String rootPath) throws IOException {
+        return open(journalFile, rootPath, DEFAULT_FLUSH_EVERY_RECORDS, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param flushEveryRecords сбрасывать журнал на диск после стольких записей
+     * @param flushIntervalMillis и не реже чем раз в столько миллисекунд
+     */
+    public static IndexingCheckpoint open(Path journalFile, String rootPath,
+                                          int flushEveryRecords, long flushIntervalMillis) throws IOException {
+        if (journalFile == null || rootPath == null) {
+            throw new IllegalArgumentException("Путь к журналу и директории не может быть null");
+        }
+
+        Path absoluteJournal = journalFile.toAbsolutePath();
+        String absoluteRoot = Path.of(rootPath).toAbsolutePath().normalize().toString();
+        Map<String, FileInfo> completed = new HashMap<>();
+        int[] scanCount = {-1};
+
+        if (Files.isRegularFile(absoluteJournal)) {
+            readJournal(absoluteJournal, absoluteRoot, completed, scanCount);
+        }
+
+        IndexingCheckpoint checkpoint = new IndexingCheckpoint(absoluteJournal, absoluteRoot, completed,
+                scanCount[0], flushEveryRecords, flushIntervalMillis);
+        checkpoint.rewriteJournal();
+        return checkpoint;
+    }
+
+    private static void readJournal(Path journal, String root, Map<String, FileInfo> completed,
+                                    int[] scanCount) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(journal), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.println("Журнал поврежден или другой версии, начинаем заново: " + journal);
+                return;
+            }
+
+            String journalRoot = in.readUTF();
+            if (!journalRoot.equals(root)) {
+                System.err.println("Журнал относится к другой директории (" + journalRoot + "), начинаем заново");
+                return;
+            }
+
+            while (true) {
+                byte type = in.readByte();
+                if (type == RECORD_FILE) {
+                    FileInfo fileInfo = IndexStorage.readFileInfo(in);
+                    completed.put(fileInfo.getPath(), fileInfo);
+                } else if (type == RECORD_SCAN_COMPLETE) {
+                    scanCount[0] = in.readInt();
+                } else {
+                    System.err.println("Неизвестная запись в журнале, остаток отброшен");
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            // конец журнала или оборванная последняя запись
+        }
+
+        System.out.println("Журнал загружен: " + completed.size() + " готовых файлов");
+    }
+
+    /**
+     * Переписывает журнал только из целых записей, чтобы дописывать после них,
+     * а не после оборванного хвоста
+     */
+    private void rewriteJournal() throws IOException {
+        Path tempFile = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+
+        try (DataOutputStream tempOut = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE))) {
+            tempOut.writeInt(MAGIC);
+            tempOut.writeInt(VERSION);
+            tempOut.writeUTF(rootPath);
+            for (FileInfo fileInfo : completedFiles.values()) {
+                tempOut.writeByte(RECORD_FILE);
+                IndexStorage.writeFileInfo(tempOut, fileInfo);
+            }
+        }
+
+        Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        fileOut = new FileOutputStream(journalFile.toFile(), true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE));
+    }
+
+    /**
+     * Возвращает готовый результат из прошлого запуска, если файл с тех пор не менялся
+     * @return FileInfo или null если файл нужно хешировать
+     */
+    public FileInfo findCompleted(FileScanner.FileTask task) {
+        FileInfo previous = completedFiles.get(task.getPath());
+        if (previous == null || previous.getSize() != task.getSize()
+                || previous.getLastModifiedMillis() != task.getLastModifiedMillis()) {
+            return null;
+        }
+        return previous;
+    }
+
+    /**
+     * Количество записей, доступных для продолжения
+     */
+    public int getCompletedCount() {
+        return completedFiles.size();
+    }
+
+    /**
+     * Сколько файлов нашло сканирование в прошлом запуске (-1 если оно не завершилось)
+     */
+    public int getPreviousScanCount() {
+        return previousScanCount;
+    }
+
+    public Path getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Отмечает завершение сканирования
+     */
+    public synchronized void recordScanComplete(int fileCount) {
+        if (out == null || writeFailed) return;
+        try {
+            out.writeByte(RECORD_SCAN_COMPLETE);
+            out.writeInt(fileCount);
+            flush();
+        } catch (IOException e) {
+            reportWriteFailure(e);
+        }
+    }
+
+    /**
+     * Дописывает готовый результат; на диск журнал сбрасывается пачками
+     */
+    public synchronized void record(FileInfo fileInfo) {
+        if (out == null || writeFailed) return;
+        try {
+            out.writeByte(RECORD_FILE);
+            IndexStorage.writeFileInfo(out, fileInfo);
+            unflushedRecords++;
+
+            if (unflushedRecords >= flushEveryRecords
+                    || System.currentTimeMillis() - lastFlushTime >= flushIntervalMillis) {
+                flush();
+            }
+        } catch (IOException e) {
+            reportWriteFailure(e);
+        }
+    }
+
+    /**
+     * Сбрасывает накопленные записи на диск (вызывается и из shutdown hook)
+     */
+    public synchronized void flush() throws IOException {
+        if (out == null) return;
+        out.flush();
+        fileOut.getFD().sync();
+        unflushedRecords = 0;
+        lastFlushTime = System.currentTimeMillis();
+    }
+
+    private void reportWriteFailure(IOException e) {
+        // индексация продолжается, просто без возможности продолжить с этого места
+        writeFailed = true;
+        System.err.println("Не удалось записать журнал " + journalFile + ": " + e.getMessage());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out == null) return;
+        try {
+            flush();
+        } finally {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Закрывает и удаляет журнал - индексация завершена и продолжать нечего
+     */
+    public synchronized void delete() throws IOException {
+        close();
+        Files.deleteIfExists(journalFile);
+    }
+}
@@ -1,13 +1,20 @@
 package ua.pro.baynova.duplicatefinder.concurrent;
 
 import ua.pro.baynova.duplicatefinder.concurrent.MultiThreadHashCalculator;
+import ua.pro.baynova.duplicatefinder.index.DirectoryHashIndex;
+import ua.pro.baynova.duplicatefinder.index.SimilarityIndex;
 import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
 import ua.pro.baynova.duplicatefinder.model.FileInfo;
 import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+import ua.pro.baynova.duplicatefinder.scanner.ScanFilter;
+import ua.pro.baynova.duplicatefinder.watch.IndexWatcher;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 public class MultiThreadFileIndexer {
 
@@ -16,15 +23,29 @@ public class MultiThreadFileIndexer {
     private final SimpleFileIndex fileIndex;
     private final int numberOfThreads;
 
-    private String hashAlgorithm = "MD5";
+    private final String hashAlgorithm;
     private boolean showProgress = true;
+    private boolean scanArchives = false;
+    private ScanFilter scanFilter = ScanFilter.defaults();
+    private Path checkpointFile;
+    private boolean keepDuplicateGroups = true;
+    private boolean detectDuplicateDirectories = false;
 
     public MultiThreadFileIndexer() {
         this(Runtime.getRuntime().availableProcessors());
     }
 
     public MultiThreadFileIndexer(int numberOfThreads) {
+        this(numberOfThreads, "MD5");
+    }
+
+    /**
+     * @param numberOfThreads потоков хеширования
+     * @param hashAlgorithm основной алгоритм хеширования (MD5, SHA-1, SHA-256)
+     */
+    public MultiThreadFileIndexer(int numberOfThreads, String hashAlgorithm) {
         this.numberOfThreads = numberOfThreads;
+        this.hashAlgorithm = hashAlgorithm;
         this.fileScanner = new FileScanner();
         this.hashCalculator = new MultiThreadHashCalculator(numberOfThreads, hashAlgorithm);
         this.fileIndex = new SimpleFileIndex();
@@ -35,12 +56,131 @@ public class MultiThreadFileIndexer {
         System.out.println("Показ прогресса: " + (showProgress ? "включен" : "выключен"));
     }
 
+    /**
+     * Включает поиск похожих (не только идентичных) файлов.
+     * Сигнатуры считаются за то же чтение, что и хеш.
+     * @return индекс похожих файлов, который заполнится при индексации
+     */
+    public SimilarityIndex enableSimilarityDetection() {
+        if (hashCalculator.getSimilarityIndex() == null) {
+            hashCalculator.setSimilarityIndex(new SimilarityIndex());
+        }
+        return hashCalculator.getSimilarityIndex();
+    }
+
+    public SimilarityIndex getSimilarityIndex() {
+        return hashCalculator.getSimilarityIndex();
+    }
+
+    /**
+     * Включает индексацию записей внутри zip/jar архивов
+     */
+    public void setScanArchives(boolean scanArchives) {
+        this.scanArchives = scanArchives;
+    }
+
+    /**
+     * Включает кеш хешей в расширенных атрибутах файлов: неизменившиеся файлы
+     * не читаются повторно даже без сохраненного индекса
+     */
+    public void setXattrCacheEnabled(boolean xattrCacheEnabled) {
+        hashCalculator.setXattrCacheEnabled(xattrCacheEnabled);
+    }
+
+    /**
+     * Дополнительные алгоритмы хеша: все хеши считаются за одно чтение файла,
+     * так что объем ввода-вывода не растет. Ключ группировки выбирается
+     * через SimpleFileIndex.setPrimaryDigest.
+     */
+    public void setAdditionalAlgorithms(String... additionalAlgorithms) {
+        hashCalculator.setAdditionalAlgorithms(additionalAlgorithms);
+    }
+
+    /**
+     * Таймаут чтения файла без прогресса: зависшие файлы попадают в IndexingResult.stragglers,
+     * а их поток заменяется новым (см. MultiThreadHashCalculator.setReadTimeout)
+     */
+    public void setReadTimeout(long readTimeoutMillis) {
+        hashCalculator.setReadTimeout(readTimeoutMillis);
+    }
+
+    /**
+     * Повторы после временных ошибок чтения с удвоением паузы
+     */
+    public void setRetryPolicy(int maxRetries, long initialBackoffMillis) {
+        hashCalculator.setRetryPolicy(maxRetries, initialBackoffMillis);
+    }
+
+    /**
+     * Задает фильтр обхода (по умолчанию - без скрытых и пустых файлов)
+     */
+    public void setScanFilter(ScanFilter scanFilter) {
+        this.scanFilter = scanFilter != null ? scanFilter : ScanFilter.defaults();
+    }
+
+    /**
+     * Включает журнал контрольных точек. Если журнал от прерванного запуска уже есть,
+     * неизменившиеся файлы не хешируются повторно. После успешной индексации журнал удаляется.
+     * MinHash-сигнатуры в журнал не пишутся.
+     * @param checkpointFile файл журнала (null - выключить)
+     */
+    public void setCheckpointFile(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Собирать ли все группы дубликатов в IndexingResult.duplicateGroups.
+     * Для больших деревьев лучше выключить и писать отчет потоково через DuplicateReportWriter.
+     */
+    public void setKeepDuplicateGroups(boolean keepDuplicateGroups) {
+        this.keepDuplicateGroups = keepDuplicateGroups;
+    }
+
+    /**
+     * Искать одинаковые директории по хешам Меркла. Файлы внутри повторных копий директорий
+     * убираются из IndexingResult.duplicateGroups - вместо них одна запись в duplicateDirectories.
+     */
+    public void setDetectDuplicateDirectories(boolean detectDuplicateDirectories) {
+        this.detectDuplicateDirectories = detectDuplicateDirectories;
+    }
+
+    public SimpleFileIndex getFileIndex() {
+        return fileIndex;
+    }
+
+    /**
+     * Прогресс хеширования текущего запуска (байты, скорость, ETA); null до начала хеширования
+     */
+    public ProgressTracker getProgress() {
+        return hashCalculator.getProgress();
+    }
+
+    /**
+     * Файлы последнего запуска, пропущенные из-за зависшего чтения
+     */
+    public List<String> getStragglers() {
+        return hashCalculator.getStragglers();
+    }
+
     /**
      * Главный метод - полный цикл индексации директории
      * @param directoryPath путь к директории
      * @return результат индексации с подробной статистикой
      */
     public IndexingResult indexDirectory(String directoryPath) throws Exception {
+        return indexDirectory(directoryPath, new CancellationToken());
+    }
+
+    /**
+     * Полный цикл индексации с возможностью отмены или ограничением по времени.
+     * При отмене в индекс попадают файлы, захешированные к этому моменту,
+     * а журнал контрольных точек (если включен) сохраняется для продолжения.
+     * @param directoryPath путь к директории
+     * @param cancellationToken токен отмены и бюджета времени
+     * @return результат индексации (result.cancelled - была ли остановка досрочной)
+     */
+    public IndexingResult indexDirectory(String directoryPath, CancellationToken cancellationToken)
+            throws Exception {
         System.out.println("\n" + "=".repeat(60));
         System.out.println("МНОГОПОТОЧНАЯ ИНДЕКСАЦИЯ: " + directoryPath);
         System.out.println("=".repeat(60));
@@ -48,36 +188,115 @@ public class MultiThreadFileIndexer {
         long totalStartTime = System.currentTimeMillis();
         IndexingResult result = new IndexingResult();
 
+        IndexingCheckpoint checkpoint = checkpointFile != null
+                ? IndexingCheckpoint.open(checkpointFile, directoryPath)
+                : null;
+        Thread shutdownHook = checkpoint != null ? registerShutdownHook(checkpoint) : null;
+
         try {
-            executeScanningPhase(directoryPath, result);
+            executeScanningPhase(directoryPath, result, cancellationToken);
+            if (checkpoint != null && !cancellationToken.isCancelled()) {
+                checkpoint.recordScanComplete(result.fileTasks.size());
+            }
 
-            executeHashingPhase(result);
+            executeHashingPhase(result, checkpoint, cancellationToken);
+
+            result.cancelled = cancellationToken.isCancelled();
+            if (result.cancelled) {
+                System.out.println("⚠️ Индексация остановлена досрочно, индексируем готовые файлы");
+            }
 
             executeIndexingPhase(result);
 
             result.totalDuration = System.currentTimeMillis() - totalStartTime;
             printFinalStatistics(result);
 
+            if (checkpoint != null && !result.cancelled) {
+                checkpoint.delete();
+            }
             return result;
 
         } catch (Exception e) {
             System.err.println("Критическая ошибка индексации: " + e.getMessage());
             throw e;
+        } finally {
+            if (checkpoint != null) {
+                removeShutdownHook(shutdownHook);
+                checkpoint.close();
+            }
+        }
+    }
+
+    /**
+     * Индексация без промежуточных списков: обход дерева, хеширование и добавление в индекс
+     * идут потоком в пределах бюджета задач в полете, поэтому память не растет с размером дерева.
+     * Статистика по размерам, журнал и IndexingResult в этом режиме не ведутся.
+     * @param directoryPath путь к директории
+     * @param cancellationToken токен отмены и бюджета времени
+     * @return количество проиндексированных файлов
+     */
+    public int indexDirectoryStreaming(String directoryPath, CancellationToken cancellationToken)
+            throws Exception {
+        boolean verbose = fileIndex.isVerbose();
+        fileIndex.setVerbose(false);
+
+        try (Stream<FileScanner.FileTask> tasks = createScanner().streamDirectory(directoryPath)) {
+            int indexed = hashCalculator.processStream(tasks, fileIndex::addOrUpdate, cancellationToken);
+            System.out.printf("Файлов в индексе: %d (добавлено %d)%n", fileIndex.size(), indexed);
+            return indexed;
+        } finally {
+            fileIndex.setVerbose(verbose);
+        }
+    }
+
+    /**
+     * При SIGTERM сбрасывает журнал на диск, чтобы следующий запуск продолжил с этого места
+     */
+    private Thread registerShutdownHook(IndexingCheckpoint checkpoint) {
+        Thread hook = new Thread(() -> {
+            try {
+                checkpoint.flush();
+                System.err.println("Индексация прервана, журнал сохранен: " + checkpoint.getJournalFile());
+            } catch (IOException e) {
+                System.err.println("Не удалось сохранить журнал: " + e.getMessage());
+            }
+        }, "checkpoint-shutdown-hook");
+        Runtime.getRuntime().addShutdownHook(hook);
+        return hook;
+    }
+
+    private void removeShutdownHook(Thread hook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // JVM уже завершается - hook отработает сам
         }
     }
 
-    private void executeScanningPhase(String directoryPath, IndexingResult result) throws Exception {
+    /**
+     * Индексирует директорию и дальше поддерживает индекс в актуальном состоянии,
+     * применяя изменения файловой системы инкрементально.
+     * Включает у индекса вторичные индексы - см. {@link IndexWatcher#start(String)}
+     * @param directoryPath путь к директории
+     * @return запущенный наблюдатель (закрыть через close())
+     */
+    public IndexWatcher watchDirectory(String directoryPath) throws Exception {
+        indexDirectory(directoryPath);
+
+        IndexWatcher watcher = new IndexWatcher(fileIndex, createScanner(), hashCalculator);
+        watcher.start(directoryPath);
+        return watcher;
+    }
+
+    private void executeScanningPhase(String directoryPath, IndexingResult result,
+                                      CancellationToken cancellationToken) throws Exception {
         System.out.println("\n--- ЭТАП 1: СКАНИРОВАНИЕ ---");
         long phaseStart = System.currentTimeMillis();
 
-        FileScanner scanner = new FileScanner(
-                FileScanner.Filters.excludeHidden()
-                        .and(FileScanner.Filters.minSize(1)),
-                false,
-                20
-        );
+        FileScanner scanner = createScanner();
 
-        result.fileTasks = scanner.scanDirectory(directoryPath);
+        result.fileTasks = new ArrayList<>();
+        scanner.scanDirectory(directoryPath, result.fileTasks::add, cancellationToken::isCancelled);
         result.scanningDuration = System.currentTimeMillis() - phaseStart;
 
         System.out.printf("Найдено файлов: %d%n", result.fileTasks.size());
@@ -91,19 +310,59 @@ public class MultiThreadFileIndexer {
         analyzeFileSizes(result.fileTasks);
     }
 
-    private void executeHashingPhase(IndexingResult result) throws Exception {
+    private FileScanner createScanner() {
+        return new FileScanner(
+                scanFilter,
+                null,
+                false,
+                20,
+                scanArchives
+        );
+    }
+
+    private void executeHashingPhase(IndexingResult result, IndexingCheckpoint checkpoint,
+                                     CancellationToken cancellationToken) throws Exception {
         if (result.fileTasks.isEmpty()) return;
 
+        if (cancellationToken.isCancelled()) {
+            return;
+        }
+
         System.out.println("\n--- ЭТАП 2: ВЫЧИСЛЕНИЕ ХЕШЕЙ ---");
         long phaseStart = System.currentTimeMillis();
 
-        ProgressTracker progressTracker = new ProgressTracker(result.fileTasks.size());
+        List<FileScanner.FileTask> toHash = result.fileTasks;
+        List<FileInfo> processed = new ArrayList<>();
+
+        if (checkpoint != null && checkpoint.getCompletedCount() > 0) {
+            toHash = new ArrayList<>();
+            for (FileScanner.FileTask task : result.fileTasks) {
+                FileInfo completed = checkpoint.findCompleted(task);
+                if (completed != null) {
+                    processed.add(completed);
+                } else {
+                    toHash.add(task);
+                }
+            }
+            result.resumedFiles = processed.size();
+            System.out.printf("Продолжение по журналу: готово %d файлов, осталось %d%n",
+                    processed.size(), toHash.size());
+        }
 
-        result.processedFiles = hashCalculator.processFiles(result.fileTasks);
+        processed.addAll(hashCalculator.processFiles(toHash,
+                checkpoint != null ? checkpoint::record : fileInfo -> { },
+                cancellationToken));
+
+        result.processedFiles = processed;
+        result.stragglers = hashCalculator.getStragglers();
+        result.retriedFiles = hashCalculator.getRetriedFiles();
         result.hashingDuration = System.currentTimeMillis() - phaseStart;
 
         System.out.printf("Обработано файлов: %d из %d%n",
                 result.processedFiles.size(), result.fileTasks.size());
+        if (!result.stragglers.isEmpty()) {
+            System.out.printf("Пропущено из-за зависшего чтения: %d%n", result.stragglers.size());
+        }
         System.out.printf("Время хеширования: %.2f сек%n", result.hashingDuration / 1000.0);
 
         calculateParallelEfficiency(result);
@@ -119,15 +378,25 @@ public class MultiThreadFileIndexer {
             fileIndex.addOrUpdate(fileInfo);
         }
 
-        result.duplicateGroups = fileIndex.findDuplicates();
+        if (detectDuplicateDirectories) {
+            DirectoryHashIndex directoryIndex = DirectoryHashIndex.build(fileIndex);
+            result.duplicateDirectories = directoryIndex.getDuplicateDirectories();
+            if (keepDuplicateGroups) {
+                result.duplicateGroups = fileIndex.findDuplicates(directoryIndex);
+            }
+        } else if (keepDuplicateGroups) {
+            result.duplicateGroups = fileIndex.findDuplicates();
+        }
         result.indexStatistics = fileIndex.getStatistics();
         result.indexingDuration = System.currentTimeMillis() - phaseStart;
 
         System.out.printf("Файлов в индексе: %d%n", fileIndex.size());
-        System.out.printf("Групп дубликатов: %d%n", result.duplicateGroups.size());
+        System.out.printf("Групп дубликатов: %d%n", result.indexStatistics.getDuplicateGroups());
         System.out.printf("Время индексации: %.2f сек%n", result.indexingDuration / 1000.0);
 
-        displayDuplicates(result.duplicateGroups);
+        if (keepDuplicateGroups) {
+            displayDuplicates(result.duplicateGroups);
+        }
     }
 
     private void analyzeFileSizes(List<FileScanner.FileTask> fileTasks) {
@@ -229,7 +498,7 @@ public class MultiThreadFileIndexer {
             System.out.println("• Слишком мало файлов для эффективной многопоточности - для маленьких задач используйте 1-2 потока");
         }
 
-        if (result.duplicateGroups.size() > result.processedFiles.size() * 0.1) {
+        if (result.getDuplicateGroupsCount() > result.processedFiles.size() * 0.1) {
             System.out.println("• Найдено много дубликатов - рассмотрите очистку или реорганизацию файлов");
         }
 
@@ -237,27 +506,6 @@ public class MultiThreadFileIndexer {
                 result.processedFiles.size() * 1000.0 / result.totalDuration);
     }
 
-    private static class ProgressTracker {
-        private final int total;
-        private final AtomicInteger completed = new AtomicInteger(0);
-        private long lastUpdateTime = System.currentTimeMillis();
-
-        public ProgressTracker(int total) {
-            this.total = total;
-        }
-
-        public void increment() {
-            int current = completed.incrementAndGet();
-            long now = System.currentTimeMillis();
-
-            if (now - lastUpdateTime > 2000 || current % Math.max(1, total / 4) == 0) {
-                double percentage = (100.0 * current) / total;
-                System.out.printf("Прогресс: %.1f%% (%d/%d)%n", percentage, current, total);
-                lastUpdateTime = now;
-            }
-        }
-    }
-
     private String formatBytes(long bytes) {
         if (bytes < 1024) return bytes + " B";
         if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
@@ -267,11 +515,26 @@ public class MultiThreadFileIndexer {
 
     public static class IndexingResult {
 
-        public List<FileScanner.FileTask> fileTasks;
-        public List<FileInfo> processedFiles;
-        public List<List<FileInfo>> duplicateGroups;
+        public List<FileScanner.FileTask> fileTasks = new ArrayList<>();
+        public List<FileInfo> processedFiles = new ArrayList<>();
+        public List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+
+        /** Самые верхние одинаковые директории (если включен их поиск) */
+        public List<DirectoryHashIndex.DirectoryGroup> duplicateDirectories = new ArrayList<>();
         public SimpleFileIndex.IndexStatistics indexStatistics;
 
+        /** Файлов, взятых из журнала прерванного запуска без повторного хеширования */
+        public int resumedFiles;
+
+        /** Индексация остановлена отменой или по бюджету времени */
+        public boolean cancelled;
+
+        /** Файлы, чтение которых зависло дольше таймаута (не входят ни в обработанные, ни в ошибки) */
+        public List<String> stragglers = new ArrayList<>();
+
+        /** Файлов, прочитанных только после повтора */
+        public int retriedFiles;
+
         public long scanningDuration;
         public long hashingDuration;
         public long indexingDuration;
@@ -282,6 +545,9 @@ public class MultiThreadFileIndexer {
         }
 
         public int getDuplicateGroupsCount() {
+            if (indexStatistics != null) {
+                return indexStatistics.getDuplicateGroups();
+            }
             return duplicateGroups != null ? duplicateGroups.size() : 0;
         }
 
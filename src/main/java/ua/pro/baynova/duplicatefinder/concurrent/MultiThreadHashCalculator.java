@@ -1,24 +1,62 @@
 package ua.pro.baynova.duplicatefinder.concurrent;
 
 import ua.pro.baynova.duplicatefinder.hash.HashCalculator;
+import ua.pro.baynova.duplicatefinder.hash.MinHashSketcher;
+import ua.pro.baynova.duplicatefinder.hash.ZipFileCache;
+import ua.pro.baynova.duplicatefinder.index.SimilarityIndex;
 import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.ArchivePath;
 import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+import ua.pro.baynova.duplicatefinder.scanner.ScanBatch;
 
 import java.io.File;
-import java.time.LocalDateTime;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class MultiThreadHashCalculator {
 
+    private static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 64L * 1024 * 1024;
+    private static final long TASK_OVERHEAD_BYTES = 512;
+    private static final int DEFAULT_MAX_RETRIES = 2;
+    private static final long DEFAULT_RETRY_BACKOFF_MILLIS = 200;
+
+    private static final int TASK_RUNNING = 0;
+    private static final int TASK_DONE = 1;
+    private static final int TASK_TIMED_OUT = 2;
+
     private final int numberOfThreads;
     private final String algorithm;
 
     private final AtomicInteger processedFiles = new AtomicInteger(0);
     private final AtomicInteger failedFiles = new AtomicInteger(0);
     private final AtomicLong totalBytes = new AtomicLong(0);
+    private final AtomicInteger cancelledFiles = new AtomicInteger(0);
+    private final AtomicInteger cachedFiles = new AtomicInteger(0);
+    private final AtomicInteger retriedFiles = new AtomicInteger(0);
+    private final Queue<String> stragglers = new ConcurrentLinkedQueue<>();
+
+    private SimilarityIndex similarityIndex;
+    private boolean xattrCacheEnabled = false;
+    private String[] additionalAlgorithms = new String[0];
+    private volatile ProgressTracker progress;
+
+    private int maxInFlightTasks;
+    private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT_BYTES;
+    private int peakInFlightTasks;
+
+    private long readTimeoutMillis = 0;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
 
     public MultiThreadHashCalculator() {
         this(Runtime.getRuntime().availableProcessors(), "MD5");
@@ -27,6 +65,7 @@ public class MultiThreadHashCalculator {
     public MultiThreadHashCalculator(int numberOfThreads, String algorithm) {
         this.numberOfThreads = numberOfThreads;
         this.algorithm = algorithm;
+        this.maxInFlightTasks = numberOfThreads * 4;
 
         System.out.println("MultiThreadHashCalculator создан:");
         System.out.println("  Потоков: " + numberOfThreads);
@@ -34,6 +73,102 @@ public class MultiThreadHashCalculator {
         System.out.println("  Доступно ядер процессора: " + Runtime.getRuntime().availableProcessors());
     }
 
+    /**
+     * Включает вычисление MinHash-сигнатур во время хеширования
+     * @param similarityIndex индекс, куда складываются сигнатуры (null - выключить)
+     */
+    public void setSimilarityIndex(SimilarityIndex similarityIndex) {
+        this.similarityIndex = similarityIndex;
+    }
+
+    public SimilarityIndex getSimilarityIndex() {
+        return similarityIndex;
+    }
+
+    /**
+     * Включает кеш хешей в расширенных атрибутах файлов (см. HashCalculator.setXattrCacheEnabled)
+     */
+    public void setXattrCacheEnabled(boolean xattrCacheEnabled) {
+        this.xattrCacheEnabled = xattrCacheEnabled;
+    }
+
+    /**
+     * Дополнительные алгоритмы, которые считаются за то же чтение файла и сохраняются
+     * в FileInfo.getDigests() (например SHA-256 для аудита рядом с основным MD5)
+     */
+    public void setAdditionalAlgorithms(String... additionalAlgorithms) {
+        // проверка алгоритмов сразу, а не в каждом потоке
+        new HashCalculator(algorithm, additionalAlgorithms);
+        this.additionalAlgorithms = additionalAlgorithms != null ? additionalAlgorithms.clone() : new String[0];
+    }
+
+    /**
+     * Дедлайн чтения файла: если за это время не прочитано ни одного блока (например, зависло
+     * чтение с NFS), сторож помечает файл как незавершенный по таймауту, прерывает его поток
+     * и добавляет в пул замену, чтобы остальные файлы не ждали. Большие файлы, которые
+     * читаются медленно, но равномерно, таймаут не получают.
+     * @param readTimeoutMillis миллисекунд без прочитанных байт (0 - без ограничения)
+     */
+    public void setReadTimeout(long readTimeoutMillis) {
+        if (readTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Таймаут не может быть отрицательным");
+        }
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public long getReadTimeout() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Повторы после временных ошибок чтения (обрыв сети, ESTALE и т.п.) с удвоением паузы.
+     * Отсутствующий файл или отказ в доступе не повторяются.
+     * @param maxRetries сколько повторов на файл (0 - без повторов)
+     * @param initialBackoffMillis пауза перед первым повтором
+     */
+    public void setRetryPolicy(int maxRetries, long initialBackoffMillis) {
+        if (maxRetries < 0 || initialBackoffMillis < 0) {
+            throw new IllegalArgumentException("Параметры повторов не могут быть отрицательными");
+        }
+        this.maxRetries = maxRetries;
+        this.retryBackoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * Файлы последнего запуска, чтение которых зависло дольше таймаута
+     */
+    public List<String> getStragglers() {
+        return new ArrayList<>(stragglers);
+    }
+
+    /**
+     * Сколько файлов в последнем запуске прочитано только со второй или следующей попытки
+     */
+    public int getRetriedFiles() {
+        return retriedFiles.get();
+    }
+
+    /**
+     * Сколько файлов взято из кеша в расширенных атрибутах без чтения
+     */
+    public int getCachedFiles() {
+        return cachedFiles.get();
+    }
+
+    /**
+     * Прогресс текущего (или последнего) запуска processFiles; null до первого запуска
+     */
+    public ProgressTracker getProgress() {
+        return progress;
+    }
+
+    /**
+     * Сколько файлов не обработано из-за отмены в последнем запуске
+     */
+    public int getCancelledFiles() {
+        return cancelledFiles.get();
+    }
+
     /**
      * Обрабатывает список файлов параллельно
      * @param fileTasks список файлов для обработки
@@ -41,6 +176,31 @@ public class MultiThreadHashCalculator {
      */
     public List<FileInfo> processFiles(List<FileScanner.FileTask> fileTasks)
             throws InterruptedException {
+        return processFiles(fileTasks, fileInfo -> { });
+    }
+
+    /**
+     * Обрабатывает список файлов параллельно, сообщая о каждом готовом результате
+     * @param fileTasks список файлов для обработки
+     * @param onResult получатель готовых результатов (вызывается в вызывающем потоке, по одному)
+     * @return список FileInfo с вычисленными хешами
+     */
+    public List<FileInfo> processFiles(List<FileScanner.FileTask> fileTasks, Consumer<FileInfo> onResult)
+            throws InterruptedException {
+        return processFiles(fileTasks, onResult, new CancellationToken());
+    }
+
+    /**
+     * Обрабатывает список файлов параллельно с возможностью отмены.
+     * После отмены новые файлы не начинаются, а начатые останавливаются на следующем блоке;
+     * возвращаются результаты, готовые к этому моменту.
+     * @param fileTasks список файлов для обработки
+     * @param onResult получатель готовых результатов (вызывается в вызывающем потоке, по одному)
+     * @param cancellationToken токен отмены и бюджета времени
+     * @return список FileInfo с вычисленными хешами (частичный, если запуск отменен)
+     */
+    public List<FileInfo> processFiles(List<FileScanner.FileTask> fileTasks, Consumer<FileInfo> onResult,
+                                       CancellationToken cancellationToken) throws InterruptedException {
 
         if (fileTasks == null || fileTasks.isEmpty()) {
             return new ArrayList<>();
@@ -49,65 +209,322 @@ public class MultiThreadHashCalculator {
         System.out.println("\nНачинаем параллельную обработку " + fileTasks.size() + " файлов...");
         long startTime = System.currentTimeMillis();
 
+        resetCounters(new ProgressTracker(fileTasks.size(),
+                fileTasks.stream().mapToLong(FileScanner.FileTask::getSize).sum()));
+
+        List<FileInfo> results = new ArrayList<>();
+        int submitted = runTasks(fileTasks.iterator(), false, fileInfo -> {
+            results.add(fileInfo);
+            onResult.accept(fileInfo);
+        }, cancellationToken);
+
+        // файлы, до которых очередь не дошла из-за отмены
+        cancelledFiles.addAndGet(fileTasks.size() - submitted);
+        finishRun(startTime, results.size());
+        return results;
+    }
+
+    /**
+     * Потоковая обработка: задачи берутся из потока по мере готовности бюджета,
+     * результаты отдаются получателю и не накапливаются.
+     * С ленивым {@link FileScanner#streamDirectory(String)} обход дерева
+     * приостанавливается, пока бюджет заполнен, поэтому память не зависит от размера дерева.
+     * @param fileTasks поток задач (закрывается вызывающим)
+     * @param onResult получатель готовых результатов (вызывается в вызывающем потоке, по одному)
+     * @param cancellationToken токен отмены и бюджета времени
+     * @return количество успешно обработанных файлов
+     */
+    public int processStream(Stream<FileScanner.FileTask> fileTasks, Consumer<FileInfo> onResult,
+                             CancellationToken cancellationToken) throws InterruptedException {
+        System.out.println("\nНачинаем потоковую параллельную обработку...");
+        long startTime = System.currentTimeMillis();
+
+        resetCounters(new ProgressTracker(0, 0));
+
+        int[] delivered = {0};
+        runTasks(fileTasks.iterator(), true, fileInfo -> {
+            delivered[0]++;
+            onResult.accept(fileInfo);
+        }, cancellationToken);
+
+        finishRun(startTime, delivered[0]);
+        return delivered[0];
+    }
+
+    /**
+     * Обработка пакета сканера: FileTask создается лениво, только для задач в полете
+     * @param batch пакет из {@link FileScanner#scanBatches}
+     * @param onResult получатель готовых результатов (вызывается в вызывающем потоке, по одному)
+     * @param cancellationToken токен отмены и бюджета времени
+     * @return количество успешно обработанных файлов
+     */
+    public int processBatch(ScanBatch batch, Consumer<FileInfo> onResult,
+                            CancellationToken cancellationToken) throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+
+        resetCounters(new ProgressTracker(batch.size(), batch.getTotalBytes()));
+
+        int[] delivered = {0};
+        runTasks(batch.taskIterator(), false, fileInfo -> {
+            delivered[0]++;
+            onResult.accept(fileInfo);
+        }, cancellationToken);
+
+        finishRun(startTime, delivered[0]);
+        return delivered[0];
+    }
+
+    /**
+     * Ограничивает объем работы "в полете": не больше maxTasks отправленных, но не собранных задач
+     * и не больше maxBytes оценочной памяти под их буферы чтения и результаты.
+     * Когда бюджет исчерпан, отправитель ждет завершения уже отправленных задач.
+     * @param maxTasks максимум задач в полете
+     * @param maxBytes максимум байт в полете (задача крупнее бюджета допускается, если она одна)
+     */
+    public void setInFlightBudget(int maxTasks, long maxBytes) {
+        if (maxTasks < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Бюджет должен быть положительным");
+        }
+        this.maxInFlightTasks = maxTasks;
+        this.maxInFlightBytes = maxBytes;
+    }
+
+    public int getMaxInFlightTasks() {
+        return maxInFlightTasks;
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    /**
+     * Наибольшее число задач в полете за последний запуск
+     */
+    public int getPeakInFlightTasks() {
+        return peakInFlightTasks;
+    }
+
+    private void resetCounters(ProgressTracker tracker) {
         processedFiles.set(0);
         failedFiles.set(0);
         totalBytes.set(0);
+        cancelledFiles.set(0);
+        cachedFiles.set(0);
+        retriedFiles.set(0);
+        stragglers.clear();
+        peakInFlightTasks = 0;
+        progress = tracker;
+    }
 
-        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
-        List<Future<FileInfo>> futures = new ArrayList<>();
+    /**
+     * Отправляет задачи в пул в пределах бюджета и собирает результаты по мере завершения
+     * (а не в порядке отправки). Вся бухгалтерия бюджета - в вызывающем потоке.
+     * @return количество отправленных задач
+     */
+    private int runTasks(Iterator<FileScanner.FileTask> tasks, boolean growProgress,
+                         Consumer<FileInfo> onResult, CancellationToken cancellationToken)
+            throws InterruptedException {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), workerThreadFactory());
+        BlockingQueue<Future<FileInfo>> completed = new LinkedBlockingQueue<>();
+        CompletionService<FileInfo> completionService = new ExecutorCompletionService<>(executor, completed);
+        Map<Future<FileInfo>, Long> inFlight = new HashMap<>();
+        Map<Future<FileInfo>, HashingTask> watched = new ConcurrentHashMap<>();
+        // зависшие потоки считаются по пулу запуска: следующий запуск начинается с новым пулом
+        AtomicInteger stuckWorkers = new AtomicInteger(0);
+        ScheduledExecutorService watchdog = readTimeoutMillis > 0
+                ? startWatchdog(executor, watched, completed, stuckWorkers) : null;
+        ZipFileCache zipFiles = new ZipFileCache();
+        long[] inFlightBytes = {0};
+        int submitted = 0;
 
         try {
-            for (FileScanner.FileTask task : fileTasks) {
-                Future<FileInfo> future = executor.submit(new HashingTask(task));
-                futures.add(future);
-            }
+            while (!cancellationToken.isCancelled() && tasks.hasNext()) {
+                FileScanner.FileTask task = tasks.next();
+                long cost = estimateTaskBytes(task);
 
-            List<FileInfo> results = collectResults(futures, startTime);
+                while (!inFlight.isEmpty() && (inFlight.size() >= maxInFlightTasks
+                        || inFlightBytes[0] + cost > maxInFlightBytes)) {
+                    collect(completionService.take(), inFlight, watched, inFlightBytes, onResult);
+                }
 
-            return results;
+                if (growProgress) {
+                    progress.addPlanned(1, task.getSize());
+                }
+                HashingTask hashingTask = new HashingTask(task, progress, cancellationToken, executor, zipFiles,
+                        stuckWorkers);
+                Future<FileInfo> future = completionService.submit(hashingTask);
+                inFlight.put(future, cost);
+                if (watchdog != null) {
+                    watched.put(future, hashingTask);
+                }
+                inFlightBytes[0] += cost;
+                submitted++;
+                peakInFlightTasks = Math.max(peakInFlightTasks, inFlight.size());
+
+                Future<FileInfo> done;
+                while ((done = completionService.poll()) != null) {
+                    collect(done, inFlight, watched, inFlightBytes, onResult);
+                }
+            }
 
+            while (!inFlight.isEmpty()) {
+                collect(completionService.take(), inFlight, watched, inFlightBytes, onResult);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Обработка прервана");
+            executor.shutdownNow();
+            throw e;
         } finally {
-            shutdownExecutor(executor);
+            if (watchdog != null) {
+                watchdog.shutdownNow();
+            }
+            shutdownExecutor(executor, cancellationToken, stuckWorkers.get());
+            zipFiles.close();
         }
+
+        return submitted;
     }
 
-    private List<FileInfo> collectResults(List<Future<FileInfo>> futures, long startTime) {
-        List<FileInfo> results = new ArrayList<>();
-        int completed = 0;
+    /**
+     * Потоки пула - демоны: поток, навсегда зависший в чтении, не должен держать JVM
+     */
+    private static ThreadFactory workerThreadFactory() {
+        AtomicInteger counter = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, "hash-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 
-        for (Future<FileInfo> future : futures) {
-            try {
-                FileInfo result = future.get();
-                if (result != null) {
-                    results.add(result);
+    /**
+     * Сторож: несколько раз за период таймаута проверяет начатые задачи. Задача без прочитанных
+     * блоков дольше таймаута помечается зависшей, ее future отменяется, поток прерывается,
+     * а пул получает дополнительный поток взамен. CompletionService выдает future только после
+     * возврата потока, поэтому сторож сам кладет его в очередь завершенных.
+     */
+    private ScheduledExecutorService startWatchdog(ThreadPoolExecutor executor,
+                                                   Map<Future<FileInfo>, HashingTask> watched,
+                                                   BlockingQueue<Future<FileInfo>> completed,
+                                                   AtomicInteger stuckWorkers) {
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hash-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutMillis);
+        long period = Math.max(10, readTimeoutMillis / 4);
+
+        watchdog.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            for (Map.Entry<Future<FileInfo>, HashingTask> entry : watched.entrySet()) {
+                HashingTask task = entry.getValue();
+                if (task.isStalled(now, timeoutNanos) && task.markTimedOut()) {
+                    stuckWorkers.incrementAndGet();
+                    stragglers.add(task.fileTask.getPath());
+                    resizePool(executor, 1);
+                    entry.getKey().cancel(true);
+                    completed.offer(entry.getKey());
+                    System.err.printf("Чтение зависло дольше %d мс, файл пропущен: %s%n",
+                            readTimeoutMillis, task.fileTask.getPath());
                 }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        return watchdog;
+    }
+
+    /**
+     * Увеличивает или уменьшает пул; при росте сначала максимум, при уменьшении - сначала ядро
+     */
+    private static void resizePool(ThreadPoolExecutor executor, int delta) {
+        synchronized (executor) {
+            if (delta > 0) {
+                executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+                executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+            } else {
+                executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+                executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+            }
+        }
+    }
 
-                completed++;
+    private void collect(Future<FileInfo> future, Map<Future<FileInfo>, Long> inFlight,
+                         Map<Future<FileInfo>, HashingTask> watched, long[] inFlightBytes,
+                         Consumer<FileInfo> onResult) throws InterruptedException {
+        Long cost = inFlight.remove(future);
+        if (cost == null) {
+            // зависший поток вернулся после того, как сторож уже выдал его future
+            return;
+        }
+        inFlightBytes[0] -= cost;
+        HashingTask task = watched.remove(future);
 
-                if (completed % Math.max(1, futures.size() / 4) == 0) {
-                    double progress = (100.0 * completed) / futures.size();
-                    long elapsed = System.currentTimeMillis() - startTime;
-                    System.out.printf("Прогресс: %.1f%% (%d/%d файлов, %d сек)%n",
-                            progress, completed, futures.size(), elapsed / 1000);
-                }
+        try {
+            FileInfo result = future.get();
+            if (result != null) {
+                onResult.accept(result);
+            }
 
-            } catch (ExecutionException e) {
-                failedFiles.incrementAndGet();
-                System.err.println("Ошибка обработки файла: " + e.getCause().getMessage());
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                System.err.println("Обработка прервана");
-                break;
+        } catch (CancellationException e) {
+            // зависшие по таймауту учтены сторожем отдельно
+            if (task == null || !task.isTimedOut()) {
+                cancelledFiles.incrementAndGet();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                cancelledFiles.incrementAndGet();
+                return;
             }
+            failedFiles.incrementAndGet();
+            System.err.println("Ошибка обработки файла: " + e.getCause().getMessage());
         }
+    }
 
-        long totalTime = System.currentTimeMillis() - startTime;
-        printStatistics(totalTime, results.size());
+    /**
+     * Оценка памяти, которую держит задача в полете: буфер чтения, сигнатура и результат
+     */
+    private long estimateTaskBytes(FileScanner.FileTask task) {
+        long bytes = Math.min(task.getSize(), HashCalculator.BUFFER_SIZE) + TASK_OVERHEAD_BYTES
+                + 2L * task.getPath().length();
+        if (similarityIndex != null) {
+            bytes += 8L * similarityIndex.getSignatureLength();
+        }
+        return bytes;
+    }
 
-        return results;
+    private void finishRun(long startTime, int successCount) {
+        if (cancelledFiles.get() > 0) {
+            System.out.printf("Обработка остановлена досрочно: не обработано %d файлов%n", cancelledFiles.get());
+        }
+
+        long totalTime = System.currentTimeMillis() - startTime;
+        printStatistics(totalTime, successCount);
     }
 
-    private void shutdownExecutor(ExecutorService executor) throws InterruptedException {
+    /**
+     * @param stuckWorkers сколько потоков этого пула все еще зависли в чтении
+     */
+    private void shutdownExecutor(ExecutorService executor, CancellationToken cancellationToken,
+                                  int stuckWorkers) throws InterruptedException {
+        if (stuckWorkers > 0) {
+            // зависший в чтении поток может не вернуться никогда - ждать его бессмысленно
+            executor.shutdownNow();
+            System.err.printf("Оставлено зависших потоков: %d%n", stuckWorkers);
+            return;
+        }
+
+        if (cancellationToken.isCancelled()) {
+            executor.shutdownNow();
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                System.err.println("Не удалось корректно остановить все потоки");
+            }
+            return;
+        }
+
         executor.shutdown();
 
         if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
@@ -124,6 +541,10 @@ public class MultiThreadHashCalculator {
         System.out.println("\n=== СТАТИСТИКА МНОГОПОТОЧНОЙ ОБРАБОТКИ ===");
         System.out.printf("Успешно обработано: %d файлов%n", successCount);
         System.out.printf("Ошибок: %d%n", failedFiles.get());
+        if (!stragglers.isEmpty() || retriedFiles.get() > 0) {
+            System.out.printf("Зависло по таймауту: %d, прочитано после повтора: %d%n",
+                    stragglers.size(), retriedFiles.get());
+        }
         System.out.printf("Общий размер: %s%n", formatBytes(totalBytes.get()));
         System.out.printf("Время выполнения: %.2f сек%n", totalTimeMs / 1000.0);
 
@@ -139,30 +560,124 @@ public class MultiThreadHashCalculator {
 
     private class HashingTask implements Callable<FileInfo> {
         private final FileScanner.FileTask fileTask;
-
-        public HashingTask(FileScanner.FileTask fileTask) {
+        private final ProgressTracker progress;
+        private final CancellationToken cancellationToken;
+        private final ThreadPoolExecutor executor;
+        private final ZipFileCache zipFiles;
+        private final AtomicInteger stuckWorkers;
+
+        private final AtomicInteger state = new AtomicInteger(TASK_RUNNING);
+        private volatile long lastProgressNanos = 0;
+
+        public HashingTask(FileScanner.FileTask fileTask, ProgressTracker progress,
+                           CancellationToken cancellationToken, ThreadPoolExecutor executor,
+                           ZipFileCache zipFiles, AtomicInteger stuckWorkers) {
             this.fileTask = fileTask;
+            this.progress = progress;
+            this.cancellationToken = cancellationToken;
+            this.executor = executor;
+            this.zipFiles = zipFiles;
+            this.stuckWorkers = stuckWorkers;
+        }
+
+        /**
+         * Задача начата и дольше таймаута не прочитала ни одного блока
+         */
+        boolean isStalled(long now, long timeoutNanos) {
+            long last = lastProgressNanos;
+            return last != 0 && state.get() == TASK_RUNNING && now - last > timeoutNanos;
+        }
+
+        boolean markTimedOut() {
+            return state.compareAndSet(TASK_RUNNING, TASK_TIMED_OUT);
+        }
+
+        boolean isTimedOut() {
+            return state.get() == TASK_TIMED_OUT;
         }
 
         @Override
         public FileInfo call() throws Exception {
+            lastProgressNanos = System.nanoTime();
+            try {
+                return hash();
+            } finally {
+                // зависший поток все-таки вернулся - замена в пуле больше не нужна
+                if (!state.compareAndSet(TASK_RUNNING, TASK_DONE)) {
+                    stuckWorkers.decrementAndGet();
+                    resizePool(executor, -1);
+                }
+            }
+        }
+
+        private FileInfo hash() throws Exception {
+            cancellationToken.throwIfCancelled();
+
             String threadName = Thread.currentThread().getName();
             File file = new File(fileTask.getPath());
+            long[] bytesRead = {0};
 
             try {
-                HashCalculator calculator = new HashCalculator(algorithm);
-                String hash = calculator.calculateHash(file);
+                HashCalculator calculator = new HashCalculator(algorithm, additionalAlgorithms);
+                calculator.setXattrCacheEnabled(xattrCacheEnabled);
+                calculator.setZipFileCache(zipFiles);
+                MinHashSketcher sketcher = null;
+                Map<String, String> digests;
+
+                for (int attempt = 0; ; attempt++) {
+                    sketcher = similarityIndex != null
+                            ? new MinHashSketcher(similarityIndex.getSignatureLength())
+                            : null;
+                    try {
+                        digests = calculator.calculateDigests(fileTask.getPath(), sketcher, bytes -> {
+                            lastProgressNanos = System.nanoTime();
+                            bytesRead[0] += bytes;
+                            progress.addReadBytes(bytes);
+                            cancellationToken.throwIfCancelled();
+                        });
+                        if (attempt > 0) {
+                            retriedFiles.incrementAndGet();
+                        }
+                        break;
+
+                    } catch (IOException e) {
+                        if (attempt >= maxRetries || isTimedOut() || !isTransient(e, fileTask.getPath())) {
+                            throw e;
+                        }
+
+                        long backoff = retryBackoffMillis << attempt;
+                        System.err.printf("[%s] Повтор %d/%d для %s через %d мс: %s%n",
+                                threadName, attempt + 1, maxRetries, file.getName(), backoff, e.getMessage());
+
+                        // прочитанное в неудачной попытке прочитается заново
+                        progress.addBytes(-bytesRead[0]);
+                        bytesRead[0] = 0;
+                        Thread.sleep(backoff);
+                        cancellationToken.throwIfCancelled();
+                        lastProgressNanos = System.nanoTime();
+                    }
+                }
+
+                if (sketcher != null) {
+                    similarityIndex.addOrUpdate(fileTask.getPath(), sketcher.finish());
+                }
+                if (calculator.isLastHashFromCache()) {
+                    cachedFiles.incrementAndGet();
+                    progress.addBytes(fileTask.getSize());
+                }
 
                 FileInfo fileInfo = new FileInfo(
                         fileTask.getPath(),
-                        hash,
+                        digests.get(algorithm),
                         fileTask.getSize(),
-                        fileTask.getLastModified(),
-                        LocalDateTime.now()
+                        fileTask.getLastModifiedMillis(),
+                        System.currentTimeMillis(),
+                        digests.size() > 1 ? digests : null
                 );
 
                 processedFiles.incrementAndGet();
                 totalBytes.addAndGet(fileTask.getSize());
+                progress.increment();
 
                 if (fileTask.getSize() > 1024 * 1024) {
                     System.out.printf("[%s] Обработан большой файл: %s (%.1f MB)%n",
@@ -171,7 +686,15 @@ public class MultiThreadHashCalculator {
 
                 return fileInfo;
 
+            } catch (CancellationException e) {
+                throw e;
             } catch (Exception e) {
+                // непрочитанный остаток засчитывается, чтобы оставшийся объем и ETA сходились
+                progress.addBytes(Math.max(0, fileTask.getSize() - bytesRead[0]));
+                if (isTimedOut()) {
+                    // уже учтен сторожем как зависший
+                    throw e;
+                }
                 failedFiles.incrementAndGet();
                 System.err.printf("[%s] Ошибка обработки %s: %s%n",
                         threadName, file.getName(), e.getMessage());
@@ -180,6 +703,21 @@ public class MultiThreadHashCalculator {
         }
     }
 
+    /**
+     * Временная ли ошибка: прерывание, отсутствие файла и отказ в доступе повтор не исправит
+     */
+    private static boolean isTransient(IOException e, String path) {
+        if (e instanceof InterruptedIOException || e instanceof ClosedByInterruptException
+                || e instanceof NoSuchFileException || e instanceof AccessDeniedException
+                || e instanceof FileNotFoundException) {
+            return false;
+        }
+
+        // проверки HashCalculator до чтения (нет файла, нет прав) бросают обычный IOException
+        File file = new File(ArchivePath.isArchiveEntry(path) ? ArchivePath.archivePart(path) : path);
+        return file.isFile() && file.canRead();
+    }
+
     public ComparisonResult comparePerformance(List<FileScanner.FileTask> fileTasks)
             throws InterruptedException {
 
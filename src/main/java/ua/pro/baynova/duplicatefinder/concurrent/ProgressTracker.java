@@ -0,0 +1,161 @@
+package ua.pro.baynova.duplicatefinder.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Прогресс хеширования: файлы и байты, скорость и оставшееся время.
+ * Скорость считается по скользящему окну последних секунд, а не от начала запуска,
+ * поэтому ETA быстро подстраивается, когда мелкие файлы сменяются большими.
+ * Все методы можно вызывать из любых потоков.
+ */
+public class ProgressTracker {
+
+    private static final long SAMPLE_INTERVAL_NANOS = 250_000_000L;
+    private static final long WINDOW_NANOS = 10_000_000_000L;
+    private static final long PRINT_INTERVAL_MILLIS = 2000;
+
+    private final AtomicInteger totalFiles;
+    private final AtomicLong totalBytes;
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicInteger completedFiles = new AtomicInteger(0);
+    private final AtomicLong bytesDone = new AtomicLong(0);
+    private final AtomicLong firstByteNanos = new AtomicLong(0);
+
+    // выборки (время, байты) за последние WINDOW_NANOS
+    private final Deque<long[]> samples = new ArrayDeque<>();
+    private long lastPrintTime = System.currentTimeMillis();
+
+    public ProgressTracker(int totalFiles, long totalBytes) {
+        this.totalFiles = new AtomicInteger(totalFiles);
+        this.totalBytes = new AtomicLong(totalBytes);
+        samples.addLast(new long[]{startNanos, 0});
+    }
+
+    /**
+     * Увеличивает общий объем работы - для потоковой обработки, где он заранее неизвестен
+     */
+    public void addPlanned(int files, long bytes) {
+        totalFiles.addAndGet(files);
+        totalBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Учитывает объем: прочитанный блок, файл из кеша или непрочитанный остаток при ошибке
+     */
+    public void addBytes(long bytes) {
+        bytesDone.addAndGet(bytes);
+    }
+
+    /**
+     * Учитывает блок, действительно прочитанный с диска, - только он отмечает первый байт
+     */
+    public void addReadBytes(long bytes) {
+        if (firstByteNanos.get() == 0) {
+            firstByteNanos.compareAndSet(0, System.nanoTime());
+        }
+        bytesDone.addAndGet(bytes);
+    }
+
+    /**
+     * Учитывает завершенный файл и раз в пару секунд (и на каждой четверти) печатает прогресс
+     */
+    public void increment() {
+        int current = completedFiles.incrementAndGet();
+        long now = System.currentTimeMillis();
+
+        boolean print;
+        synchronized (this) {
+            print = now - lastPrintTime > PRINT_INTERVAL_MILLIS || current % Math.max(1, totalFiles.get() / 4) == 0;
+            if (print) {
+                lastPrintTime = now;
+            }
+        }
+
+        if (print) {
+            System.out.println(this);
+        }
+    }
+
+    public int getCompletedFiles() {
+        return completedFiles.get();
+    }
+
+    public int getTotalFiles() {
+        return totalFiles.get();
+    }
+
+    public long getBytesDone() {
+        return bytesDone.get();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public long getBytesRemaining() {
+        return Math.max(0, totalBytes.get() - bytesDone.get());
+    }
+
+    public double getPercentage() {
+        long total = totalBytes.get();
+        return total > 0 ? 100.0 * Math.min(bytesDone.get(), total) / total : 100.0;
+    }
+
+    /**
+     * Момент первого прочитанного с диска блока ({@link #addReadBytes}) по System.nanoTime()
+     * или 0, если чтения еще не было. Попадания в кеш и поправки объема не считаются.
+     * Разница с моментом запуска - время до первого байта: сколько ушло на старт, обход и пул.
+     */
+    public long getFirstByteNanos() {
+        return firstByteNanos.get();
+    }
+
+    public long getElapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Скорость по скользящему окну, байт/сек
+     */
+    public synchronized double getRecentBytesPerSecond() {
+        long now = System.nanoTime();
+        long done = bytesDone.get();
+
+        if (now - samples.peekLast()[0] >= SAMPLE_INTERVAL_NANOS) {
+            samples.addLast(new long[]{now, done});
+        }
+        while (samples.size() > 2 && now - samples.peekFirst()[0] > WINDOW_NANOS) {
+            samples.removeFirst();
+        }
+
+        long[] oldest = samples.peekFirst();
+        long elapsed = now - oldest[0];
+        return elapsed > 0 ? (done - oldest[1]) * 1e9 / elapsed : 0;
+    }
+
+    /**
+     * Оценка оставшегося времени в миллисекундах (-1 если скорость еще неизвестна)
+     */
+    public long getEtaMillis() {
+        long remaining = getBytesRemaining();
+        if (remaining == 0) {
+            return 0;
+        }
+        double speed = getRecentBytesPerSecond();
+        return speed > 0 ? (long) (remaining / speed * 1000) : -1;
+    }
+
+    @Override
+    public String toString() {
+        long eta = getEtaMillis();
+        return String.format("Прогресс: %.1f%% (%d/%d файлов, %.1f/%.1f MB, %.1f MB/сек, осталось %s)",
+                getPercentage(), getCompletedFiles(), getTotalFiles(),
+                getBytesDone() / (1024.0 * 1024), getTotalBytes() / (1024.0 * 1024),
+                getRecentBytesPerSecond() / (1024 * 1024),
+                eta < 0 ? "?" : String.format("%.0f сек", eta / 1000.0));
+    }
+}
@@ -0,0 +1,414 @@
+package ua.pro.baynova.duplicatefinder.dedup;
+
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.ArchivePath;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Освобождение места по найденным группам дубликатов: замена жесткими ссылками,
+ * перенос в карантин или удаление.
+ *
+ * В каждой группе остается один файл - первый по пути обычный файл, не изменившийся
+ * с индексации; остальные обрабатываются. Записи архивов не трогаются.
+ * Перед действием размер и время изменения каждого файла сверяются с индексом -
+ * если файл успел измениться, он пропускается. Группы обрабатываются параллельно,
+ * но на одну файловую систему одновременно приходится не больше заданного числа групп.
+ *
+ * Каждое действие заранее пишется в журнал отмены, по которому {@link #undo(Path)}
+ * возвращает файлы на место.
+ */
+public class DedupExecutor {
+
+    public enum Action { HARD_LINK, MOVE, DELETE }
+
+    private static final String TEMP_SUFFIX = ".dedup-tmp-";
+    private static final int MAX_TEMP_ATTEMPTS = 16;
+
+    private final Action action;
+    private final int numberOfThreads;
+    private final int perFileStoreLimit;
+
+    private boolean dryRun = false;
+    private Path undoJournal;
+    private Path quarantineDirectory;
+
+    private final ConcurrentMap<FileStore, Semaphore> fileStoreLimits = new ConcurrentHashMap<>();
+    private BufferedWriter journalWriter;
+
+    /**
+     * @param action что делать с лишними копиями
+     * @param numberOfThreads потоков
+     * @param perFileStoreLimit сколько групп одновременно на одной файловой системе
+     */
+    public DedupExecutor(Action action, int numberOfThreads, int perFileStoreLimit) {
+        if (action == null) {
+            throw new IllegalArgumentException("Действие не может быть null");
+        }
+        if (numberOfThreads < 1 || perFileStoreLimit < 1) {
+            throw new IllegalArgumentException("Количество потоков и лимит должны быть положительными");
+        }
+
+        this.action = action;
+        this.numberOfThreads = numberOfThreads;
+        this.perFileStoreLimit = perFileStoreLimit;
+    }
+
+    /**
+     * Пробный прогон: все проверки выполняются, но файлы не меняются
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Файл журнала отмены (дописывается)
+     */
+    public void setUndoJournal(Path undoJournal) {
+        this.undoJournal = undoJournal;
+    }
+
+    /**
+     * Куда переносить копии при {@link Action#MOVE}; внутри повторяется исходный путь файла
+     */
+    public void setQuarantineDirectory(Path quarantineDirectory) {
+        this.quarantineDirectory = quarantineDirectory;
+    }
+
+    /**
+     * Обрабатывает все группы дубликатов индекса.
+     * Удаленные и перенесенные копии удаляются и из индекса.
+     */
+    public DedupResult execute(SimpleFileIndex index) throws IOException, InterruptedException {
+        if (action == Action.MOVE && quarantineDirectory == null) {
+            throw new IllegalStateException("Для переноса нужна директория карантина");
+        }
+
+        long startTime = System.currentTimeMillis();
+        DedupResult result = new DedupResult(dryRun);
+
+        // только хеши: сами группы строятся по одной, уже без блокировки индекса
+        List<String> hashes = new ArrayList<>();
+        index.forEachDuplicateHash((hash, fileCount, wastedBytes) -> hashes.add(hash));
+
+        System.out.printf("%sОбработка %d групп дубликатов: %s%n",
+                dryRun ? "[ПРОБНЫЙ ПРОГОН] " : "", hashes.size(), action);
+
+        if (undoJournal != null && !dryRun) {
+            journalWriter = Files.newBufferedWriter(undoJournal, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+        Semaphore inFlight = new Semaphore(numberOfThreads * 4);
+
+        try {
+            for (String hash : hashes) {
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        processGroup(index, index.findByHash(hash), result);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            if (journalWriter != null) {
+                journalWriter.close();
+                journalWriter = null;
+            }
+        }
+
+        result.duration = System.currentTimeMillis() - startTime;
+        System.out.println(result);
+        return result;
+    }
+
+    private void processGroup(SimpleFileIndex index, List<FileInfo> group, DedupResult result) {
+        if (group.size() < 2) {
+            return;
+        }
+        result.groupsProcessed.incrementAndGet();
+
+        group.sort(Comparator.comparing(FileInfo::getPath));
+        FileInfo keeper = null;
+        for (FileInfo candidate : group) {
+            if (!ArchivePath.isArchiveEntry(candidate.getPath()) && isUnchanged(candidate)) {
+                keeper = candidate;
+                break;
+            }
+        }
+
+        if (keeper == null) {
+            // оставить нечего: все копии либо в архивах, либо изменились
+            for (FileInfo fileInfo : group.subList(1, group.size())) {
+                if (ArchivePath.isArchiveEntry(fileInfo.getPath())) {
+                    result.skippedArchiveEntries.incrementAndGet();
+                } else {
+                    result.skippedChanged.incrementAndGet();
+                }
+            }
+            return;
+        }
+
+        Path keeperPath = Paths.get(keeper.getPath());
+        Semaphore limit;
+        try {
+            limit = fileStoreLimits.computeIfAbsent(Files.getFileStore(keeperPath),
+                    store -> new Semaphore(perFileStoreLimit));
+        } catch (IOException e) {
+            result.addError(keeper.getPath(), e);
+            return;
+        }
+
+        limit.acquireUninterruptibly();
+        try {
+            for (FileInfo duplicate : group) {
+                if (duplicate != keeper) {
+                    processDuplicate(index, keeper, keeperPath, duplicate, result);
+                }
+            }
+        } finally {
+            limit.release();
+        }
+    }
+
+    private void processDuplicate(SimpleFileIndex index, FileInfo keeper, Path keeperPath,
+                                  FileInfo duplicate, DedupResult result) {
+        if (ArchivePath.isArchiveEntry(duplicate.getPath())) {
+            result.skippedArchiveEntries.incrementAndGet();
+            return;
+        }
+
+        Path duplicatePath = Paths.get(duplicate.getPath());
+
+        try {
+            if (action == Action.HARD_LINK && Files.isSameFile(keeperPath, duplicatePath)) {
+                result.skippedAlreadyLinked.incrementAndGet();
+                return;
+            }
+            if (!isUnchanged(duplicate)) {
+                result.skippedChanged.incrementAndGet();
+                return;
+            }
+
+            if (action == Action.HARD_LINK) {
+                if (!Files.getFileStore(keeperPath).equals(Files.getFileStore(duplicatePath))) {
+                    result.skippedOtherFileStore.incrementAndGet();
+                    return;
+                }
+            }
+
+            if (!dryRun) {
+                Path target = action == Action.MOVE ? quarantinePath(duplicatePath) : null;
+                journal(duplicate, keeperPath, target);
+                perform(keeperPath, duplicatePath, target);
+
+                if (action == Action.HARD_LINK) {
+                    // ссылка получила время изменения оставленного файла
+                    index.addOrUpdate(new FileInfo(duplicate.getPath(), duplicate.getHash(), duplicate.getSize(),
+                            keeper.getLastModifiedMillis(), System.currentTimeMillis(), duplicate.getDigests()));
+                } else {
+                    index.remove(duplicate.getPath());
+                }
+            }
+
+            result.actionsPerformed.incrementAndGet();
+            result.reclaimedBytes.addAndGet(duplicate.getSize());
+
+        } catch (IOException e) {
+            result.addError(duplicate.getPath(), e);
+        }
+    }
+
+    private void perform(Path keeperPath, Path duplicatePath, Path target) throws IOException {
+        switch (action) {
+            case HARD_LINK -> {
+                // ссылка создается рядом и атомарно подменяет копию - копия не пропадает ни на миг
+                Path temp = createTempSibling(duplicatePath, candidate -> Files.createLink(candidate, keeperPath));
+                try {
+                    Files.move(temp, duplicatePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    Files.deleteIfExists(temp);
+                    throw e;
+                }
+            }
+            case MOVE -> {
+                Files.createDirectories(target.getParent());
+                Files.move(duplicatePath, target);
+            }
+            case DELETE -> Files.delete(duplicatePath);
+        }
+    }
+
+    /**
+     * Создает временный файл рядом с копией под случайным именем. Занятое имя не удаляется
+     * и не перезаписывается - берется следующее, поэтому чужие файлы не пострадают.
+     * @param create создание файла по имени; должно бросать FileAlreadyExistsException, если имя занято
+     */
+    private static Path createTempSibling(Path duplicatePath, TempCreator create) throws IOException {
+        for (int attempt = 0; attempt < MAX_TEMP_ATTEMPTS; attempt++) {
+            Path candidate = duplicatePath.resolveSibling(duplicatePath.getFileName() + TEMP_SUFFIX
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+            try {
+                create.create(candidate);
+                return candidate;
+            } catch (FileAlreadyExistsException e) {
+                // имя занято - пробуем другое
+            }
+        }
+        throw new IOException("Не удалось подобрать временное имя рядом с " + duplicatePath);
+    }
+
+    @FunctionalInterface
+    private interface TempCreator {
+        void create(Path path) throws IOException;
+    }
+
+    private Path quarantinePath(Path duplicatePath) {
+        Path absolute = duplicatePath.toAbsolutePath();
+        Path relative = absolute.getRoot() != null ? absolute.getRoot().relativize(absolute) : absolute;
+        return quarantineDirectory.resolve(relative.toString());
+    }
+
+    /**
+     * Размер и время изменения на диске совпадают с индексом
+     */
+    private boolean isUnchanged(FileInfo fileInfo) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(Paths.get(fileInfo.getPath()),
+                    BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            return attrs.isRegularFile() && attrs.size() == fileInfo.getSize()
+                    && attrs.lastModifiedTime().toMillis() == fileInfo.getLastModifiedMillis();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Запись журнала делается до действия: повтор отмены для несостоявшегося действия безвреден
+     */
+    private void journal(FileInfo duplicate, Path keeperPath, Path target) throws IOException {
+        if (journalWriter == null) {
+            return;
+        }
+
+        long modifiedMillis = duplicate.getLastModifiedMillis() != FileInfo.NO_TIME
+                ? duplicate.getLastModifiedMillis()
+                : -1;
+        String line = String.join("\t", action.name(), duplicate.getPath(), keeperPath.toString(),
+                target != null ? target.toString() : "", String.valueOf(modifiedMillis));
+
+        synchronized (this) {
+            journalWriter.write(line);
+            journalWriter.newLine();
+            journalWriter.flush();
+        }
+    }
+
+    /**
+     * Отменяет действия по журналу, в обратном порядке.
+     * Жесткая ссылка и удаленная копия восстанавливаются копированием оставленного файла
+     * (содержимое совпадало по хешу), перенесенная копия возвращается из карантина.
+     * @return количество восстановленных файлов
+     */
+    public static int undo(Path undoJournal) throws IOException {
+        List<String> lines = Files.readAllLines(undoJournal, StandardCharsets.UTF_8);
+        Collections.reverse(lines);
+        int restored = 0;
+
+        for (String line : lines) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 5) {
+                continue;
+            }
+
+            Action action = Action.valueOf(fields[0]);
+            Path duplicatePath = Paths.get(fields[1]);
+            Path keeperPath = Paths.get(fields[2]);
+            long modifiedMillis = Long.parseLong(fields[4]);
+
+            try {
+                if (action == Action.MOVE) {
+                    Path target = Paths.get(fields[3]);
+                    if (!Files.exists(target)) {
+                        continue;
+                    }
+                    Files.createDirectories(duplicatePath.getParent());
+                    Files.move(target, duplicatePath);
+                } else {
+                    Path temp = createTempSibling(duplicatePath, candidate -> Files.copy(keeperPath, candidate));
+                    try {
+                        Files.move(temp, duplicatePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    } catch (IOException e) {
+                        Files.deleteIfExists(temp);
+                        throw e;
+                    }
+                }
+
+                if (modifiedMillis >= 0) {
+                    Files.setLastModifiedTime(duplicatePath, FileTime.fromMillis(modifiedMillis));
+                }
+                restored++;
+
+            } catch (IOException e) {
+                System.err.println("Не удалось восстановить " + duplicatePath + ": " + e.getMessage());
+            }
+        }
+
+        System.out.println("Восстановлено файлов: " + restored);
+        return restored;
+    }
+
+    public static class DedupResult {
+
+        public final boolean dryRun;
+        public final AtomicInteger groupsProcessed = new AtomicInteger();
+        public final AtomicInteger actionsPerformed = new AtomicInteger();
+        public final AtomicInteger skippedChanged = new AtomicInteger();
+        public final AtomicInteger skippedArchiveEntries = new AtomicInteger();
+        public final AtomicInteger skippedAlreadyLinked = new AtomicInteger();
+        public final AtomicInteger skippedOtherFileStore = new AtomicInteger();
+        public final AtomicLong reclaimedBytes = new AtomicLong();
+        public final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        public long duration;
+
+        public DedupResult(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        void addError(String path, IOException e) {
+            errors.add(path + ": " + e.getMessage());
+            System.err.println("Ошибка обработки " + path + ": " + e.getMessage());
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Результат%s:\n" +
+                            "  Групп: %d\n" +
+                            "  Обработано копий: %d (%.1f MB)\n" +
+                            "  Пропущено измененных: %d, записей архивов: %d\n" +
+                            "  Уже связаны: %d, на другой файловой системе: %d\n" +
+                            "  Ошибок: %d\n" +
+                            "  Время: %.2f сек",
+                    dryRun ? " (пробный прогон)" : "",
+                    groupsProcessed.get(), actionsPerformed.get(), reclaimedBytes.get() / (1024.0 * 1024),
+                    skippedChanged.get(), skippedArchiveEntries.get(), skippedAlreadyLinked.get(), skippedOtherFileStore.get(),
+                    errors.size(), duration / 1000.0);
+        }
+    }
+}
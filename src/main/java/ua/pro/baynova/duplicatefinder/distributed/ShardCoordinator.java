@@ -0,0 +1,466 @@
+package ua.pro.baynova.duplicatefinder.distributed;
+
+import ua.pro.baynova.duplicatefinder.index.IndexStorage;
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Координатор шардированной индексации в нескольких процессах.
+ * Делит дерево на шарды по директориям верхнего уровня (плюс отдельный шард
+ * для файлов в самом корне), раздает их воркерам через локальные сокеты,
+ * собирает частичные индексы и сливает их в один SimpleFileIndex.
+ *
+ * Когда необработанных шардов не осталось, освободившийся воркер получает копию
+ * шарда, который еще выполняется у другого воркера (спекулятивное выполнение, как
+ * у отстающих задач MapReduce) - засчитывается тот результат, который придет первым,
+ * а проигравшей копии отправляется отмена, чтобы она не читала диск впустую.
+ *
+ * Файлы, которые воркер не смог прочитать, не теряются молча: они попадают
+ * в ShardingResult.failedFiles.
+ */
+public class ShardCoordinator {
+
+    private static final int MAX_DEPTH = 20;
+    private static final int MAX_COPIES_PER_SHARD = 2;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final Path root;
+    private final String algorithm;
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final Deque<Shard> pending = new ArrayDeque<>();
+    private final Map<Integer, List<FileInfo>> results = new HashMap<>();
+    private final List<String> errors = new ArrayList<>();
+    private final Map<Integer, List<String>> failedFiles = new HashMap<>();
+    private final Map<Integer, DataOutputStream> connections = new HashMap<>();
+
+    private int stolenShards = 0;
+    private int cancelledCopies = 0;
+    private int nextWorkerId = 0;
+
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+
+    public ShardCoordinator(String rootDirectory) {
+        this(rootDirectory, "MD5");
+    }
+
+    public ShardCoordinator(String rootDirectory, String algorithm) {
+        if (rootDirectory == null || rootDirectory.trim().isEmpty()) {
+            throw new IllegalArgumentException("Путь к директории не может быть пустым");
+        }
+
+        this.root = Paths.get(rootDirectory).toAbsolutePath().normalize();
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Полный цикл: делит дерево, запускает локальные процессы-воркеры, ждет и сливает результаты
+     * @param numberOfWorkers количество процессов-воркеров
+     * @param threadsPerWorker потоков хеширования в каждом воркере
+     * @param timeoutSeconds максимальное время ожидания
+     */
+    public ShardingResult run(int numberOfWorkers, int threadsPerWorker, long timeoutSeconds) throws Exception {
+        long startTime = System.currentTimeMillis();
+
+        int port = start();
+        List<Process> workers = launchLocalWorkers(numberOfWorkers, threadsPerWorker, port);
+
+        try {
+            ShardingResult result = awaitResult(timeoutSeconds);
+            result.totalDuration = System.currentTimeMillis() - startTime;
+            return result;
+        } finally {
+            stop();
+            for (Process worker : workers) {
+                if (!worker.waitFor(5, TimeUnit.SECONDS)) {
+                    worker.destroyForcibly();
+                }
+            }
+        }
+    }
+
+    /**
+     * Делит дерево на шарды и начинает принимать подключения воркеров
+     * @return порт на 127.0.0.1
+     */
+    public synchronized int start() throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IOException("Указанный путь не является директорией: " + root);
+        }
+
+        createShards();
+
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptThread = new Thread(this::acceptLoop, "shard-coordinator");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        System.out.println("Координатор запущен на порту " + serverSocket.getLocalPort() +
+                ", шардов: " + shards.size());
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Запускает воркеры отдельными JVM с тем же classpath
+     */
+    public List<Process> launchLocalWorkers(int count, int threadsPerWorker, int port) throws IOException {
+        String javaBinary = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        List<Process> processes = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            ProcessBuilder builder = new ProcessBuilder(
+                    javaBinary, "-cp", classpath, ShardWorker.class.getName(),
+                    "127.0.0.1", String.valueOf(port), String.valueOf(threadsPerWorker), algorithm);
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            processes.add(builder.start());
+        }
+
+        System.out.println("Запущено воркеров: " + count);
+        return processes;
+    }
+
+    /**
+     * Ждет завершения всех шардов и сливает частичные индексы
+     */
+    public ShardingResult awaitResult(long timeoutSeconds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+
+        synchronized (this) {
+            while (results.size() < shards.size()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Шардированная индексация не завершилась за " +
+                            timeoutSeconds + " сек (готово " + results.size() + " из " + shards.size() + ")");
+                }
+                wait(remaining);
+            }
+        }
+
+        return mergeResults();
+    }
+
+    public synchronized void stop() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка остановки координатора: " + e.getMessage());
+        }
+        notifyAll();
+    }
+
+    private void createShards() throws IOException {
+        shards.clear();
+        pending.clear();
+        results.clear();
+        failedFiles.clear();
+
+        shards.add(new Shard(0, root.toString(), 1));
+
+        List<Path> directories = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for (Path child : stream) {
+                if (Files.isDirectory(child)) {
+                    directories.add(child);
+                }
+            }
+        }
+        directories.sort(Comparator.naturalOrder());
+
+        for (Path directory : directories) {
+            shards.add(new Shard(shards.size(), directory.toString(), MAX_DEPTH - 1));
+        }
+
+        pending.addAll(shards);
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                int workerId;
+                synchronized (this) {
+                    workerId = nextWorkerId++;
+                }
+                Thread handler = new Thread(() -> handleWorker(workerId, socket), "shard-worker-" + workerId);
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Ошибка подключения воркера: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handleWorker(int workerId, Socket socket) {
+        Shard current = null;
+
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            if (in.readInt() != ShardProtocol.MAGIC) {
+                throw new IOException("Неизвестный протокол");
+            }
+            synchronized (this) {
+                connections.put(workerId, out);
+            }
+
+            while (true) {
+                byte command = in.readByte();
+
+                if (command == ShardProtocol.REQUEST_SHARD) {
+                    current = nextShard(workerId);
+                    // в этот же поток пишут отмены из обработчиков других воркеров
+                    synchronized (out) {
+                        if (current == null) {
+                            out.writeByte(ShardProtocol.NO_MORE_WORK);
+                            out.flush();
+                            return;
+                        }
+                        out.writeByte(ShardProtocol.ASSIGN_SHARD);
+                        out.writeInt(current.id);
+                        out.writeUTF(current.path);
+                        out.writeInt(current.maxDepth);
+                        out.flush();
+                    }
+
+                } else if (command == ShardProtocol.SHARD_RESULT) {
+                    int shardId = in.readInt();
+                    int count = in.readInt();
+                    List<FileInfo> files = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        files.add(IndexStorage.readFileInfo(in));
+                    }
+                    int failedCount = in.readInt();
+                    List<String> failed = new ArrayList<>(failedCount);
+                    for (int i = 0; i < failedCount; i++) {
+                        failed.add(in.readUTF());
+                    }
+                    cancelCopies(shardId, completeShard(workerId, shardId, files, failed));
+                    current = null;
+
+                } else if (command == ShardProtocol.SHARD_FAILED) {
+                    int shardId = in.readInt();
+                    String message = in.readUTF();
+                    failShard(workerId, shardId, message);
+                    current = null;
+
+                } else {
+                    throw new IOException("Неизвестная команда: " + command);
+                }
+            }
+
+        } catch (IOException e) {
+            System.err.println("Воркер " + workerId + " отключился: " + e.getMessage());
+            if (current != null) {
+                failShard(workerId, current.id, "воркер отключился");
+            }
+        } finally {
+            synchronized (this) {
+                connections.remove(workerId);
+            }
+        }
+    }
+
+    /**
+     * Отправляет отмену проигравшим копиям шарда (вне блокировки координатора)
+     */
+    private void cancelCopies(int shardId, List<DataOutputStream> losers) {
+        for (DataOutputStream out : losers) {
+            try {
+                synchronized (out) {
+                    out.writeByte(ShardProtocol.CANCEL_SHARD);
+                    out.writeInt(shardId);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // воркер уже отключился - отменять нечего
+            }
+        }
+    }
+
+    /**
+     * Выдает следующий шард: сначала из очереди, затем спекулятивную копию выполняющегося шарда.
+     * Если красть нечего, ждет пока что-то не завершится.
+     */
+    private synchronized Shard nextShard(int workerId) {
+        while (results.size() < shards.size() && !serverSocket.isClosed()) {
+            Shard shard = pending.poll();
+
+            if (shard == null) {
+                shard = shards.stream()
+                        .filter(s -> !results.containsKey(s.id))
+                        .filter(s -> !s.runners.contains(workerId))
+                        .filter(s -> s.runners.size() < MAX_COPIES_PER_SHARD)
+                        .min(Comparator.comparingInt(s -> s.runners.size()))
+                        .orElse(null);
+                if (shard != null && !shard.runners.isEmpty()) {
+                    stolenShards++;
+                }
+            }
+
+            if (shard != null) {
+                shard.runners.add(workerId);
+                shard.attempts++;
+                return shard;
+            }
+
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Засчитывает первый пришедший результат шарда
+     * @return потоки воркеров, у которых еще выполняются копии этого шарда
+     */
+    private synchronized List<DataOutputStream> completeShard(int workerId, int shardId, List<FileInfo> files,
+                                                              List<String> failed) {
+        Shard shard = shards.get(shardId);
+        shard.runners.remove(workerId);
+        List<DataOutputStream> losers = new ArrayList<>();
+
+        if (!results.containsKey(shardId)) {
+            results.put(shardId, files);
+            if (!failed.isEmpty()) {
+                failedFiles.put(shardId, failed);
+            }
+            pending.remove(shard);
+            System.out.printf("Шард %d готов (воркер %d, файлов: %d, не прочитано: %d) - %d из %d%n",
+                    shardId, workerId, files.size(), failed.size(), results.size(), shards.size());
+
+            for (int runner : shard.runners) {
+                DataOutputStream out = connections.get(runner);
+                if (out != null) {
+                    losers.add(out);
+                    cancelledCopies++;
+                }
+            }
+            shard.runners.clear();
+        }
+        notifyAll();
+        return losers;
+    }
+
+    private synchronized void failShard(int workerId, int shardId, String message) {
+        Shard shard = shards.get(shardId);
+        shard.runners.remove(workerId);
+
+        if (!results.containsKey(shardId) && shard.runners.isEmpty()) {
+            if (shard.attempts < MAX_ATTEMPTS) {
+                pending.addFirst(shard);
+            } else {
+                errors.add("Шард " + shard.path + ": " + message);
+                results.put(shardId, List.of());
+            }
+        }
+        notifyAll();
+    }
+
+    private ShardingResult mergeResults() {
+        SimpleFileIndex index = new SimpleFileIndex();
+        index.setVerbose(false);
+
+        synchronized (this) {
+            for (Shard shard : shards) {
+                for (FileInfo fileInfo : results.get(shard.id)) {
+                    index.addOrUpdate(fileInfo);
+                }
+            }
+        }
+
+        ShardingResult result = new ShardingResult();
+        result.fileIndex = index;
+        result.duplicateGroups = index.findDuplicates();
+        result.indexStatistics = index.getStatistics();
+
+        synchronized (this) {
+            result.shardCount = shards.size();
+            result.stolenShards = stolenShards;
+            result.cancelledCopies = cancelledCopies;
+            result.errors = new ArrayList<>(errors);
+            result.failedFiles = new ArrayList<>();
+            failedFiles.values().forEach(result.failedFiles::addAll);
+        }
+        return result;
+    }
+
+    private static class Shard {
+        private final int id;
+        private final String path;
+        private final int maxDepth;
+        private final Set<Integer> runners = new HashSet<>();
+        private int attempts = 0;
+
+        Shard(int id, String path, int maxDepth) {
+            this.id = id;
+            this.path = path;
+            this.maxDepth = maxDepth;
+        }
+    }
+
+    public static class ShardingResult {
+
+        public SimpleFileIndex fileIndex;
+        public List<List<FileInfo>> duplicateGroups;
+        public SimpleFileIndex.IndexStatistics indexStatistics;
+        public List<String> errors;
+
+        /** Файлы, найденные воркерами, но не прочитанные (ошибка, таймаут) - шард при этом засчитан */
+        public List<String> failedFiles;
+
+        public int shardCount;
+        /** Спекулятивных копий выполняющихся шардов */
+        public int stolenShards;
+        /** Копий, отмененных после того, как другой воркер закончил шард первым */
+        public int cancelledCopies;
+        public long totalDuration;
+
+        public int getDuplicateGroupsCount() {
+            return duplicateGroups != null ? duplicateGroups.size() : 0;
+        }
+    }
+
+    /**
+     * Запуск: ShardCoordinator &lt;директория&gt; [воркеров] [потоков на воркер]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Использование: ShardCoordinator <директория> [воркеров] [потоков на воркер]");
+            System.exit(1);
+        }
+
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        ShardingResult result = new ShardCoordinator(args[0]).run(workers, threads, TimeUnit.HOURS.toSeconds(24));
+
+        System.out.printf("Шардов: %d (копий: %d, отменено: %d), время: %.2f сек%n",
+                result.shardCount, result.stolenShards, result.cancelledCopies, result.totalDuration / 1000.0);
+        System.out.println(result.indexStatistics);
+        result.errors.forEach(System.err::println);
+        result.failedFiles.forEach(path -> System.err.println("Не прочитан: " + path));
+    }
+}
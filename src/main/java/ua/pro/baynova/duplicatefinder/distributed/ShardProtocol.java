@@ -0,0 +1,33 @@
+package ua.pro.baynova.duplicatefinder.distributed;
+
+/**
+ * Команды обмена между координатором и воркерами.
+ * Воркер запрашивает шард, координатор отвечает шардом или сообщает что работы нет,
+ * воркер возвращает частичный индекс шарда и запрашивает следующий.
+ * Пока воркер занят шардом, координатор может отменить его копию, если другой
+ * воркер уже прислал результат этого шарда.
+ */
+final class ShardProtocol {
+
+    static final int MAGIC = 0x53485244; // "SHRD"
+
+    /** воркер -> координатор: дай шард */
+    static final byte REQUEST_SHARD = 1;
+    /**
+     * воркер -> координатор: результат шарда (id, количество, записи FileInfo,
+     * количество и пути файлов, которые не удалось прочитать)
+     */
+    static final byte SHARD_RESULT = 2;
+    /** воркер -> координатор: шард не удалось обработать (id, сообщение) */
+    static final byte SHARD_FAILED = 3;
+
+    /** координатор -> воркер: шард (id, путь, глубина) */
+    static final byte ASSIGN_SHARD = 1;
+    /** координатор -> воркер: работы больше нет */
+    static final byte NO_MORE_WORK = 0;
+    /** координатор -> воркер: результат шарда уже получен от другого воркера, копию можно бросить (id) */
+    static final byte CANCEL_SHARD = 2;
+
+    private ShardProtocol() {
+    }
+}
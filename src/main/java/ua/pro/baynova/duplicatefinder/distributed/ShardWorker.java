@@ -0,0 +1,199 @@
+package ua.pro.baynova.duplicatefinder.distributed;
+
+import ua.pro.baynova.duplicatefinder.concurrent.CancellationToken;
+import ua.pro.baynova.duplicatefinder.concurrent.MultiThreadHashCalculator;
+import ua.pro.baynova.duplicatefinder.index.IndexStorage;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+import ua.pro.baynova.duplicatefinder.scanner.ScanFilter;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * Воркер шардированной индексации. Подключается к координатору, берет шарды
+ * один за другим, сканирует и хеширует их и отправляет частичный индекс обратно.
+ * Освободившийся воркер сразу просит следующий шард, поэтому быстрые воркеры
+ * забирают работу у медленных.
+ *
+ * Пока шард хешируется, воркер слушает координатор: если копию шарда уже закончил
+ * другой воркер, текущая копия отменяется и не тратит ввод-вывод.
+ * Файлы, которые не удалось прочитать, передаются координатору вместе с результатом.
+ */
+public class ShardWorker {
+
+    private static final int CANCEL_POLL_MILLIS = 200;
+
+    private final String host;
+    private final int port;
+    private final int numberOfThreads;
+    private final String algorithm;
+
+    public ShardWorker(String host, int port, int numberOfThreads, String algorithm) {
+        this.host = host;
+        this.port = port;
+        this.numberOfThreads = numberOfThreads;
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Обрабатывает шарды, пока координатор не сообщит что работы больше нет
+     * @return количество обработанных шардов
+     */
+    public int run() throws IOException, InterruptedException {
+        MultiThreadHashCalculator hashCalculator = new MultiThreadHashCalculator(numberOfThreads, algorithm);
+        ExecutorService shardExecutor = Executors.newSingleThreadExecutor();
+        int shardsDone = 0;
+
+        try (Socket socket = new Socket(host, port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            out.writeInt(ShardProtocol.MAGIC);
+
+            while (true) {
+                out.writeByte(ShardProtocol.REQUEST_SHARD);
+                out.flush();
+
+                byte reply = in.readByte();
+                // отмена копии, которая закончилась раньше, чем дошла отмена
+                while (reply == ShardProtocol.CANCEL_SHARD) {
+                    in.readInt();
+                    reply = in.readByte();
+                }
+                if (reply == ShardProtocol.NO_MORE_WORK) {
+                    break;
+                }
+
+                int shardId = in.readInt();
+                String shardPath = in.readUTF();
+                int maxDepth = in.readInt();
+
+                CancellationToken cancellationToken = new CancellationToken();
+                Future<ShardOutput> work = shardExecutor.submit(
+                        () -> processShard(hashCalculator, shardPath, maxDepth, cancellationToken));
+                awaitShard(work, socket, in, shardId, cancellationToken);
+
+                if (cancellationToken.isCancelled()) {
+                    System.out.println("Копия шарда " + shardId + " отменена координатором");
+                    continue;
+                }
+
+                try {
+                    ShardOutput output = work.get();
+
+                    out.writeByte(ShardProtocol.SHARD_RESULT);
+                    out.writeInt(shardId);
+                    out.writeInt(output.files.size());
+                    for (FileInfo fileInfo : output.files) {
+                        IndexStorage.writeFileInfo(out, fileInfo);
+                    }
+                    out.writeInt(output.failedPaths.size());
+                    for (String path : output.failedPaths) {
+                        out.writeUTF(path);
+                    }
+                    shardsDone++;
+
+                } catch (ExecutionException e) {
+                    out.writeByte(ShardProtocol.SHARD_FAILED);
+                    out.writeInt(shardId);
+                    out.writeUTF(String.valueOf(e.getCause().getMessage()));
+                }
+            }
+        } finally {
+            shardExecutor.shutdownNow();
+        }
+
+        return shardsDone;
+    }
+
+    /**
+     * Сканирует и хеширует шард. Файлы, которые были найдены, но не вошли в результат
+     * (ошибка чтения, таймаут), возвращаются отдельно, чтобы шард не считался полным молча.
+     */
+    private static ShardOutput processShard(MultiThreadHashCalculator hashCalculator, String shardPath,
+                                            int maxDepth, CancellationToken cancellationToken)
+            throws IOException, InterruptedException {
+        FileScanner scanner = new FileScanner(ScanFilter.defaults(), null, false, maxDepth, false);
+        List<FileScanner.FileTask> tasks = scanner.scanDirectory(shardPath);
+        List<FileInfo> files = hashCalculator.processFiles(tasks, fileInfo -> { }, cancellationToken);
+
+        Set<String> hashed = new HashSet<>();
+        for (FileInfo fileInfo : files) {
+            hashed.add(fileInfo.getPath());
+        }
+
+        ShardOutput output = new ShardOutput(files);
+        for (FileScanner.FileTask task : tasks) {
+            if (!hashed.contains(task.getPath())) {
+                output.failedPaths.add(task.getPath());
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Ждет окончания шарда, читая из сокета отмену копии
+     */
+    private static void awaitShard(Future<ShardOutput> work, Socket socket, DataInputStream in, int shardId,
+                                   CancellationToken cancellationToken) throws IOException, InterruptedException {
+        socket.setSoTimeout(CANCEL_POLL_MILLIS);
+        try {
+            while (!work.isDone()) {
+                byte command;
+                try {
+                    command = in.readByte();
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+
+                if (command != ShardProtocol.CANCEL_SHARD) {
+                    throw new IOException("Неожиданная команда координатора: " + command);
+                }
+                if (in.readInt() == shardId) {
+                    cancellationToken.cancel();
+                }
+            }
+        } finally {
+            socket.setSoTimeout(0);
+        }
+
+        // отмененный шард досчитывается до ближайшего блока - результат не нужен, но ждать его надо
+        try {
+            work.get();
+        } catch (ExecutionException | CancellationException ignored) {
+            // ошибка будет получена повторно через work.get() у вызывающего
+        }
+    }
+
+    private static class ShardOutput {
+        private final List<FileInfo> files;
+        private final List<String> failedPaths = new ArrayList<>();
+
+        ShardOutput(List<FileInfo> files) {
+            this.files = files;
+        }
+    }
+
+    /**
+     * Запуск: ShardWorker &lt;хост&gt; &lt;порт&gt; [потоков] [алгоритм]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Использование: ShardWorker <хост> <порт> [потоков] [алгоритм]");
+            System.exit(1);
+        }
+
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        String algorithm = args.length > 3 ? args[3] : "MD5";
+
+        int shards = new ShardWorker(args[0], Integer.parseInt(args[1]), threads, algorithm).run();
+        System.out.println("Воркер завершен, обработано шардов: " + shards);
+    }
+}
@@ -1,17 +1,45 @@
 package ua.pro.baynova.duplicatefinder.hash;
 
+import ua.pro.baynova.duplicatefinder.scanner.ArchivePath;
+
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class HashCalculator {
 
     private static final String DEFAULT_ALGORITHM = "MD5";
-    private static final int BUFFER_SIZE = 8192;
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final String XATTR_PREFIX = "duplicatefinder.hash.";
+    private static final int MAX_XATTR_SIZE = 512;
 
     private final String algorithm;
+    private final String[] algorithms;
+
+    private boolean xattrCacheEnabled = false;
+    private boolean lastHashFromCache = false;
+    private ZipFileCache zipFileCache;
 
     public HashCalculator() {
         this(DEFAULT_ALGORITHM);
@@ -22,12 +50,32 @@ public class HashCalculator {
      * @param algorithm алгоритм хеширования (MD5, SHA-1, SHA-256)
      */
     public HashCalculator(String algorithm) {
+        this(algorithm, new String[0]);
+    }
+
+    /**
+     * Создает калькулятор, который за одно чтение файла считает несколько хешей:
+     * каждый прочитанный блок передается во все дайджесты, поэтому объем ввода-вывода
+     * не зависит от числа алгоритмов
+     * @param algorithm основной алгоритм - его хеш возвращает calculateHash
+     * @param additionalAlgorithms дополнительные алгоритмы (любые, что есть в MessageDigest)
+     */
+    public HashCalculator(String algorithm, String... additionalAlgorithms) {
         this.algorithm = algorithm;
 
-        try {
-            MessageDigest.getInstance(algorithm);
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalArgumentException("Неподдерживаемый алгоритм: " + algorithm, e);
+        Set<String> unique = new LinkedHashSet<>();
+        unique.add(algorithm);
+        if (additionalAlgorithms != null) {
+            Collections.addAll(unique, additionalAlgorithms);
+        }
+        this.algorithms = unique.toArray(new String[0]);
+
+        for (String name : algorithms) {
+            try {
+                MessageDigest.getInstance(name);
+            } catch (NoSuchAlgorithmException | NullPointerException e) {
+                throw new IllegalArgumentException("Неподдерживаемый алгоритм: " + name, e);
+            }
         }
     }
 
@@ -38,6 +86,21 @@ public class HashCalculator {
      * @throws IOException если ошибка чтения файла
      */
     public String calculateHash(File file) throws IOException {
+        return calculateHash(file, null);
+    }
+
+    /**
+     * Вычисляет хеш файла и за то же чтение наполняет MinHash-сигнатуру
+     * @param file файл для хеширования
+     * @param sketcher получатель тех же байтов (может быть null)
+     * @return хеш в виде hex-строки
+     */
+    public String calculateHash(File file, MinHashSketcher sketcher) throws IOException {
+        return calculateDigests(file, sketcher, ReadListener.NONE).get(algorithm);
+    }
+
+    private Map<String, String> calculateDigests(File file, MinHashSketcher sketcher, ReadListener listener)
+            throws IOException {
         if (file == null) {
             throw new IllegalArgumentException("Файл не может быть null");
         }
@@ -54,42 +117,250 @@ public class HashCalculator {
             throw new IOException("Нет прав на чтение файла: " + file.getAbsolutePath());
         }
 
-        try {
-            MessageDigest digest = MessageDigest.getInstance(algorithm);
-
-            try (FileInputStream fis = new FileInputStream(file)) {
-                return calculateHash(fis, digest);
+        lastHashFromCache = false;
+        Path path = file.toPath();
+        BasicFileAttributes attrs = null;
+
+        // сигнатуре нужны сами байты, поэтому кеш работает только без нее
+        if (xattrCacheEnabled && sketcher == null) {
+            attrs = readAttributesQuietly(path);
+            Map<String, String> cached = attrs != null ? readCachedDigests(path, attrs) : null;
+            if (cached != null) {
+                lastHashFromCache = true;
+                return cached;
             }
+        }
 
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Алгоритм неожиданно стал недоступен: " + algorithm, e);
+        // через FileChannel: прерывание потока (таймаут чтения) закрывает канал и снимает
+        // зависший read, тогда как FileInputStream на прерывание не реагирует
+        Map<String, String> digests;
+        try (InputStream in = Channels.newInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ))) {
+            digests = calculateDigests(in, sketcher, listener);
         }
+
+        // атрибуты сняты до чтения: если файл менялся во время чтения, запись просто не совпадет
+        if (attrs != null) {
+            for (Map.Entry<String, String> entry : digests.entrySet()) {
+                writeCachedHash(path, attrs, entry.getKey(), entry.getValue());
+            }
+        }
+        return digests;
     }
 
     /**
      * Вычисляет хеш файла по пути
-     * @param filePath путь к файлу
+     * @param filePath путь к файлу или виртуальный путь записи архива ({@code a.zip!/x/y})
      * @return хеш в виде hex-строки
      */
     public String calculateHash(String filePath) throws IOException {
+        return calculateHash(filePath, null);
+    }
+
+    /**
+     * Вычисляет хеш файла по пути и наполняет MinHash-сигнатуру
+     * @param filePath путь к файлу или виртуальный путь записи архива
+     * @param sketcher получатель тех же байтов (может быть null)
+     */
+    public String calculateHash(String filePath, MinHashSketcher sketcher) throws IOException {
+        return calculateHash(filePath, sketcher, ReadListener.NONE);
+    }
+
+    /**
+     * Вычисляет хеш файла по пути, сообщая о каждом прочитанном блоке.
+     * Между блоками проверяется прерывание потока, поэтому отмена большого файла
+     * срабатывает не позже чем через один блок.
+     * @param filePath путь к файлу или виртуальный путь записи архива
+     * @param sketcher получатель тех же байтов (может быть null)
+     * @param listener наблюдатель чтения; может прервать хеширование исключением
+     * @throws InterruptedIOException если поток прерван во время чтения
+     */
+    public String calculateHash(String filePath, MinHashSketcher sketcher, ReadListener listener)
+            throws IOException {
+        return calculateDigests(filePath, sketcher, listener).get(algorithm);
+    }
+
+    /**
+     * Вычисляет все хеши калькулятора за одно чтение файла
+     * @param filePath путь к файлу или виртуальный путь записи архива
+     * @return алгоритм -> хеш; основной алгоритм идет первым
+     */
+    public Map<String, String> calculateDigests(String filePath) throws IOException {
+        return calculateDigests(filePath, null, ReadListener.NONE);
+    }
+
+    /**
+     * Вычисляет все хеши калькулятора за одно чтение файла
+     * @param filePath путь к файлу или виртуальный путь записи архива
+     * @param sketcher получатель тех же байтов (может быть null)
+     * @param listener наблюдатель чтения; может прервать хеширование исключением
+     * @return алгоритм -> хеш; основной алгоритм идет первым
+     */
+    public Map<String, String> calculateDigests(String filePath, MinHashSketcher sketcher, ReadListener listener)
+            throws IOException {
         if (filePath == null || filePath.trim().isEmpty()) {
             throw new IllegalArgumentException("Путь к файлу не может быть пустым");
         }
 
-        return calculateHash(new File(filePath));
+        ReadListener readListener = listener != null ? listener : ReadListener.NONE;
+
+        if (ArchivePath.isArchiveEntry(filePath)) {
+            return calculateArchiveEntryDigests(filePath, sketcher, readListener);
+        }
+
+        return calculateDigests(new File(filePath), sketcher, readListener);
+    }
+
+    /**
+     * Вычисляет хеш записи внутри zip-архива, читая ее поток напрямую без распаковки на диск
+     * @param virtualPath путь вида {@code archive.zip!/inner/path}
+     */
+    private Map<String, String> calculateArchiveEntryDigests(String virtualPath, MinHashSketcher sketcher,
+                                                             ReadListener listener) throws IOException {
+        lastHashFromCache = false;
+        File archive = new File(ArchivePath.archivePart(virtualPath));
+        String entryName = ArchivePath.entryPart(virtualPath);
+
+        if (!archive.isFile()) {
+            throw new IOException("Архив не существует: " + archive.getAbsolutePath());
+        }
+
+        if (zipFileCache == null) {
+            try (ZipFile zipFile = new ZipFile(archive)) {
+                return calculateEntryDigests(zipFile, entryName, virtualPath, sketcher, listener);
+            }
+        }
+
+        ZipFile zipFile = zipFileCache.acquire(archive);
+        try {
+            return calculateEntryDigests(zipFile, entryName, virtualPath, sketcher, listener);
+        } finally {
+            zipFileCache.release(archive);
+        }
+    }
+
+    private Map<String, String> calculateEntryDigests(ZipFile zipFile, String entryName, String virtualPath,
+                                                      MinHashSketcher sketcher, ReadListener listener)
+            throws IOException {
+        ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null || entry.isDirectory()) {
+            throw new IOException("Запись не найдена в архиве: " + virtualPath);
+        }
+
+        try (InputStream in = zipFile.getInputStream(entry)) {
+            return calculateDigests(in, sketcher, listener);
+        }
     }
 
-    private String calculateHash(FileInputStream fis, MessageDigest digest) throws IOException {
+    private Map<String, String> calculateDigests(InputStream fis, MinHashSketcher sketcher,
+                                                 ReadListener listener) throws IOException {
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            try {
+                digests[i] = MessageDigest.getInstance(algorithms[i]);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("Алгоритм неожиданно стал недоступен: " + algorithms[i], e);
+            }
+        }
+
         byte[] buffer = new byte[BUFFER_SIZE];
         int bytesRead;
 
         while ((bytesRead = fis.read(buffer)) != -1) {
-            digest.update(buffer, 0, bytesRead);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Хеширование прервано");
+            }
+
+            // один прочитанный блок - во все дайджесты
+            for (MessageDigest digest : digests) {
+                digest.update(buffer, 0, bytesRead);
+            }
+            if (sketcher != null) {
+                sketcher.update(buffer, 0, bytesRead);
+            }
+            listener.onChunkRead(bytesRead);
+        }
+
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < algorithms.length; i++) {
+            result.put(algorithms[i], bytesToHex(digests[i].digest()));
+        }
+        return result;
+    }
+
+    private static BasicFileAttributes readAttributesQuietly(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Читает хеши всех алгоритмов из расширенных атрибутов
+     * @return хеши или null, если хотя бы одного нет - тогда файл все равно придется прочитать
+     */
+    private Map<String, String> readCachedDigests(Path path, BasicFileAttributes attrs) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String name : algorithms) {
+            String cached = readCachedHash(path, attrs, name);
+            if (cached == null) {
+                return null;
+            }
+            result.put(name, cached);
+        }
+        return result;
+    }
+
+    /**
+     * Читает хеш из расширенного атрибута, если размер и время изменения не поменялись
+     * @return хеш или null (нет атрибута, устарел или xattr не поддерживается)
+     */
+    private String readCachedHash(Path path, BasicFileAttributes attrs, String algorithm) {
+        try {
+            UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+            if (view == null) {
+                return null;
+            }
+
+            String name = XATTR_PREFIX + algorithm;
+            int size = view.size(name);
+            if (size <= 0 || size > MAX_XATTR_SIZE) {
+                return null;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            view.read(name, buffer);
+            buffer.flip();
+
+            // алгоритм:размер:mtime в наносекундах:хеш
+            String[] parts = StandardCharsets.UTF_8.decode(buffer).toString().split(":");
+            if (parts.length == 4 && parts[0].equals(algorithm)
+                    && Long.parseLong(parts[1]) == attrs.size()
+                    && Long.parseLong(parts[2]) == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)) {
+                return parts[3];
+            }
+        } catch (IOException | UnsupportedOperationException | SecurityException | NumberFormatException e) {
+            // атрибута нет или файловая система его не поддерживает - считаем хеш заново
         }
+        return null;
+    }
 
-        byte[] hashBytes = digest.digest();
+    /**
+     * Сохраняет хеш в расширенный атрибут. Ошибки записи не мешают хешированию.
+     * Запись атрибута не меняет время изменения файла.
+     */
+    private void writeCachedHash(Path path, BasicFileAttributes attrs, String algorithm, String hash) {
+        String value = algorithm + ":" + attrs.size() + ":"
+                + attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS) + ":" + hash;
 
-        return bytesToHex(hashBytes);
+        try {
+            UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+            if (view != null) {
+                view.write(XATTR_PREFIX + algorithm, ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+            }
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // только для чтения, нет xattr или нет прав - кеш необязателен
+        }
     }
 
     private String bytesToHex(byte[] bytes) {
@@ -142,6 +413,54 @@ public class HashCalculator {
         return algorithm;
     }
 
+    /**
+     * Все алгоритмы калькулятора, основной первым
+     */
+    public String[] getAlgorithms() {
+        return algorithms.clone();
+    }
+
+    /**
+     * Включает кеш хешей в пользовательском расширенном атрибуте файла
+     * ({@code user.duplicatefinder.hash.<алгоритм>}). Кеш работает без центрального индекса,
+     * например когда один том подключен к нескольким машинам. Сохраненному хешу доверяют,
+     * пока не изменились размер и время изменения. На файловых системах без xattr кеш
+     * молча пропускается.
+     */
+    public void setXattrCacheEnabled(boolean xattrCacheEnabled) {
+        this.xattrCacheEnabled = xattrCacheEnabled;
+    }
+
+    /**
+     * Общий кеш открытых архивов: записи одного архива читаются из одного ZipFile,
+     * а не открывают архив каждая заново. Без кеша (null) архив открывается на каждую запись.
+     */
+    public void setZipFileCache(ZipFileCache zipFileCache) {
+        this.zipFileCache = zipFileCache;
+    }
+
+    public boolean isXattrCacheEnabled() {
+        return xattrCacheEnabled;
+    }
+
+    /**
+     * Был ли последний хеш взят из расширенного атрибута без чтения файла
+     */
+    public boolean isLastHashFromCache() {
+        return lastHashFromCache;
+    }
+
+    /**
+     * Наблюдатель чтения файла: вызывается после каждого блока.
+     * Может выбросить исключение (например CancellationException), чтобы остановить хеширование.
+     */
+    @FunctionalInterface
+    public interface ReadListener {
+        ReadListener NONE = bytes -> { };
+
+        void onChunkRead(int bytes);
+    }
+
     public static class FileHashInfo {
         private final String filePath;
         private final long fileSize;
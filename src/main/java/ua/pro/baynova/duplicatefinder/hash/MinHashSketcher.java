@@ -0,0 +1,156 @@
+package ua.pro.baynova.duplicatefinder.hash;
+
+import java.util.Arrays;
+
+/**
+ * Вычисляет MinHash-сигнатуру содержимого файла на лету.
+ * Поток байтов режется на чанки по содержимому (rolling hash), поэтому
+ * вставка в начало файла сдвигает границы только соседних чанков.
+ * Экземпляр не потокобезопасен - один sketcher на один файл.
+ */
+public class MinHashSketcher {
+
+    public static final int DEFAULT_NUM_HASHES = 128;
+
+    private static final int MIN_CHUNK_SIZE = 1024;
+    private static final int MAX_CHUNK_SIZE = 16 * 1024;
+    private static final long CHUNK_BOUNDARY_MASK = (1L << 12) - 1;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed = mix64(seed + i);
+            GEAR[i] = seed;
+        }
+    }
+
+    private final long[] seeds;
+    private final long[] minimums;
+
+    private long rollingHash = 0;
+    private long chunkHash = 0xCBF29CE484222325L;
+    private int chunkLength = 0;
+    private int chunkCount = 0;
+
+    public MinHashSketcher() {
+        this(DEFAULT_NUM_HASHES);
+    }
+
+    /**
+     * @param numHashes количество хеш-функций (длина сигнатуры)
+     */
+    public MinHashSketcher(int numHashes) {
+        if (numHashes <= 0) {
+            throw new IllegalArgumentException("Количество хеш-функций должно быть положительным");
+        }
+
+        this.seeds = new long[numHashes];
+        this.minimums = new long[numHashes];
+
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < numHashes; i++) {
+            seed = mix64(seed + i);
+            seeds[i] = seed;
+        }
+        Arrays.fill(minimums, Long.MAX_VALUE);
+    }
+
+    /**
+     * Добавляет очередную порцию байтов (тот же буфер, что уходит в MessageDigest)
+     */
+    public void update(byte[] buffer, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            int b = buffer[i] & 0xff;
+
+            rollingHash = (rollingHash << 1) + GEAR[b];
+            chunkHash = (chunkHash ^ b) * 0x100000001B3L;
+            chunkLength++;
+
+            if (chunkLength >= MIN_CHUNK_SIZE && (rollingHash & CHUNK_BOUNDARY_MASK) == 0
+                    || chunkLength >= MAX_CHUNK_SIZE) {
+                closeChunk();
+            }
+        }
+    }
+
+    /**
+     * Завершает вычисление и возвращает сигнатуру
+     */
+    public MinHashSignature finish() {
+        if (chunkLength > 0) {
+            closeChunk();
+        }
+        return new MinHashSignature(minimums.clone(), chunkCount);
+    }
+
+    private void closeChunk() {
+        long shingle = mix64(chunkHash);
+
+        for (int i = 0; i < seeds.length; i++) {
+            long value = mix64(shingle ^ seeds[i]);
+            if (value < minimums[i]) {
+                minimums[i] = value;
+            }
+        }
+
+        chunkCount++;
+        chunkLength = 0;
+        rollingHash = 0;
+        chunkHash = 0xCBF29CE484222325L;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * MinHash-сигнатура файла
+     */
+    public static class MinHashSignature {
+        private final long[] values;
+        private final int chunkCount;
+
+        public MinHashSignature(long[] values, int chunkCount) {
+            this.values = values;
+            this.chunkCount = chunkCount;
+        }
+
+        public long[] getValues() { return values; }
+        public int getChunkCount() { return chunkCount; }
+        public int length() { return values.length; }
+
+        public boolean isEmpty() {
+            return chunkCount == 0;
+        }
+
+        /**
+         * Оценка коэффициента Жаккара по множествам чанков
+         * @return доля совпавших минимумов (0.0 - 1.0)
+         */
+        public double estimateSimilarity(MinHashSignature other) {
+            if (other == null || other.values.length != values.length) {
+                throw new IllegalArgumentException("Сигнатуры разной длины нельзя сравнивать");
+            }
+            if (isEmpty() || other.isEmpty()) {
+                return 0.0;
+            }
+
+            int equal = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == other.values[i]) {
+                    equal++;
+                }
+            }
+            return (double) equal / values.length;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("MinHashSignature{hashes=%d, chunks=%d}", values.length, chunkCount);
+        }
+    }
+}
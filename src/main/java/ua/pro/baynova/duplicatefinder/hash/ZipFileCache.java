@@ -0,0 +1,122 @@
+package ua.pro.baynova.duplicatefinder.hash;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+/**
+ * Открытые zip-архивы на время одного запуска хеширования. Без него каждая запись
+ * открывает архив заново и перечитывает центральный каталог - архив из N записей
+ * стоит O(N^2). Записи одного архива идут из сканера подряд, поэтому достаточно
+ * держать открытыми несколько последних архивов.
+ *
+ * ZipFile допускает одновременное чтение разных записей из нескольких потоков.
+ * Архив закрывается при вытеснении, только когда его никто не читает.
+ */
+public class ZipFileCache implements Closeable {
+
+    private static final int DEFAULT_MAX_OPEN = 16;
+
+    private final int maxOpen;
+    private final Map<String, Handle> handles = new HashMap<>();
+    private long useCounter = 0;
+    private boolean closed = false;
+
+    public ZipFileCache() {
+        this(DEFAULT_MAX_OPEN);
+    }
+
+    /**
+     * @param maxOpen сколько архивов держать открытыми без читателей
+     */
+    public ZipFileCache(int maxOpen) {
+        if (maxOpen < 1) {
+            throw new IllegalArgumentException("Количество открытых архивов должно быть положительным");
+        }
+        this.maxOpen = maxOpen;
+    }
+
+    /**
+     * Открывает архив или берет уже открытый. После чтения нужно вызвать {@link #release(File)}.
+     */
+    public synchronized ZipFile acquire(File archive) throws IOException {
+        if (closed) {
+            throw new IOException("Кеш архивов уже закрыт");
+        }
+
+        String key = archive.getAbsolutePath();
+        Handle handle = handles.get(key);
+        if (handle == null) {
+            evictIdle();
+            handle = new Handle(new ZipFile(archive));
+            handles.put(key, handle);
+        }
+        handle.users++;
+        return handle.zipFile;
+    }
+
+    public synchronized void release(File archive) {
+        Handle handle = handles.get(archive.getAbsolutePath());
+        if (handle != null) {
+            handle.users--;
+            handle.lastUsed = ++useCounter;
+        }
+    }
+
+    public synchronized int getOpenCount() {
+        return handles.size();
+    }
+
+    /**
+     * Закрывает давно не использованные архивы без читателей, пока их не меньше лимита
+     */
+    private void evictIdle() {
+        while (handles.size() >= maxOpen) {
+            Map.Entry<String, Handle> oldest = null;
+            for (Map.Entry<String, Handle> entry : handles.entrySet()) {
+                Handle handle = entry.getValue();
+                if (handle.users == 0 && (oldest == null || handle.lastUsed < oldest.getValue().lastUsed)) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                // все открытые архивы сейчас читаются - лимит временно превышается
+                return;
+            }
+            handles.remove(oldest.getKey());
+            closeQuietly(oldest.getValue().zipFile);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        Iterator<Handle> iterator = handles.values().iterator();
+        while (iterator.hasNext()) {
+            closeQuietly(iterator.next().zipFile);
+            iterator.remove();
+        }
+    }
+
+    private static void closeQuietly(ZipFile zipFile) {
+        try {
+            zipFile.close();
+        } catch (IOException e) {
+            System.err.println("Не удалось закрыть архив " + zipFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private static class Handle {
+        private final ZipFile zipFile;
+        private int users = 0;
+        private long lastUsed = 0;
+
+        Handle(ZipFile zipFile) {
+            this.zipFile = zipFile;
+        }
+    }
+}
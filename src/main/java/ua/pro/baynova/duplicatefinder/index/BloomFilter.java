@@ -0,0 +1,138 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Фильтр Блума для быстрой проверки "такого хеша точно нет в индексе".
+ * Ложноотрицательных ответов не бывает, доля ложноположительных задается при создании.
+ * Чтение не требует блокировок: биты хранятся в AtomicLongArray.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final long expectedInsertions;
+
+    /**
+     * @param expectedInsertions ожидаемое количество различных хешей
+     * @param falsePositiveRate допустимая доля ложноположительных ответов (0 - 1)
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Ожидаемое количество элементов должно быть положительным");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Доля ложноположительных должна быть между 0 и 1");
+        }
+
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate)
+                / (Math.log(2) * Math.log(2)));
+        long words = Math.max(1, (optimalBits + 63) / 64);
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Фильтр слишком большой: " + optimalBits + " бит");
+        }
+
+        this.bits = new AtomicLongArray((int) words);
+        this.bitCount = words * 64;
+        this.expectedInsertions = expectedInsertions;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    private BloomFilter(AtomicLongArray bits, int hashFunctions, long expectedInsertions) {
+        this.bits = bits;
+        this.bitCount = (long) bits.length() * 64;
+        this.hashFunctions = hashFunctions;
+        this.expectedInsertions = expectedInsertions;
+    }
+
+    public void put(String hash) {
+        long h1 = hash64(hash, 0x9E3779B97F4A7C15L);
+        long h2 = hash64(hash, 0xC2B2AE3D27D4EB4FL) | 1;
+
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * @return false если хеша точно нет; true если он, вероятно, есть
+     */
+    public boolean mightContain(String hash) {
+        long h1 = hash64(hash, 0x9E3779B97F4A7C15L);
+        long h2 = hash64(hash, 0xC2B2AE3D27D4EB4FL) | 1;
+
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getExpectedInsertions() { return expectedInsertions; }
+    public long getBitCount() { return bitCount; }
+    public int getHashFunctions() { return hashFunctions; }
+
+    public long getMemoryBytes() {
+        return bitCount / 8;
+    }
+
+    /**
+     * Оценка доли ложноположительных при текущем количестве элементов
+     */
+    public double estimateFalsePositiveRate(long insertions) {
+        return Math.pow(1 - Math.exp(-(double) hashFunctions * insertions / bitCount), hashFunctions);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(expectedInsertions);
+        out.writeInt(hashFunctions);
+        out.writeInt(bits.length());
+        for (int i = 0; i < bits.length(); i++) {
+            out.writeLong(bits.get(i));
+        }
+    }
+
+    static BloomFilter readFrom(DataInput in) throws IOException {
+        long expectedInsertions = in.readLong();
+        int hashFunctions = in.readInt();
+        int words = in.readInt();
+
+        AtomicLongArray bits = new AtomicLongArray(words);
+        for (int i = 0; i < words; i++) {
+            bits.set(i, in.readLong());
+        }
+        return new BloomFilter(bits, hashFunctions, expectedInsertions);
+    }
+
+    private static long hash64(String value, long seed) {
+        long h = seed ^ value.length();
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BloomFilter{bits=%d, hashes=%d, memory=%d KB}",
+                bitCount, hashFunctions, getMemoryBytes() / 1024);
+    }
+}
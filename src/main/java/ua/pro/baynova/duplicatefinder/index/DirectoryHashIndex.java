@@ -0,0 +1,312 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Хеши директорий по принципу дерева Меркла: хеш директории считается снизу вверх
+ * по отсортированным по имени детям - (имя, хеш содержимого) файлов и (имя, хеш) поддиректорий.
+ * Одинаковый хеш означает одинаковое дерево, поэтому пять копий проекта находятся
+ * как одна группа директорий, а не как тысячи групп файлов.
+ *
+ * Учитываются только файлы индекса: файлы, отсеянные фильтром при сканировании
+ * (скрытые, пустые), на хеш директории не влияют. Пустые директории не учитываются.
+ */
+public class DirectoryHashIndex {
+
+    private final Map<String, DirectoryNode> directories = new HashMap<>();
+    private final Map<String, List<String>> byDigest = new HashMap<>();
+    private final List<DirectoryGroup> duplicateDirectories;
+
+    private DirectoryHashIndex(Collection<FileInfo> files, String algorithm, Function<FileInfo, String> contentKey) {
+        for (FileInfo fileInfo : files) {
+            String directory = IndexScope.parentOf(fileInfo.getPath());
+            node(directory).files.add(fileInfo);
+
+            // цепочка родителей до корня (или до уже известной директории)
+            String child = directory;
+            String parent = IndexScope.parentOf(child);
+            while (!parent.isEmpty() && !parent.equals(child)) {
+                boolean known = directories.containsKey(parent);
+                node(parent).subdirectories.add(child);
+                if (known) {
+                    break;
+                }
+                child = parent;
+                parent = IndexScope.parentOf(child);
+            }
+        }
+
+        computeDigests(algorithm, contentKey);
+        this.duplicateDirectories = collectHighestDuplicates();
+    }
+
+    /**
+     * Строит хеши директорий по файлам индекса
+     * @param index индекс с уже посчитанными хешами файлов; содержимое сравнивается по его
+     *              ключу группировки ({@link SimpleFileIndex#keyOf}), как и группы файлов
+     */
+    public static DirectoryHashIndex build(SimpleFileIndex index) {
+        return build(index.getAllFiles(), "SHA-256", index::keyOf);
+    }
+
+    /**
+     * @param files файлы с посчитанными хешами
+     * @param algorithm алгоритм хеша директорий
+     */
+    public static DirectoryHashIndex build(Collection<FileInfo> files, String algorithm) {
+        return build(files, algorithm, FileInfo::getHash);
+    }
+
+    /**
+     * @param files файлы с посчитанными хешами
+     * @param algorithm алгоритм хеша директорий
+     * @param contentKey хеш содержимого файла (должен совпадать с ключом групп, которые сворачиваются)
+     */
+    public static DirectoryHashIndex build(Collection<FileInfo> files, String algorithm,
+                                           Function<FileInfo, String> contentKey) {
+        long startTime = System.currentTimeMillis();
+        DirectoryHashIndex result = new DirectoryHashIndex(files, algorithm, contentKey);
+
+        System.out.printf("Хеши директорий: %d директорий, %d групп одинаковых директорий (%.2f сек)%n",
+                result.directories.size(), result.duplicateDirectories.size(),
+                (System.currentTimeMillis() - startTime) / 1000.0);
+        return result;
+    }
+
+    private DirectoryNode node(String directory) {
+        return directories.computeIfAbsent(directory, DirectoryNode::new);
+    }
+
+    private void computeDigests(String algorithm, Function<FileInfo, String> contentKey) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Неподдерживаемый алгоритм: " + algorithm, e);
+        }
+
+        // дети всегда глубже родителя - обработка от самых глубоких
+        List<DirectoryNode> nodes = new ArrayList<>(directories.values());
+        nodes.sort(Comparator.comparingInt((DirectoryNode node) -> node.depth).reversed());
+
+        for (DirectoryNode node : nodes) {
+            TreeMap<String, String> children = new TreeMap<>();
+
+            for (FileInfo fileInfo : node.files) {
+                children.put(fileInfo.getFileName(), "F" + contentKey.apply(fileInfo));
+                node.fileCount++;
+                node.totalSize += fileInfo.getSize();
+            }
+            for (String subdirectory : node.subdirectories) {
+                DirectoryNode child = directories.get(subdirectory);
+                children.put(nameOf(subdirectory), "D" + child.digest);
+                node.fileCount += child.fileCount;
+                node.totalSize += child.totalSize;
+            }
+
+            for (Map.Entry<String, String> entry : children.entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            node.digest = toHex(digest.digest());
+
+            byDigest.computeIfAbsent(node.digest, k -> new ArrayList<>()).add(node.path);
+        }
+    }
+
+    /**
+     * Группы одинаковых директорий, кроме тех, что целиком лежат внутри уже найденных копий:
+     * если /a и /b одинаковы, группа {/a/src, /b/src} не выводится
+     */
+    private List<DirectoryGroup> collectHighestDuplicates() {
+        List<DirectoryGroup> groups = new ArrayList<>();
+
+        for (Map.Entry<String, List<String>> entry : byDigest.entrySet()) {
+            List<String> paths = entry.getValue();
+            if (paths.size() < 2) {
+                continue;
+            }
+
+            boolean allCovered = true;
+            for (String path : paths) {
+                if (!isInsideDuplicate(path)) {
+                    allCovered = false;
+                    break;
+                }
+            }
+            if (allCovered) {
+                continue;
+            }
+
+            List<String> sorted = new ArrayList<>(paths);
+            Collections.sort(sorted);
+            DirectoryNode first = directories.get(sorted.get(0));
+            groups.add(new DirectoryGroup(entry.getKey(), sorted, first.fileCount, first.totalSize));
+        }
+
+        groups.sort(Comparator.comparingLong(DirectoryGroup::getWastedBytes).reversed()
+                .thenComparing(DirectoryGroup::getDigest));
+        return groups;
+    }
+
+    private boolean isInsideDuplicate(String path) {
+        String parent = IndexScope.parentOf(path);
+        DirectoryNode parentNode = directories.get(parent);
+        return parentNode != null && !parent.equals(path) && byDigest.get(parentNode.digest).size() > 1;
+    }
+
+    /**
+     * Самые верхние группы полностью одинаковых директорий, по убыванию лишнего объема
+     */
+    public List<DirectoryGroup> getDuplicateDirectories() {
+        return duplicateDirectories;
+    }
+
+    /**
+     * Хеш директории или null, если в ней нет проиндексированных файлов
+     */
+    public String getDigest(String directory) {
+        DirectoryNode node = directories.get(IndexScope.underDirectory(directory).getDirectory());
+        return node != null ? node.digest : null;
+    }
+
+    /**
+     * Директории с тем же содержимым, что и заданная (без нее самой)
+     */
+    public List<String> findIdenticalDirectories(String directory) {
+        String digest = getDigest(directory);
+        if (digest == null) {
+            return new ArrayList<>();
+        }
+        List<String> result = new ArrayList<>(byDigest.get(digest));
+        result.remove(IndexScope.underDirectory(directory).getDirectory());
+        return result;
+    }
+
+    /**
+     * Сворачивает группы файлов, которые объясняются одинаковыми директориями.
+     * Из каждой группы директорий остается первая; файлы внутри остальных копий
+     * убираются, и группа, в которой остался один файл, пропадает.
+     * @param groups группы из SimpleFileIndex.findDuplicates
+     * @return новые группы в том же порядке
+     */
+    public List<List<FileInfo>> collapse(List<List<FileInfo>> groups) {
+        Set<String> redundantDirectories = new HashSet<>();
+        for (DirectoryGroup group : duplicateDirectories) {
+            redundantDirectories.addAll(group.getDirectories().subList(1, group.getDirectories().size()));
+        }
+
+        List<List<FileInfo>> collapsed = new ArrayList<>();
+        for (List<FileInfo> group : groups) {
+            List<FileInfo> remaining = new ArrayList<>(group.size());
+            for (FileInfo fileInfo : group) {
+                if (!isInside(fileInfo.getPath(), redundantDirectories)) {
+                    remaining.add(fileInfo);
+                }
+            }
+            if (remaining.size() > 1) {
+                collapsed.add(remaining);
+            }
+        }
+        return collapsed;
+    }
+
+    private static boolean isInside(String path, Set<String> directories) {
+        String child = path;
+        String parent = IndexScope.parentOf(child);
+        while (!parent.isEmpty() && !parent.equals(child)) {
+            if (directories.contains(parent)) {
+                return true;
+            }
+            child = parent;
+            parent = IndexScope.parentOf(child);
+        }
+        return false;
+    }
+
+    public int getDirectoryCount() {
+        return directories.size();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static String nameOf(String directory) {
+        int lastSeparator = Math.max(directory.lastIndexOf('/'), directory.lastIndexOf('\\'));
+        return directory.substring(lastSeparator + 1);
+    }
+
+    private static class DirectoryNode {
+        private final String path;
+        private final int depth;
+        private final List<FileInfo> files = new ArrayList<>();
+        private final Set<String> subdirectories = new HashSet<>();
+        private String digest;
+        private int fileCount;
+        private long totalSize;
+
+        DirectoryNode(String path) {
+            this.path = path;
+            int separators = 0;
+            for (int i = 0; i < path.length(); i++) {
+                char c = path.charAt(i);
+                if (c == '/' || c == '\\') {
+                    separators++;
+                }
+            }
+            // корень "/" стоит выше "/a", хотя разделителей в них поровну
+            boolean root = path.endsWith("/") || path.endsWith("\\");
+            this.depth = root ? separators - 1 : separators;
+        }
+    }
+
+    /**
+     * Группа директорий с одинаковым содержимым
+     */
+    public static class DirectoryGroup {
+        private final String digest;
+        private final List<String> directories;
+        private final int fileCount;
+        private final long totalSize;
+
+        public DirectoryGroup(String digest, List<String> directories, int fileCount, long totalSize) {
+            this.digest = digest;
+            this.directories = directories;
+            this.fileCount = fileCount;
+            this.totalSize = totalSize;
+        }
+
+        public String getDigest() { return digest; }
+        public List<String> getDirectories() { return directories; }
+
+        /** файлов в одной копии */
+        public int getFileCount() { return fileCount; }
+
+        /** размер одной копии */
+        public long getTotalSize() { return totalSize; }
+
+        public long getWastedBytes() {
+            return totalSize * (directories.size() - 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("DirectoryGroup{%d копий по %d файлов, %d байт: %s}",
+                    directories.size(), fileCount, totalSize, directories);
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Поиск дубликатов во внешней памяти - для наборов файлов, которые не помещаются в куче.
+ *
+ * Записи (размер, хеш, номер пути) копятся в буферах фиксированного размера.
+ * Заполненный буфер сортируется и сбрасывается на диск отдельным потоком,
+ * пока вызывающий заполняет следующий. В конце отсортированные прогоны сливаются
+ * k-путевым слиянием (при большом числе прогонов - параллельными промежуточными проходами),
+ * и соседние записи с одинаковыми размером и хешем выдаются как группа.
+ *
+ * Куча ограничена бюджетом: половина - на буферы сортировки, половина - на буферы чтения при слиянии.
+ * Пути хранятся снаружи, например в {@link ua.pro.baynova.duplicatefinder.scanner.PathTable}
+ * или в файле, - здесь только их номера.
+ */
+public class ExternalDuplicateFinder implements Closeable {
+
+    private static final long MIN_MEMORY_BUDGET = 64 * 1024;
+    private static final int MIN_READ_BUFFER = 4 * 1024;
+    private static final int DEFAULT_MAX_FAN_IN = 64;
+
+    private final Path workDirectory;
+    private final int digestLength;
+    private final int recordBytes;
+    private final int numberOfThreads;
+    private final long memoryBudget;
+    private final int recordsPerBuffer;
+
+    private final ExecutorService executor;
+    private final BlockingQueue<SortBuffer> freeBuffers;
+    private final List<Future<Path>> pendingRuns = new ArrayList<>();
+    private int createdBuffers = 0;
+    private SortBuffer current;
+
+    private int maxFanIn = DEFAULT_MAX_FAN_IN;
+    private long recordCount = 0;
+    private int runCount = 0;
+    private int mergePasses = 0;
+    private boolean finished = false;
+
+    /**
+     * @param workDirectory директория для файлов прогонов (локальный диск)
+     * @param algorithm алгоритм хеша - определяет длину хеша в записи
+     * @param memoryBudget сколько байт кучи можно занять
+     * @param numberOfThreads потоков для сортировки и промежуточного слияния
+     */
+    public ExternalDuplicateFinder(Path workDirectory, String algorithm, long memoryBudget, int numberOfThreads)
+            throws IOException {
+        if (workDirectory == null) {
+            throw new IllegalArgumentException("Рабочая директория не может быть null");
+        }
+        if (memoryBudget < MIN_MEMORY_BUDGET) {
+            throw new IllegalArgumentException("Бюджет памяти меньше " + MIN_MEMORY_BUDGET + " байт");
+        }
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным");
+        }
+
+        try {
+            this.digestLength = MessageDigest.getInstance(algorithm).getDigestLength();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Неподдерживаемый алгоритм: " + algorithm, e);
+        }
+
+        this.workDirectory = Files.createDirectories(workDirectory);
+        this.recordBytes = 8 + digestLength + 4;
+        this.numberOfThreads = numberOfThreads;
+        this.memoryBudget = memoryBudget;
+
+        // один буфер заполняется, остальные сортируются и пишутся
+        int buffers = numberOfThreads + 1;
+        this.recordsPerBuffer = (int) Math.min(Integer.MAX_VALUE / Math.max(1, digestLength),
+                Math.max(1, memoryBudget / 2 / buffers / recordBytes));
+        this.freeBuffers = new ArrayBlockingQueue<>(buffers);
+        this.executor = Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+            Thread thread = new Thread(runnable, "external-sort");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Сколько прогонов сливается за один проход (по умолчанию 64)
+     */
+    public void setMaxFanIn(int maxFanIn) {
+        if (maxFanIn < 2) {
+            throw new IllegalArgumentException("Нужно сливать хотя бы 2 прогона");
+        }
+        this.maxFanIn = maxFanIn;
+    }
+
+    /**
+     * Добавляет запись о файле
+     * @param size размер файла
+     * @param hexDigest хеш в виде hex-строки
+     * @param pathId номер пути
+     */
+    public void add(long size, String hexDigest, int pathId) throws IOException, InterruptedException {
+        if (finished) {
+            throw new IllegalStateException("Поиск уже выполнен");
+        }
+        if (current == null) {
+            current = acquireBuffer();
+        }
+
+        current.add(size, hexDigest, pathId);
+        recordCount++;
+
+        if (current.isFull()) {
+            spill(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Сливает прогоны и выдает группы дубликатов по возрастанию (размер, хеш)
+     * @return количество групп
+     */
+    public int findDuplicates(GroupVisitor visitor) throws IOException, InterruptedException {
+        if (finished) {
+            throw new IllegalStateException("Поиск уже выполнен");
+        }
+        finished = true;
+
+        if (current != null && current.count > 0) {
+            spill(current);
+        }
+        current = null;
+
+        List<Path> runs = awaitRuns(pendingRuns);
+        runCount = runs.size();
+        System.out.printf("Внешняя сортировка: %d записей в %d прогонах%n", recordCount, runCount);
+
+        // промежуточные проходы, пока прогонов больше, чем можно слить за раз
+        while (runs.size() > maxFanIn) {
+            List<Future<Path>> merged = new ArrayList<>();
+            int readBuffer = readBufferSize(Math.min(runs.size(), maxFanIn * numberOfThreads));
+
+            for (int from = 0; from < runs.size(); from += maxFanIn) {
+                List<Path> chunk = runs.subList(from, Math.min(runs.size(), from + maxFanIn));
+                List<Path> inputs = new ArrayList<>(chunk);
+                merged.add(executor.submit(() -> mergeToRun(inputs, readBuffer)));
+            }
+
+            runs = awaitRuns(merged);
+            mergePasses++;
+        }
+
+        int groups = mergeGroups(runs, visitor);
+        mergePasses++;
+
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+
+        System.out.printf("Найдено групп: %d (проходов слияния: %d)%n", groups, mergePasses);
+        return groups;
+    }
+
+    private SortBuffer acquireBuffer() throws InterruptedException {
+        SortBuffer buffer = freeBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (createdBuffers < numberOfThreads + 1) {
+            createdBuffers++;
+            return new SortBuffer(recordsPerBuffer, digestLength);
+        }
+        // все буферы заняты сортировкой - ждем освободившийся
+        return freeBuffers.take();
+    }
+
+    private void spill(SortBuffer buffer) {
+        pendingRuns.add(executor.submit(() -> {
+            try {
+                buffer.sort();
+                Path run = Files.createTempFile(workDirectory, "run-", ".bin");
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(run), 64 * 1024))) {
+                    for (int i = 0; i < buffer.count; i++) {
+                        out.writeLong(buffer.sizes[i]);
+                        out.write(buffer.digests, i * digestLength, digestLength);
+                        out.writeInt(buffer.pathIds[i]);
+                    }
+                }
+                return run;
+            } finally {
+                buffer.count = 0;
+                freeBuffers.put(buffer);
+            }
+        }));
+    }
+
+    private List<Path> awaitRuns(List<Future<Path>> futures) throws IOException, InterruptedException {
+        List<Path> runs = new ArrayList<>(futures.size());
+        IOException failure = null;
+
+        for (Future<Path> future : futures) {
+            try {
+                runs.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new IOException("Ошибка внешней сортировки: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+        futures.clear();
+
+        if (failure != null) {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            throw failure;
+        }
+        return runs;
+    }
+
+    private int readBufferSize(int openRuns) {
+        return (int) Math.max(MIN_READ_BUFFER, Math.min(1 << 20, memoryBudget / 2 / Math.max(1, openRuns)));
+    }
+
+    private Path mergeToRun(List<Path> inputs, int readBuffer) throws IOException {
+        Path output = Files.createTempFile(workDirectory, "merge-", ".bin");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(output), readBuffer))) {
+            merge(inputs, readBuffer, reader -> {
+                out.writeLong(reader.size);
+                out.write(reader.digest);
+                out.writeInt(reader.pathId);
+            });
+        }
+
+        for (Path input : inputs) {
+            Files.deleteIfExists(input);
+        }
+        return output;
+    }
+
+    private int mergeGroups(List<Path> runs, GroupVisitor visitor) throws IOException {
+        GroupCollector collector = new GroupCollector(visitor);
+        merge(runs, readBufferSize(runs.size()), collector::accept);
+        collector.finish();
+        return collector.groups;
+    }
+
+    /**
+     * k-путевое слияние: записи выдаются по возрастанию (размер, хеш, номер пути)
+     */
+    private void merge(List<Path> runs, int readBuffer, RecordSink sink) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, runs.size()), RunReader::compareTo);
+        List<RunReader> readers = new ArrayList<>(runs.size());
+
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run, digestLength, readBuffer);
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                RunReader reader = queue.poll();
+                sink.accept(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Сколько отсортированных прогонов было сброшено на диск
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public int getMergePasses() {
+        return mergePasses;
+    }
+
+    public int getRecordsPerBuffer() {
+        return recordsPerBuffer;
+    }
+
+    /**
+     * Останавливает потоки и удаляет оставшиеся файлы прогонов
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(workDirectory, "{run-,merge-}*.bin")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Получатель группы одинаковых файлов
+     */
+    @FunctionalInterface
+    public interface GroupVisitor {
+        void visit(long size, String hexDigest, int[] pathIds) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface RecordSink {
+        void accept(RunReader reader) throws IOException;
+    }
+
+    /**
+     * Собирает подряд идущие записи с одинаковым ключом в группу
+     */
+    private static class GroupCollector {
+        private final GroupVisitor visitor;
+        private long size = -1;
+        private byte[] digest;
+        private int[] pathIds = new int[16];
+        private int count = 0;
+        private int groups = 0;
+
+        GroupCollector(GroupVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        void accept(RunReader reader) throws IOException {
+            if (count > 0 && (reader.size != size || !Arrays.equals(reader.digest, digest))) {
+                finish();
+            }
+            if (count == 0) {
+                size = reader.size;
+                digest = reader.digest.clone();
+            }
+            if (count == pathIds.length) {
+                pathIds = Arrays.copyOf(pathIds, count * 2);
+            }
+            pathIds[count++] = reader.pathId;
+        }
+
+        void finish() throws IOException {
+            if (count > 1) {
+                groups++;
+                visitor.visit(size, toHex(digest), Arrays.copyOf(pathIds, count));
+            }
+            count = 0;
+        }
+    }
+
+    /**
+     * Буфер записей в параллельных массивах; сортируется на месте без объектов на запись
+     */
+    private static class SortBuffer {
+        private final long[] sizes;
+        private final byte[] digests;
+        private final int[] pathIds;
+        private final int digestLength;
+        private final byte[] swap;
+        private int count = 0;
+
+        SortBuffer(int capacity, int digestLength) {
+            this.sizes = new long[capacity];
+            this.digests = new byte[capacity * digestLength];
+            this.pathIds = new int[capacity];
+            this.digestLength = digestLength;
+            this.swap = new byte[digestLength];
+        }
+
+        boolean isFull() {
+            return count == sizes.length;
+        }
+
+        void add(long size, String hexDigest, int pathId) {
+            if (hexDigest == null || hexDigest.length() != digestLength * 2) {
+                throw new IllegalArgumentException("Хеш должен содержать " + digestLength * 2 + " hex-символов");
+            }
+            int offset = count * digestLength;
+            for (int i = 0; i < digestLength; i++) {
+                int high = Character.digit(hexDigest.charAt(2 * i), 16);
+                int low = Character.digit(hexDigest.charAt(2 * i + 1), 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Некорректный hex-хеш: " + hexDigest);
+                }
+                digests[offset + i] = (byte) ((high << 4) | low);
+            }
+            sizes[count] = size;
+            pathIds[count] = pathId;
+            count++;
+        }
+
+        void sort() {
+            quickSort(0, count - 1);
+        }
+
+        private void quickSort(int low, int high) {
+            while (high - low > 16) {
+                int middle = (low + high) >>> 1;
+                // медиана трех - в позицию high
+                if (compare(middle, low) < 0) swap(middle, low);
+                if (compare(high, low) < 0) swap(high, low);
+                if (compare(high, middle) > 0) swap(middle, high);
+
+                int store = low;
+                for (int i = low; i < high; i++) {
+                    if (compare(i, high) < 0) {
+                        swap(i, store++);
+                    }
+                }
+                swap(store, high);
+
+                // рекурсия в меньшую часть - глубина стека O(log n)
+                if (store - low < high - store) {
+                    quickSort(low, store - 1);
+                    low = store + 1;
+                } else {
+                    quickSort(store + 1, high);
+                    high = store - 1;
+                }
+            }
+
+            for (int i = low + 1; i <= high; i++) {
+                for (int j = i; j > low && compare(j, j - 1) < 0; j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+
+        private int compare(int a, int b) {
+            int bySize = Long.compare(sizes[a], sizes[b]);
+            if (bySize != 0) {
+                return bySize;
+            }
+            int byDigest = Arrays.compareUnsigned(digests, a * digestLength, (a + 1) * digestLength,
+                    digests, b * digestLength, (b + 1) * digestLength);
+            return byDigest != 0 ? byDigest : Integer.compare(pathIds[a], pathIds[b]);
+        }
+
+        private void swap(int a, int b) {
+            if (a == b) {
+                return;
+            }
+            long size = sizes[a];
+            sizes[a] = sizes[b];
+            sizes[b] = size;
+
+            int pathId = pathIds[a];
+            pathIds[a] = pathIds[b];
+            pathIds[b] = pathId;
+
+            System.arraycopy(digests, a * digestLength, swap, 0, digestLength);
+            System.arraycopy(digests, b * digestLength, digests, a * digestLength, digestLength);
+            System.arraycopy(swap, 0, digests, b * digestLength, digestLength);
+        }
+    }
+
+    /**
+     * Последовательное чтение одного прогона
+     */
+    private static class RunReader implements Comparable<RunReader>, Closeable {
+        private final DataInputStream in;
+        private final byte[] digest;
+        private long size;
+        private int pathId;
+
+        RunReader(Path run, int digestLength, int bufferSize) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), bufferSize));
+            this.digest = new byte[digestLength];
+        }
+
+        boolean advance() throws IOException {
+            try {
+                size = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            in.readFully(digest);
+            pathId = in.readInt();
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            int bySize = Long.compare(size, other.size);
+            if (bySize != 0) {
+                return bySize;
+            }
+            int byDigest = Arrays.compareUnsigned(digest, other.digest);
+            return byDigest != 0 ? byDigest : Integer.compare(pathId, other.pathId);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
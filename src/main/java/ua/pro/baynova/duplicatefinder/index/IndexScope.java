@@ -0,0 +1,127 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.util.Locale;
+
+/**
+ * Область запроса к индексу: поддерево директории, расширение или точный размер.
+ * С включенными вторичными индексами ({@link SimpleFileIndex#enableSecondaryIndexes()})
+ * запрос по области стоит пропорционально числу файлов в ней, без полного обхода индекса.
+ */
+public final class IndexScope {
+
+    enum Kind { DIRECTORY, EXTENSION, SIZE }
+
+    private final Kind kind;
+    private final String directory;
+    private final String extension;
+    private final long size;
+
+    private IndexScope(Kind kind, String directory, String extension, long size) {
+        this.kind = kind;
+        this.directory = directory;
+        this.extension = extension;
+        this.size = size;
+    }
+
+    /**
+     * Файлы в директории и во всех ее поддиректориях
+     */
+    public static IndexScope underDirectory(String directory) {
+        if (directory == null || directory.isEmpty()) {
+            throw new IllegalArgumentException("Директория не может быть пустой");
+        }
+        String normalized = directory;
+        while (normalized.length() > 1 && (normalized.endsWith("/") || normalized.endsWith("\\"))) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return new IndexScope(Kind.DIRECTORY, normalized, null, 0);
+    }
+
+    /**
+     * Файлы с расширением (без учета регистра, точка необязательна: "mp4" или ".mp4")
+     */
+    public static IndexScope withExtension(String extension) {
+        if (extension == null) {
+            throw new IllegalArgumentException("Расширение не может быть null");
+        }
+        String normalized = extension.startsWith(".") ? extension.substring(1) : extension;
+        return new IndexScope(Kind.EXTENSION, null, normalized.toLowerCase(Locale.ROOT), 0);
+    }
+
+    /**
+     * Файлы ровно заданного размера
+     */
+    public static IndexScope ofSize(long size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Размер не может быть отрицательным");
+        }
+        return new IndexScope(Kind.SIZE, null, null, size);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    String getDirectory() {
+        return directory;
+    }
+
+    String getExtension() {
+        return extension;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Проверка одного файла - для обхода без вторичных индексов
+     */
+    public boolean matches(FileInfo fileInfo) {
+        return switch (kind) {
+            case SIZE -> fileInfo.getSize() == size;
+            case EXTENSION -> extensionOf(fileInfo.getPath()).equals(extension);
+            case DIRECTORY -> {
+                String path = fileInfo.getPath();
+                yield path.length() > directory.length() && path.startsWith(directory)
+                        && isSeparator(path.charAt(directory.length()))
+                        || directory.equals("/") && path.startsWith("/");
+            }
+        };
+    }
+
+    /**
+     * Директория файла (все до последнего разделителя)
+     */
+    static String parentOf(String path) {
+        int lastSeparator = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        if (lastSeparator < 0) {
+            return "";
+        }
+        return lastSeparator == 0 ? path.substring(0, 1) : path.substring(0, lastSeparator);
+    }
+
+    /**
+     * Расширение файла в нижнем регистре без точки ("" если его нет)
+     */
+    static String extensionOf(String path) {
+        int lastSeparator = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
+        int dot = path.lastIndexOf('.');
+        return dot > lastSeparator + 1 ? path.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == '\\';
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case DIRECTORY -> "IndexScope{директория=" + directory + "}";
+            case EXTENSION -> "IndexScope{расширение=" + extension + "}";
+            case SIZE -> "IndexScope{размер=" + size + "}";
+        };
+    }
+}
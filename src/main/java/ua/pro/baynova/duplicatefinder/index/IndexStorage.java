@@ -0,0 +1,183 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сохранение и загрузка индекса в компактном бинарном формате.
+ * Файл пишется во временный файл и атомарно переименовывается, поэтому
+ * прерванное сохранение не портит предыдущую версию индекса.
+ */
+public final class IndexStorage {
+
+    private static final int MAGIC = 0x44555046; // "DUPF"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private IndexStorage() {
+    }
+
+    /**
+     * Сохраняет индекс в файл
+     * @param index индекс
+     * @param file путь к файлу индекса
+     */
+    public static void save(SimpleFileIndex index, Path file) throws IOException {
+        if (index == null || file == null) {
+            throw new IllegalArgumentException("Индекс и путь к файлу не могут быть null");
+        }
+
+        Path absolute = file.toAbsolutePath();
+        Path tempFile = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        List<FileInfo> files = index.getAllFiles();
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(files.size());
+            String primaryDigest = index.getPrimaryDigest();
+            out.writeUTF(primaryDigest != null ? primaryDigest : "");
+
+            // фильтр перед записями: при загрузке покрытие проверяется на лету, без списка ключей
+            BloomFilter filter = index.getMembershipFilter();
+            out.writeBoolean(filter != null);
+            if (filter != null) {
+                out.writeDouble(index.getMembershipFalsePositiveRate());
+                filter.writeTo(out);
+            }
+
+            for (FileInfo fileInfo : files) {
+                writeFileInfo(out, fileInfo);
+            }
+        }
+
+        Files.move(tempFile, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("Индекс сохранен: " + absolute + " (" + files.size() + " файлов)");
+    }
+
+    /**
+     * Загружает индекс из файла
+     * @param file путь к файлу индекса
+     * @return новый индекс с загруженными записями
+     */
+    public static SimpleFileIndex load(Path file) throws IOException {
+        SimpleFileIndex index = new SimpleFileIndex();
+        loadInto(index, file);
+        return index;
+    }
+
+    /**
+     * Загружает записи из файла в существующий индекс
+     * @return количество загруженных записей
+     */
+    public static int loadInto(SimpleFileIndex index, Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("Файл индекса не существует: " + file);
+        }
+
+        boolean verbose = index.isVerbose();
+        index.setVerbose(false);
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Файл не является индексом: " + file);
+            }
+
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия индекса: " + version);
+            }
+
+            int count = in.readInt();
+            boolean wasEmpty = index.size() == 0;
+
+            String primaryDigest = in.readUTF();
+            // ключ группировки сохраненного индекса, если загружающий его не выбрал
+            if (wasEmpty && index.getPrimaryDigest() == null && !primaryDigest.isEmpty()) {
+                index.setPrimaryDigest(primaryDigest);
+            }
+
+            BloomFilter filter = null;
+            double falsePositiveRate = 0;
+            if (in.readBoolean()) {
+                falsePositiveRate = in.readDouble();
+                filter = BloomFilter.readFrom(in);
+            }
+
+            boolean allCovered = true;
+            for (int i = 0; i < count; i++) {
+                FileInfo fileInfo = readFileInfo(in);
+                index.addOrUpdate(fileInfo);
+                if (filter != null && allCovered) {
+                    allCovered = filter.mightContain(index.keyOf(fileInfo));
+                }
+            }
+
+            if (filter != null) {
+                // фильтр мог быть снят не в тот же момент, что и записи (или индекс был не пуст),
+                // тогда проще перестроить его, чем рисковать ложноотрицательными ответами
+                if (wasEmpty && allCovered) {
+                    index.restoreMembershipFilter(filter, falsePositiveRate);
+                } else {
+                    index.enableMembershipFilter(filter.getExpectedInsertions(), falsePositiveRate);
+                }
+            }
+
+            System.out.println("Индекс загружен: " + file + " (" + count + " файлов)");
+            return count;
+
+        } finally {
+            index.setVerbose(verbose);
+        }
+    }
+
+    /**
+     * Записывает одну запись FileInfo (используется также журналами и сетевым обменом)
+     */
+    public static void writeFileInfo(DataOutput out, FileInfo fileInfo) throws IOException {
+        out.writeUTF(fileInfo.getPath());
+        out.writeUTF(fileInfo.getHash());
+        out.writeLong(fileInfo.getSize());
+        // миллисекунды эпохи как есть: не зависят от часового пояса и не требуют преобразований
+        out.writeLong(fileInfo.getLastModifiedMillis());
+        out.writeLong(fileInfo.getIndexedAtMillis());
+
+        Map<String, String> digests = fileInfo.getDigests();
+        out.writeShort(digests.size());
+        for (Map.Entry<String, String> entry : digests.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    /**
+     * Читает одну запись FileInfo
+     */
+    public static FileInfo readFileInfo(DataInput in) throws IOException {
+        String path = in.readUTF();
+        String hash = in.readUTF();
+        long size = in.readLong();
+        long lastModifiedMillis = in.readLong();
+        long indexedAtMillis = in.readLong();
+
+        Map<String, String> digests = null;
+        int count = in.readUnsignedShort();
+        if (count > 0) {
+            digests = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                digests.put(in.readUTF(), in.readUTF());
+            }
+        }
+
+        return new FileInfo(path, hash, size, lastModifiedMillis, indexedAtMillis, digests);
+    }
+}
@@ -0,0 +1,76 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Вторичные индексы SimpleFileIndex: размер, директория и расширение -> пути.
+ * Директории лежат в TreeMap, поэтому поддерево - это непрерывный диапазон ключей.
+ * Не потокобезопасен сам по себе: вызывается под блокировкой SimpleFileIndex.
+ */
+class SecondaryIndexes {
+
+    private final Map<Long, Set<String>> bySize = new HashMap<>();
+    private final NavigableMap<String, Set<String>> byDirectory = new TreeMap<>();
+    private final Map<String, Set<String>> byExtension = new HashMap<>();
+
+    void add(FileInfo fileInfo) {
+        String path = fileInfo.getPath();
+        bySize.computeIfAbsent(fileInfo.getSize(), k -> new HashSet<>()).add(path);
+        byDirectory.computeIfAbsent(IndexScope.parentOf(path), k -> new HashSet<>()).add(path);
+        byExtension.computeIfAbsent(IndexScope.extensionOf(path), k -> new HashSet<>()).add(path);
+    }
+
+    void remove(FileInfo fileInfo) {
+        String path = fileInfo.getPath();
+        removeFrom(bySize, fileInfo.getSize(), path);
+        removeFrom(byDirectory, IndexScope.parentOf(path), path);
+        removeFrom(byExtension, IndexScope.extensionOf(path), path);
+    }
+
+    void clear() {
+        bySize.clear();
+        byDirectory.clear();
+        byExtension.clear();
+    }
+
+    /**
+     * Передает пути файлов области
+     */
+    void forEachPath(IndexScope scope, Consumer<String> action) {
+        switch (scope.getKind()) {
+            case SIZE -> bySize.getOrDefault(scope.getSize(), Set.of()).forEach(action);
+            case EXTENSION -> byExtension.getOrDefault(scope.getExtension(), Set.of()).forEach(action);
+            case DIRECTORY -> {
+                String directory = scope.getDirectory();
+                // поддиректории: ключи "dir/..." и "dir\..." идут подряд до следующего символа после разделителя
+                if (directory.endsWith("/") || directory.endsWith("\\")) {
+                    forEachInRange(directory, action);
+                } else {
+                    byDirectory.getOrDefault(directory, Set.of()).forEach(action);
+                    forEachInRange(directory + '/', action);
+                    forEachInRange(directory + '\\', action);
+                }
+            }
+        }
+    }
+
+    private void forEachInRange(String prefix, Consumer<String> action) {
+        String end = prefix.substring(0, prefix.length() - 1) + (char) (prefix.charAt(prefix.length() - 1) + 1);
+        for (Set<String> paths : byDirectory.subMap(prefix, true, end, false).values()) {
+            paths.forEach(action);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, Set<String>> index, K key, String path) {
+        Set<String> paths = index.get(key);
+        if (paths != null) {
+            paths.remove(path);
+            if (paths.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+}
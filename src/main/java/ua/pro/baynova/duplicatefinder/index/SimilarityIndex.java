@@ -0,0 +1,202 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import ua.pro.baynova.duplicatefinder.hash.MinHashSketcher.MinHashSignature;
+
+import java.util.*;
+
+/**
+ * Индекс похожих файлов на основе LSH (locality-sensitive hashing).
+ * Сигнатура делится на полосы (bands), каждая полоса хешируется в корзину.
+ * Файлы, совпавшие хотя бы в одной полосе, становятся кандидатами и
+ * проверяются по оценке сходства - попарного сравнения всех файлов нет.
+ */
+public class SimilarityIndex {
+
+    public static final int DEFAULT_BANDS = 32;
+    public static final int DEFAULT_ROWS = 4;
+
+    private final int bands;
+    private final int rows;
+
+    private final Map<String, MinHashSignature> signatures = new HashMap<>();
+    private final List<Map<Long, Set<String>>> buckets = new ArrayList<>();
+
+    public SimilarityIndex() {
+        this(DEFAULT_BANDS, DEFAULT_ROWS);
+    }
+
+    /**
+     * @param bands количество полос
+     * @param rows количество значений сигнатуры в одной полосе
+     */
+    public SimilarityIndex(int bands, int rows) {
+        if (bands <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("Количество полос и строк должно быть положительным");
+        }
+
+        this.bands = bands;
+        this.rows = rows;
+
+        for (int i = 0; i < bands; i++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Длина сигнатуры, которую ожидает индекс
+     */
+    public int getSignatureLength() {
+        return bands * rows;
+    }
+
+    /**
+     * Добавляет или обновляет сигнатуру файла
+     * @param path путь к файлу
+     * @param signature MinHash-сигнатура содержимого
+     */
+    public synchronized void addOrUpdate(String path, MinHashSignature signature) {
+        if (path == null || signature == null) {
+            throw new IllegalArgumentException("Путь и сигнатура не могут быть null");
+        }
+        checkLength(signature);
+
+        remove(path);
+
+        if (signature.isEmpty()) {
+            return;
+        }
+
+        signatures.put(path, signature);
+        for (int band = 0; band < bands; band++) {
+            buckets.get(band)
+                    .computeIfAbsent(bandKey(signature, band), k -> new HashSet<>())
+                    .add(path);
+        }
+    }
+
+    /**
+     * Удаляет файл из индекса
+     * @return true если файл был в индексе
+     */
+    public synchronized boolean remove(String path) {
+        MinHashSignature signature = signatures.remove(path);
+        if (signature == null) {
+            return false;
+        }
+
+        for (int band = 0; band < bands; band++) {
+            Map<Long, Set<String>> bandBuckets = buckets.get(band);
+            long key = bandKey(signature, band);
+            Set<String> paths = bandBuckets.get(key);
+            if (paths != null) {
+                paths.remove(path);
+                if (paths.isEmpty()) {
+                    bandBuckets.remove(key);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Находит файлы, похожие на указанный
+     * @param path путь к файлу из индекса
+     * @param minSimilarity минимальная оценка сходства (0.0 - 1.0)
+     * @return похожие файлы по убыванию сходства (без самого файла)
+     */
+    public synchronized List<SimilarFile> findSimilar(String path, double minSimilarity) {
+        MinHashSignature target = signatures.get(path);
+        if (target == null) {
+            return new ArrayList<>();
+        }
+        return findSimilar(target, minSimilarity, path);
+    }
+
+    /**
+     * Находит файлы, похожие на произвольную сигнатуру (файл может не быть в индексе)
+     * @throws IllegalArgumentException если длина сигнатуры не совпадает с длиной индекса
+     */
+    public synchronized List<SimilarFile> findSimilar(MinHashSignature signature, double minSimilarity) {
+        if (signature == null) {
+            throw new IllegalArgumentException("Сигнатура не может быть null");
+        }
+        checkLength(signature);
+        return findSimilar(signature, minSimilarity, null);
+    }
+
+    public synchronized MinHashSignature getSignature(String path) {
+        return signatures.get(path);
+    }
+
+    public synchronized int size() {
+        return signatures.size();
+    }
+
+    public synchronized void clear() {
+        signatures.clear();
+        buckets.forEach(Map::clear);
+    }
+
+    private List<SimilarFile> findSimilar(MinHashSignature target, double minSimilarity, String excludePath) {
+        Set<String> candidates = new HashSet<>();
+
+        for (int band = 0; band < bands; band++) {
+            Set<String> paths = buckets.get(band).get(bandKey(target, band));
+            if (paths != null) {
+                candidates.addAll(paths);
+            }
+        }
+
+        if (excludePath != null) {
+            candidates.remove(excludePath);
+        }
+
+        List<SimilarFile> result = new ArrayList<>();
+        for (String candidate : candidates) {
+            double similarity = target.estimateSimilarity(signatures.get(candidate));
+            if (similarity >= minSimilarity) {
+                result.add(new SimilarFile(candidate, similarity));
+            }
+        }
+
+        result.sort((f1, f2) -> Double.compare(f2.getSimilarity(), f1.getSimilarity()));
+        return result;
+    }
+
+    private void checkLength(MinHashSignature signature) {
+        if (signature.length() != getSignatureLength()) {
+            throw new IllegalArgumentException("Ожидалась сигнатура длины " + getSignatureLength() +
+                    ", получено: " + signature.length());
+        }
+    }
+
+    private long bandKey(MinHashSignature signature, int band) {
+        long[] values = signature.getValues();
+        long key = band;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            key = key * 31 + values[i];
+        }
+        return key;
+    }
+
+    /**
+     * Найденный похожий файл с оценкой сходства
+     */
+    public static class SimilarFile {
+        private final String path;
+        private final double similarity;
+
+        public SimilarFile(String path, double similarity) {
+            this.path = path;
+            this.similarity = similarity;
+        }
+
+        public String getPath() { return path; }
+        public double getSimilarity() { return similarity; }
+
+        @Override
+        public String toString() {
+            return String.format("SimilarFile{path='%s', similarity=%.2f}", path, similarity);
+        }
+    }
+}
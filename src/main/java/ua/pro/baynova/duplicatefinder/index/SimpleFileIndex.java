@@ -2,12 +2,213 @@ package ua.pro.baynova.duplicatefinder.index;
 
 import ua.pro.baynova.duplicatefinder.model.FileInfo;
 import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-
+import java.util.stream.Stream;
+
+/**
+ * Индекс файлов по пути и по хешу содержимого.
+ * Потокобезопасен: чтения выполняются параллельно, изменения - под эксклюзивной блокировкой.
+ *
+ * Хеш-таблица разбита на сегменты по хешу содержимого: все файлы одной группы лежат
+ * в одном сегменте, поэтому поиск групп и статистика на больших индексах считаются
+ * по сегментам параллельно (fork/join) с тем же результатом, что и последовательно.
+ *
+ * Если файлы хранят несколько хешей (HashCalculator с дополнительными алгоритмами),
+ * ключом группы может быть любой из них - см. {@link #setPrimaryDigest(String)}.
+ */
 public class SimpleFileIndex {
 
+    private static final int HASH_SHARDS = 64;
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 50_000;
+
+    /**
+     * Порядок групп: сначала большие, при равенстве - по хешу, чтобы результат не зависел от обхода
+     */
+    private final Comparator<List<FileInfo>> groupOrder =
+            Comparator.<List<FileInfo>>comparingInt(List::size).reversed()
+                    .thenComparing(group -> keyOf(group.get(0)));
+
     private final Map<String, FileInfo> pathIndex = new HashMap<>();
-    private final Map<String, Set<String>> hashIndex = new HashMap<>();
+    private final List<Map<String, Set<String>>> hashShards = new ArrayList<>(HASH_SHARDS);
+    private int distinctHashes = 0;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private SecondaryIndexes secondaryIndexes;
+
+    private volatile String primaryDigest;
+
+    private volatile boolean verbose = true;
+    private volatile long modificationCount = 0;
+
+    private volatile BloomFilter membershipFilter;
+    private double membershipFalsePositiveRate;
+    private long removedSinceFilterBuild = 0;
+
+    public SimpleFileIndex() {
+        for (int i = 0; i < HASH_SHARDS; i++) {
+            hashShards.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * С какого количества файлов поиск групп и статистика считаются параллельно
+     * (на маленьких индексах накладные расходы fork/join больше выигрыша)
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = Math.max(0, parallelThreshold);
+    }
+
+    /**
+     * Включает вторичные индексы по размеру, директории и расширению.
+     * Они поддерживаются при каждом изменении и позволяют запросам по {@link IndexScope}
+     * не обходить весь индекс. Стоят примерно трех ссылок на путь на каждый файл.
+     */
+    public void enableSecondaryIndexes() {
+        lock.writeLock().lock();
+        try {
+            if (secondaryIndexes == null) {
+                secondaryIndexes = new SecondaryIndexes();
+                pathIndex.values().forEach(secondaryIndexes::add);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void disableSecondaryIndexes() {
+        lock.writeLock().lock();
+        try {
+            secondaryIndexes = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean hasSecondaryIndexes() {
+        lock.readLock().lock();
+        try {
+            return secondaryIndexes != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Выбирает алгоритм, по хешу которого файлы группируются и ищутся в findByHash.
+     * Хеш-таблица перестраивается по уже проиндексированным файлам без повторного чтения:
+     * например, переход с MD5 на SHA-256 после индексации с обоими алгоритмами.
+     * Файлы без хеша этого алгоритма остаются под основным хешем (getHash).
+     * @param algorithm алгоритм из FileInfo.getDigests() или null - основной хеш файла
+     */
+    public void setPrimaryDigest(String algorithm) {
+        lock.writeLock().lock();
+        try {
+            if (Objects.equals(primaryDigest, algorithm)) {
+                return;
+            }
+            primaryDigest = algorithm;
+
+            hashShards.forEach(Map::clear);
+            distinctHashes = 0;
+            for (FileInfo fileInfo : pathIndex.values()) {
+                addToHashIndex(keyOf(fileInfo), fileInfo.getPath());
+            }
+            if (membershipFilter != null) {
+                rebuildMembershipFilter(Math.max(membershipFilter.getExpectedInsertions(), distinctHashes));
+            }
+            modificationCount++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return алгоритм ключа группировки или null, если используется основной хеш файла
+     */
+    public String getPrimaryDigest() {
+        return primaryDigest;
+    }
+
+    /**
+     * Ключ файла в хеш-таблице: хеш выбранного алгоритма, если он посчитан, иначе основной
+     */
+    public String keyOf(FileInfo fileInfo) {
+        String algorithm = primaryDigest;
+        if (algorithm != null) {
+            String digest = fileInfo.getDigest(algorithm);
+            if (digest != null) {
+                return digest;
+            }
+        }
+        return fileInfo.getHash();
+    }
+
+    /**
+     * Включает или выключает вывод каждой операции в консоль
+     * (при загрузке больших индексов вывод занимает больше времени, чем сама загрузка)
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    /**
+     * Включает фильтр Блума перед поиском по хешу: промахи в findByHash/containsHash
+     * отсекаются без блокировки и без обращения к основной хеш-таблице.
+     * Фильтр поддерживается при изменениях индекса и сохраняется вместе с ним (IndexStorage).
+     * @param expectedInsertions ожидаемое количество различных хешей
+     * @param falsePositiveRate допустимая доля ложноположительных (определяет расход памяти)
+     */
+    public void enableMembershipFilter(long expectedInsertions, double falsePositiveRate) {
+        lock.writeLock().lock();
+        try {
+            membershipFalsePositiveRate = falsePositiveRate;
+            rebuildMembershipFilter(Math.max(expectedInsertions, distinctHashes));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void disableMembershipFilter() {
+        membershipFilter = null;
+    }
+
+    public BloomFilter getMembershipFilter() {
+        return membershipFilter;
+    }
+
+    /**
+     * Устанавливает загруженный с диска фильтр (вызывается из IndexStorage)
+     */
+    void restoreMembershipFilter(BloomFilter filter, double falsePositiveRate) {
+        lock.writeLock().lock();
+        try {
+            membershipFalsePositiveRate = falsePositiveRate;
+            removedSinceFilterBuild = 0;
+            membershipFilter = filter;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    double getMembershipFalsePositiveRate() {
+        return membershipFalsePositiveRate;
+    }
+
+    /**
+     * Счетчик изменений индекса: растет при каждом добавлении, обновлении и удалении.
+     * Позволяет кешировать производные данные, пока индекс не менялся.
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
 
     /**
      * Добавляет или обновляет информацию о файле
@@ -19,18 +220,33 @@ public class SimpleFileIndex {
         }
 
         String path = fileInfo.getPath();
-        String hash = fileInfo.getHash();
 
-        FileInfo existingFile = pathIndex.get(path);
-        if (existingFile != null) {
-            removeFromHashIndex(existingFile.getHash(), path);
-        }
+        lock.writeLock().lock();
+        String hash;
+        try {
+            hash = keyOf(fileInfo);
+            FileInfo existingFile = pathIndex.get(path);
+            if (existingFile != null) {
+                removeFromHashIndex(keyOf(existingFile), path);
+                if (secondaryIndexes != null) {
+                    secondaryIndexes.remove(existingFile);
+                }
+            }
 
-        pathIndex.put(path, fileInfo);
-        addToHashIndex(hash, path);
+            pathIndex.put(path, fileInfo);
+            addToHashIndex(hash, path);
+            if (secondaryIndexes != null) {
+                secondaryIndexes.add(fileInfo);
+            }
+            modificationCount++;
+        } finally {
+            lock.writeLock().unlock();
+        }
 
-        System.out.println("Добавлен в индекс: " + fileInfo.getFileName() +
-                " (хеш: " + hash.substring(0, Math.min(8, hash.length())) + "...)");
+        if (verbose) {
+            System.out.println("Добавлен в индекс: " + fileInfo.getFileName() +
+                    " (хеш: " + hash.substring(0, Math.min(8, hash.length())) + "...)");
+        }
     }
 
     /**
@@ -39,7 +255,61 @@ public class SimpleFileIndex {
      * @return информация о файле или null если не найден
      */
     public FileInfo getByPath(String path) {
-        return pathIndex.get(path);
+        lock.readLock().lock();
+        try {
+            return pathIndex.get(path);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Находит все файлы с указанным хешем содержимого
+     * @param hash хеш в виде hex-строки
+     * @return файлы с этим содержимым (пустой список если таких нет)
+     */
+    public List<FileInfo> findByHash(String hash) {
+        BloomFilter filter = membershipFilter;
+        if (filter != null && !filter.mightContain(hash)) {
+            return new ArrayList<>();
+        }
+
+        lock.readLock().lock();
+        try {
+            Set<String> paths = shardOf(hash).get(hash);
+            if (paths == null) {
+                return new ArrayList<>();
+            }
+
+            List<FileInfo> result = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                FileInfo fileInfo = pathIndex.get(path);
+                if (fileInfo != null) {
+                    result.add(fileInfo);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Проверяет есть ли в индексе файл с таким содержимым
+     * @param hash хеш в виде hex-строки
+     */
+    public boolean containsHash(String hash) {
+        BloomFilter filter = membershipFilter;
+        if (filter != null && !filter.mightContain(hash)) {
+            return false;
+        }
+
+        lock.readLock().lock();
+        try {
+            return shardOf(hash).containsKey(hash);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -48,7 +318,12 @@ public class SimpleFileIndex {
      * @return true если файл есть в индексе
      */
     public boolean contains(String path) {
-        return pathIndex.containsKey(path);
+        lock.readLock().lock();
+        try {
+            return pathIndex.containsKey(path);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -57,10 +332,26 @@ public class SimpleFileIndex {
      * @return true если файл был удален, false если его не было
      */
     public boolean remove(String path) {
-        FileInfo fileInfo = pathIndex.remove(path);
+        FileInfo fileInfo;
+
+        lock.writeLock().lock();
+        try {
+            fileInfo = pathIndex.remove(path);
+            if (fileInfo != null) {
+                removeFromHashIndex(keyOf(fileInfo), path);
+                if (secondaryIndexes != null) {
+                    secondaryIndexes.remove(fileInfo);
+                }
+                modificationCount++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
         if (fileInfo != null) {
-            removeFromHashIndex(fileInfo.getHash(), path);
-            System.out.println("Удален из индекса: " + fileInfo.getFileName());
+            if (verbose) {
+                System.out.println("Удален из индекса: " + fileInfo.getFileName());
+            }
             return true;
         }
         return false;
@@ -71,7 +362,12 @@ public class SimpleFileIndex {
      * @return список всех файлов
      */
     public List<FileInfo> getAllFiles() {
-        return new ArrayList<>(pathIndex.values());
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(pathIndex.values());
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -79,30 +375,286 @@ public class SimpleFileIndex {
      * @return список групп дубликатов (каждая группа содержит файлы с одинаковым содержимым)
      */
     public List<List<FileInfo>> findDuplicates() {
-        List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            return collectDuplicateGroups();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
-        for (Map.Entry<String, Set<String>> entry : hashIndex.entrySet()) {
-            Set<String> paths = entry.getValue();
+    /**
+     * Группы дубликатов, в которых копии внутри одинаковых директорий свернуты:
+     * вместо тысяч групп файлов пяти копий проекта - группа директорий в DirectoryHashIndex
+     * @param directoryIndex хеши директорий, построенные по этому индексу
+     */
+    public List<List<FileInfo>> findDuplicates(DirectoryHashIndex directoryIndex) {
+        return directoryIndex.collapse(findDuplicates());
+    }
 
-            if (paths.size() > 1) {
-                List<FileInfo> duplicateGroup = new ArrayList<>();
+    private List<List<FileInfo>> collectDuplicateGroups() {
+        return shards(useParallel())
+                .flatMap(shard -> shard.values().stream())
+                .map(this::buildDuplicateGroup)
+                .filter(Objects::nonNull)
+                .sorted(groupOrder)
+                .collect(Collectors.toList());
+    }
+
+    private boolean useParallel() {
+        return pathIndex.size() >= parallelThreshold;
+    }
+
+    /**
+     * Сегменты хеш-таблицы; параллельный поток разбирается пулом fork/join по сегментам
+     */
+    private Stream<Map<String, Set<String>>> shards(boolean parallel) {
+        return parallel ? hashShards.parallelStream() : hashShards.stream();
+    }
 
-                for (String path : paths) {
-                    FileInfo fileInfo = pathIndex.get(path);
-                    if (fileInfo != null) {
-                        duplicateGroup.add(fileInfo);
+    private Map<String, Set<String>> shardOf(String hash) {
+        int h = hash.hashCode();
+        return hashShards.get((h ^ (h >>> 16)) & (HASH_SHARDS - 1));
+    }
+
+    /**
+     * Находит группы дубликатов, в которых хотя бы один файл входит в область
+     * (например "дубликаты под /projects/x" или "дубликаты .mp4"). Группы возвращаются целиком,
+     * чтобы были видны копии и за пределами области.
+     * С вторичными индексами время пропорционально числу файлов области, иначе - полный обход.
+     * @param scope область
+     */
+    public List<List<FileInfo>> findDuplicates(IndexScope scope) {
+        if (scope == null) {
+            throw new IllegalArgumentException("Область не может быть null");
+        }
+
+        lock.readLock().lock();
+        try {
+            Set<String> seenHashes = new HashSet<>();
+            List<List<FileInfo>> duplicateGroups = new ArrayList<>();
+
+            forEachInScope(scope, fileInfo -> {
+                String hash = keyOf(fileInfo);
+                if (seenHashes.add(hash)) {
+                    List<FileInfo> duplicateGroup = buildDuplicateGroup(shardOf(hash).get(hash));
+                    if (duplicateGroup != null) {
+                        duplicateGroups.add(duplicateGroup);
                     }
                 }
+            });
 
-                if (duplicateGroup.size() > 1) {
-                    duplicateGroups.add(duplicateGroup);
+            duplicateGroups.sort(groupOrder);
+            return duplicateGroups;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Файлы индекса, попадающие в область
+     */
+    public List<FileInfo> findInScope(IndexScope scope) {
+        if (scope == null) {
+            throw new IllegalArgumentException("Область не может быть null");
+        }
+
+        lock.readLock().lock();
+        try {
+            List<FileInfo> result = new ArrayList<>();
+            forEachInScope(scope, result::add);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void forEachInScope(IndexScope scope, Consumer<FileInfo> action) {
+        if (secondaryIndexes != null) {
+            secondaryIndexes.forEachPath(scope, path -> {
+                FileInfo fileInfo = pathIndex.get(path);
+                if (fileInfo != null) {
+                    action.accept(fileInfo);
                 }
+            });
+            return;
+        }
+
+        for (FileInfo fileInfo : pathIndex.values()) {
+            if (scope.matches(fileInfo)) {
+                action.accept(fileInfo);
             }
         }
+    }
 
-        duplicateGroups.sort((g1, g2) -> Integer.compare(g2.size(), g1.size()));
+    /**
+     * Обходит группы дубликатов по одной, не собирая их в общий список.
+     * Порядок групп не определен. Обход идет под блокировкой чтения,
+     * поэтому изменения индекса ждут его окончания.
+     * @param action получатель группы (список принадлежит получателю)
+     * @return количество групп
+     */
+    public int forEachDuplicateGroup(Consumer<List<FileInfo>> action) {
+        lock.readLock().lock();
+        try {
+            int groups = 0;
+            for (Map<String, Set<String>> shard : hashShards) {
+                for (Set<String> paths : shard.values()) {
+                    List<FileInfo> duplicateGroup = buildDuplicateGroup(paths);
+                    if (duplicateGroup != null) {
+                        action.accept(duplicateGroup);
+                        groups++;
+                    }
+                }
+            }
+            return groups;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Обходит хеши групп дубликатов с потерянным объемом (size * (n - 1)) без построения самих групп
+     */
+    public void forEachDuplicateHash(DuplicateHashVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (Map<String, Set<String>> shard : hashShards) {
+                for (Map.Entry<String, Set<String>> entry : shard.entrySet()) {
+                    Set<String> paths = entry.getValue();
+                    if (paths.size() > 1) {
+                        FileInfo first = pathIndex.get(paths.iterator().next());
+                        if (first != null) {
+                            visitor.visit(entry.getKey(), paths.size(), first.getSize() * (paths.size() - 1));
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<FileInfo> buildDuplicateGroup(Set<String> paths) {
+        if (paths.size() <= 1) {
+            return null;
+        }
 
-        return duplicateGroups;
+        List<FileInfo> duplicateGroup = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            FileInfo fileInfo = pathIndex.get(path);
+            if (fileInfo != null) {
+                duplicateGroup.add(fileInfo);
+            }
+        }
+        return duplicateGroup.size() > 1 ? duplicateGroup : null;
+    }
+
+    /**
+     * Порядок групп для выборки первых K и постраничного обхода
+     */
+    public enum GroupRanking {
+        /** по лишнему объему size * (n - 1), по убыванию */
+        WASTED_BYTES,
+        /** по количеству файлов, по убыванию */
+        FILE_COUNT,
+        /** только по хешу - для стабильного обхода всех групп */
+        HASH
+    }
+
+    /**
+     * Возвращает K групп с наибольшим лишним объемом или количеством файлов.
+     * Все группы не строятся и не сортируются: по каждому сегменту держится куча из K ключей.
+     * @param k сколько групп вернуть
+     * @param ranking порядок (при равенстве - по хешу)
+     */
+    public List<List<FileInfo>> findTopDuplicateGroups(int k, GroupRanking ranking) {
+        return findDuplicatePage(ranking, null, k).getGroups();
+    }
+
+    /**
+     * Страница групп дубликатов в заданном порядке. Курсор хранит ключ последней группы
+     * (а не номер позиции), поэтому страницы не пересекаются и не пропускают группы,
+     * пока индекс не меняется. Если индекс изменился, страница помечается как устаревшая.
+     * Каждая страница стоит O(n log pageSize) без материализации всех групп.
+     * @param ranking порядок групп
+     * @param cursor курсор из предыдущей страницы или null для первой
+     * @param pageSize размер страницы
+     */
+    public DuplicatePage findDuplicatePage(GroupRanking ranking, String cursor, int pageSize) {
+        if (ranking == null) {
+            throw new IllegalArgumentException("Порядок групп не может быть null");
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Размер страницы должен быть положительным");
+        }
+
+        lock.readLock().lock();
+        try {
+            GroupKey after = cursor != null ? GroupKey.parseCursor(cursor, ranking) : null;
+            boolean stale = after != null && after.modificationCount != modificationCount;
+            Comparator<GroupKey> order = GroupKey.order(ranking);
+
+            // в каждой куче - pageSize наименьших по порядку ключей, на вершине наибольший из них
+            PriorityQueue<GroupKey> best = shards(useParallel())
+                    .map(shard -> selectPage(shard, ranking, order, after, pageSize + 1))
+                    .reduce(new PriorityQueue<>(order.reversed()), (a, b) -> {
+                        PriorityQueue<GroupKey> merged = new PriorityQueue<>(order.reversed());
+                        merged.addAll(a);
+                        for (GroupKey key : b) {
+                            offerBounded(merged, key, order, pageSize + 1);
+                        }
+                        return merged;
+                    });
+
+            List<GroupKey> keys = new ArrayList<>(best);
+            keys.sort(order);
+            boolean hasMore = keys.size() > pageSize;
+            if (hasMore) {
+                keys = keys.subList(0, pageSize);
+            }
+
+            List<List<FileInfo>> groups = new ArrayList<>(keys.size());
+            for (GroupKey key : keys) {
+                groups.add(buildDuplicateGroup(shardOf(key.hash).get(key.hash)));
+            }
+
+            String nextCursor = hasMore ? keys.get(keys.size() - 1).toCursor(ranking, modificationCount) : null;
+            return new DuplicatePage(groups, nextCursor, stale);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private PriorityQueue<GroupKey> selectPage(Map<String, Set<String>> shard, GroupRanking ranking,
+                                               Comparator<GroupKey> order, GroupKey after, int limit) {
+        PriorityQueue<GroupKey> heap = new PriorityQueue<>(order.reversed());
+
+        for (Map.Entry<String, Set<String>> entry : shard.entrySet()) {
+            Set<String> paths = entry.getValue();
+            if (paths.size() <= 1) {
+                continue;
+            }
+            FileInfo first = pathIndex.get(paths.iterator().next());
+            if (first == null) {
+                continue;
+            }
+
+            GroupKey key = new GroupKey(entry.getKey(), paths.size(), first.getSize() * (paths.size() - 1), ranking);
+            if (after == null || order.compare(key, after) > 0) {
+                offerBounded(heap, key, order, limit);
+            }
+        }
+        return heap;
+    }
+
+    private static void offerBounded(PriorityQueue<GroupKey> heap, GroupKey key, Comparator<GroupKey> order, int limit) {
+        if (heap.size() < limit) {
+            heap.add(key);
+        } else if (order.compare(key, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(key);
+        }
     }
 
     /**
@@ -111,13 +663,42 @@ public class SimpleFileIndex {
      * @return список дубликатов (без самого файла)
      */
     public List<FileInfo> findDuplicatesOf(String filePath) {
+        lock.readLock().lock();
+        try {
+            return collectDuplicatesOf(filePath);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Находит дубликаты файла только внутри области (например копии в /backup)
+     * @param filePath путь к файлу
+     * @param scope область, в которой искать копии
+     */
+    public List<FileInfo> findDuplicatesOf(String filePath, IndexScope scope) {
+        if (scope == null) {
+            throw new IllegalArgumentException("Область не может быть null");
+        }
+
+        lock.readLock().lock();
+        try {
+            List<FileInfo> duplicates = collectDuplicatesOf(filePath);
+            duplicates.removeIf(fileInfo -> !scope.matches(fileInfo));
+            return duplicates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<FileInfo> collectDuplicatesOf(String filePath) {
         FileInfo targetFile = pathIndex.get(filePath);
         if (targetFile == null) {
             return new ArrayList<>();
         }
 
-        String targetHash = targetFile.getHash();
-        Set<String> duplicatePaths = hashIndex.get(targetHash);
+        String targetHash = keyOf(targetFile);
+        Set<String> duplicatePaths = shardOf(targetHash).get(targetHash);
 
         if (duplicatePaths == null || duplicatePaths.size() <= 1) {
             return new ArrayList<>();
@@ -135,58 +716,213 @@ public class SimpleFileIndex {
      * @return информация о содержимом индекса
      */
     public IndexStatistics getStatistics() {
+        lock.readLock().lock();
+        try {
+            return collectStatistics();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private IndexStatistics collectStatistics() {
+        boolean parallel = useParallel();
         int totalFiles = pathIndex.size();
 
-        long totalSize = pathIndex.values().stream()
+        long totalSize = (parallel ? pathIndex.values().parallelStream() : pathIndex.values().stream())
                 .mapToLong(FileInfo::getSize)
                 .sum();
 
-        int duplicateGroups = (int) hashIndex.values().stream()
-                .filter(paths -> paths.size() > 1)
-                .count();
-
-        int duplicateFiles = hashIndex.values().stream()
-                .filter(paths -> paths.size() > 1)
-                .mapToInt(paths -> paths.size() - 1)
-                .sum();
+        // группы, лишние файлы, лишний объем - по сегментам, затем сложение
+        long[] duplicates = shards(parallel)
+                .map(this::shardStatistics)
+                .reduce(new long[3], (a, b) -> new long[]{a[0] + b[0], a[1] + b[1], a[2] + b[2]});
 
-        long duplicateSize = hashIndex.entrySet().stream()
-                .filter(entry -> entry.getValue().size() > 1)
-                .mapToLong(entry -> {
-                    String firstPath = entry.getValue().iterator().next();
-                    FileInfo firstFile = pathIndex.get(firstPath);
-                    return firstFile != null ?
-                            firstFile.getSize() * (entry.getValue().size() - 1) : 0;
-                })
-                .sum();
+        return new IndexStatistics(totalFiles, totalSize, (int) duplicates[0], (int) duplicates[1], duplicates[2]);
+    }
 
-        return new IndexStatistics(totalFiles, totalSize, duplicateGroups, duplicateFiles, duplicateSize);
+    private long[] shardStatistics(Map<String, Set<String>> shard) {
+        long[] result = new long[3];
+        for (Set<String> paths : shard.values()) {
+            if (paths.size() > 1) {
+                result[0]++;
+                result[1] += paths.size() - 1;
+                FileInfo firstFile = pathIndex.get(paths.iterator().next());
+                if (firstFile != null) {
+                    result[2] += firstFile.getSize() * (paths.size() - 1);
+                }
+            }
+        }
+        return result;
     }
 
     public void clear() {
-        pathIndex.clear();
-        hashIndex.clear();
+        lock.writeLock().lock();
+        try {
+            pathIndex.clear();
+            hashShards.forEach(Map::clear);
+            distinctHashes = 0;
+            if (secondaryIndexes != null) {
+                secondaryIndexes.clear();
+            }
+            modificationCount++;
+            if (membershipFilter != null) {
+                rebuildMembershipFilter(membershipFilter.getExpectedInsertions());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
         System.out.println("Индекс очищен");
     }
 
     public int size() {
-        return pathIndex.size();
+        lock.readLock().lock();
+        try {
+            return pathIndex.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     private void addToHashIndex(String hash, String path) {
-        hashIndex.computeIfAbsent(hash, k -> new HashSet<>()).add(path);
+        BloomFilter filter = membershipFilter;
+        if (filter != null) {
+            if (distinctHashes >= filter.getExpectedInsertions()) {
+                rebuildMembershipFilter(filter.getExpectedInsertions() * 2);
+            }
+            membershipFilter.put(hash);
+        }
+
+        Map<String, Set<String>> shard = shardOf(hash);
+        Set<String> paths = shard.get(hash);
+        if (paths == null) {
+            paths = new HashSet<>();
+            shard.put(hash, paths);
+            distinctHashes++;
+        }
+        paths.add(path);
     }
 
     private void removeFromHashIndex(String hash, String path) {
-        Set<String> paths = hashIndex.get(hash);
+        Map<String, Set<String>> shard = shardOf(hash);
+        Set<String> paths = shard.get(hash);
         if (paths != null) {
             paths.remove(path);
             if (paths.isEmpty()) {
-                hashIndex.remove(hash);
+                shard.remove(hash);
+                distinctHashes--;
+                onHashRemovedFromFilter();
+            }
+        }
+    }
+
+    /**
+     * Из фильтра Блума нельзя удалять, поэтому удаленные хеши копятся как "мусор",
+     * повышая долю ложноположительных. Когда мусора становится много, фильтр перестраивается.
+     */
+    private void onHashRemovedFromFilter() {
+        BloomFilter filter = membershipFilter;
+        if (filter == null) {
+            return;
+        }
+
+        removedSinceFilterBuild++;
+        if (removedSinceFilterBuild > filter.getExpectedInsertions() / 4) {
+            rebuildMembershipFilter(filter.getExpectedInsertions());
+        }
+    }
+
+    private void rebuildMembershipFilter(long expectedInsertions) {
+        BloomFilter filter = new BloomFilter(Math.max(1, expectedInsertions), membershipFalsePositiveRate);
+        for (Map<String, Set<String>> shard : hashShards) {
+            for (String hash : shard.keySet()) {
+                filter.put(hash);
+            }
+        }
+        removedSinceFilterBuild = 0;
+        membershipFilter = filter;
+    }
+
+    /**
+     * Ключ группы для выборки: хеш и мера, без списка файлов
+     */
+    private static class GroupKey {
+        private final String hash;
+        private final long metric;
+        private long modificationCount;
+
+        GroupKey(String hash, int fileCount, long wastedBytes, GroupRanking ranking) {
+            this(hash, switch (ranking) {
+                case WASTED_BYTES -> wastedBytes;
+                case FILE_COUNT -> fileCount;
+                case HASH -> 0;
+            });
+        }
+
+        private GroupKey(String hash, long metric) {
+            this.hash = hash;
+            this.metric = metric;
+        }
+
+        /**
+         * Мера по убыванию, затем хеш по возрастанию - полный порядок без совпадений
+         */
+        static Comparator<GroupKey> order(GroupRanking ranking) {
+            Comparator<GroupKey> byHash = Comparator.comparing(key -> key.hash);
+            return ranking == GroupRanking.HASH
+                    ? byHash
+                    : Comparator.<GroupKey>comparingLong(key -> key.metric).reversed().thenComparing(byHash);
+        }
+
+        // курсор: счетчик изменений:порядок:мера:хеш
+        String toCursor(GroupRanking ranking, long modificationCount) {
+            return modificationCount + ":" + ranking.name() + ":" + metric + ":" + hash;
+        }
+
+        static GroupKey parseCursor(String cursor, GroupRanking ranking) {
+            String[] parts = cursor.split(":", 4);
+            try {
+                if (parts.length != 4 || !parts[1].equals(ranking.name())) {
+                    throw new IllegalArgumentException("Курсор не подходит к порядку " + ranking + ": " + cursor);
+                }
+                GroupKey key = new GroupKey(parts[3], Long.parseLong(parts[2]));
+                key.modificationCount = Long.parseLong(parts[0]);
+                return key;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Некорректный курсор: " + cursor, e);
             }
         }
     }
 
+    /**
+     * Страница групп дубликатов
+     */
+    public static class DuplicatePage {
+        private final List<List<FileInfo>> groups;
+        private final String nextCursor;
+        private final boolean stale;
+
+        public DuplicatePage(List<List<FileInfo>> groups, String nextCursor, boolean stale) {
+            this.groups = groups;
+            this.nextCursor = nextCursor;
+            this.stale = stale;
+        }
+
+        public List<List<FileInfo>> getGroups() { return groups; }
+
+        /** курсор следующей страницы или null, если это последняя */
+        public String getNextCursor() { return nextCursor; }
+
+        public boolean hasMore() { return nextCursor != null; }
+
+        /** индекс менялся после выдачи курсора - возможны пропуски и повторы */
+        public boolean isStale() { return stale; }
+    }
+
+    @FunctionalInterface
+    public interface DuplicateHashVisitor {
+        void visit(String hash, int fileCount, long wastedBytes);
+    }
+
     public static class IndexStatistics {
         private final int totalFiles;
         private final long totalSize;
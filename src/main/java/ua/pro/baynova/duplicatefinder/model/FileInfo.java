@@ -1,16 +1,60 @@
 package ua.pro.baynova.duplicatefinder.model;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 
+/**
+ * Проиндексированный файл. Время хранится в миллисекундах эпохи, а не в LocalDateTime:
+ * два примитивных поля вместо двух объектов на каждый файл индекса.
+ * LocalDateTime строится только по запросу.
+ *
+ * Точность времени - миллисекунды: доли миллисекунды отбрасываются, поэтому геттеры
+ * LocalDateTime могут вернуть не то же значение, что передано в конструктор.
+ */
 public class FileInfo {
+
+    /**
+     * Значение времени "не задано" (аналог null для LocalDateTime)
+     */
+    public static final long NO_TIME = Long.MIN_VALUE;
+
     private final String path;
     private final String hash;
     private final long size;
-    private final LocalDateTime lastModified;
-    private final LocalDateTime indexedAt;
+    private final long lastModifiedMillis;
+    private final long indexedAtMillis;
+    private final Map<String, String> digests;
 
+    /**
+     * Время переводится в миллисекунды эпохи по часовому поясу системы ({@link #toEpochMillis}):
+     * доли миллисекунды теряются, а несуществующее при переходе на летнее время локальное
+     * время сдвигается вперед. {@link #getLastModified()} и {@link #getIndexedAt()}
+     * возвращают уже усеченное значение.
+     */
     public FileInfo(String path, String hash, long size, LocalDateTime lastModified, LocalDateTime indexedAt){
+        this(path, hash, size, toEpochMillis(lastModified), toEpochMillis(indexedAt));
+    }
+
+    /**
+     * @param lastModifiedMillis время изменения в миллисекундах эпохи (или NO_TIME)
+     * @param indexedAtMillis время индексации в миллисекундах эпохи (или NO_TIME)
+     */
+    public FileInfo(String path, String hash, long size, long lastModifiedMillis, long indexedAtMillis){
+        this(path, hash, size, lastModifiedMillis, indexedAtMillis, null);
+    }
+
+    /**
+     * @param hash хеш основного алгоритма
+     * @param digests все посчитанные хеши (алгоритм -> хеш), может быть null.
+     *                Файлы с одним алгоритмом не тратят память на карту.
+     */
+    public FileInfo(String path, String hash, long size, long lastModifiedMillis, long indexedAtMillis,
+                    Map<String, String> digests){
         if (path == null || path.trim().isEmpty()) {
             throw new IllegalArgumentException("Путь к файлу не может быть пустым");
         }
@@ -24,8 +68,26 @@ public class FileInfo {
         this.path = path;
         this.hash = hash;
         this.size = size;
-        this.lastModified = lastModified;
-        this.indexedAt = indexedAt;
+        this.lastModifiedMillis = lastModifiedMillis;
+        this.indexedAtMillis = indexedAtMillis;
+        this.digests = digests == null || digests.isEmpty()
+                ? null : Collections.unmodifiableMap(new LinkedHashMap<>(digests));
+    }
+
+    /**
+     * Переводит локальное время в миллисекунды эпохи по часовому поясу системы.
+     * Доли миллисекунды отбрасываются; для неоднозначного времени при переходе
+     * на зимнее время берется более раннее смещение.
+     */
+    public static long toEpochMillis(LocalDateTime time) {
+        return time == null ? NO_TIME : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Переводит миллисекунды эпохи в локальное время (null для NO_TIME)
+     */
+    public static LocalDateTime fromEpochMillis(long millis) {
+        return millis == NO_TIME ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
     }
 
     public String getPath() {
@@ -36,25 +98,62 @@ public class FileInfo {
         return hash;
     }
 
+    /**
+     * Хеш файла по заданному алгоритму
+     * @return хеш или null, если этот алгоритм для файла не считался
+     */
+    public String getDigest(String algorithm) {
+        return digests != null ? digests.get(algorithm) : null;
+    }
+
+    /**
+     * Все хеши файла, посчитанные за одно чтение (пустая карта, если хранится только основной)
+     */
+    public Map<String, String> getDigests() {
+        return digests != null ? digests : Map.of();
+    }
+
     public long getSize() {
         return size;
     }
 
+    /**
+     * @return время изменения с точностью до миллисекунды (null, если не задано)
+     */
     public LocalDateTime getLastModified() {
-        return lastModified;
+        return fromEpochMillis(lastModifiedMillis);
     }
 
+    /**
+     * @return время индексации с точностью до миллисекунды (null, если не задано)
+     */
     public LocalDateTime getIndexedAt() {
-        return indexedAt;
+        return fromEpochMillis(indexedAtMillis);
+    }
+
+    public long getLastModifiedMillis() {
+        return lastModifiedMillis;
+    }
+
+    public long getIndexedAtMillis() {
+        return indexedAtMillis;
     }
 
     /**
-     * Проверяет нужно ли переиндексировать файл
+     * Проверяет нужно ли переиндексировать файл. Время сравнивается с точностью
+     * до миллисекунды: изменение в пределах той же миллисекунды не заметно
      * @param currentLastModified текущее время изменения файла
      * @return true если файл был изменен и нужно пересчитать хеш
      */
     public boolean needsReindexing(LocalDateTime currentLastModified){
-        return currentLastModified.isAfter(this.lastModified);
+        return needsReindexing(toEpochMillis(currentLastModified));
+    }
+
+    /**
+     * То же по времени в миллисекундах эпохи - без построения LocalDateTime
+     */
+    public boolean needsReindexing(long currentLastModifiedMillis){
+        return currentLastModifiedMillis > this.lastModifiedMillis;
     }
 
     /**
@@ -71,14 +170,14 @@ public class FileInfo {
         if (o == null || getClass() != o.getClass()) return false;
         FileInfo fileInfo = (FileInfo) o;
         return size == fileInfo.size &&
+                lastModifiedMillis == fileInfo.lastModifiedMillis &&
                 Objects.equals(path, fileInfo.path) &&
-                Objects.equals(hash, fileInfo.hash) &&
-                Objects.equals(lastModified, fileInfo.lastModified);
+                Objects.equals(hash, fileInfo.hash);
     }
 
     @Override
     public int hashCode(){
-        return Objects.hash(path, hash, size, lastModified);
+        return Objects.hash(path, hash, size, lastModifiedMillis);
     }
 
     @Override
@@ -95,6 +194,6 @@ public class FileInfo {
                   Hash: %s
                   Last modified: %s
                   Indexed at: %s
-                """, path, size, hash, lastModified, indexedAt);
+                """, path, size, hash, getLastModified(), getIndexedAt());
     }
 }
@@ -0,0 +1,223 @@
+package ua.pro.baynova.duplicatefinder.report;
+
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.util.Json;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Потоковая запись отчета о дубликатах в JSON Lines или CSV.
+ * Группы пишутся по одной прямо во время обхода индекса, без общего списка групп.
+ *
+ * JSON Lines - одна группа на строку:
+ * {@code {"group":1,"hash":"...","size":10,"count":2,"wastedBytes":10,"files":[...]}}
+ * CSV - одна строка на файл: {@code group,hash,size,count,wasted_bytes,path,last_modified}
+ */
+public class DuplicateReportWriter implements Closeable {
+
+    public enum Format { JSON_LINES, CSV }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Writer out;
+    private final Format format;
+
+    private int groupsWritten = 0;
+    private int filesWritten = 0;
+    private long wastedBytes = 0;
+
+    /**
+     * @param outputStream куда писать (закрывается вместе с writer)
+     * @param format формат отчета
+     */
+    public DuplicateReportWriter(OutputStream outputStream, Format format) throws IOException {
+        if (outputStream == null || format == null) {
+            throw new IllegalArgumentException("Поток и формат не могут быть null");
+        }
+
+        this.out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.format = format;
+
+        if (format == Format.CSV) {
+            out.write("group,hash,size,count,wasted_bytes,path,last_modified\n");
+        }
+    }
+
+    /**
+     * Пишет отчет по индексу в файл
+     * @param sortByWastedBytes сначала группы, занимающие больше всего лишнего места.
+     *                          Для сортировки запоминаются только хеши и объемы групп,
+     *                          сами группы строятся по одной при записи.
+     * @return writer с итогами (уже закрыт)
+     */
+    public static DuplicateReportWriter writeReport(SimpleFileIndex index, Path file, Format format,
+                                                    boolean sortByWastedBytes) throws IOException {
+        try (DuplicateReportWriter writer = new DuplicateReportWriter(Files.newOutputStream(file), format)) {
+            writer.writeIndex(index, sortByWastedBytes);
+            System.out.printf("Отчет записан: %s (%d групп, %d файлов)%n",
+                    file.toAbsolutePath(), writer.getGroupsWritten(), writer.getFilesWritten());
+            return writer;
+        }
+    }
+
+    /**
+     * Пишет все группы дубликатов индекса
+     * @param sortByWastedBytes упорядочить группы по убыванию лишнего объема
+     */
+    public void writeIndex(SimpleFileIndex index, boolean sortByWastedBytes) throws IOException {
+        if (!sortByWastedBytes) {
+            try {
+                index.forEachDuplicateGroup(group -> {
+                    try {
+                        writeGroup(group, index.keyOf(group.get(0)));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return;
+        }
+
+        GroupOrder order = new GroupOrder();
+        index.forEachDuplicateHash(order::add);
+
+        for (int i : order.sortedIndexes()) {
+            List<FileInfo> group = index.findByHash(order.hashes.get(i));
+            // группа могла измениться между проходами
+            if (group.size() > 1) {
+                writeGroup(group, order.hashes.get(i));
+            }
+        }
+    }
+
+    /**
+     * Пишет одну группу одинаковых файлов
+     */
+    public void writeGroup(List<FileInfo> group) throws IOException {
+        if (group == null || group.size() < 2) {
+            return;
+        }
+        writeGroup(group, group.get(0).getHash());
+    }
+
+    /**
+     * Пишет одну группу одинаковых файлов
+     * @param hash ключ группы - для индекса {@link SimpleFileIndex#keyOf}, а не основной хеш файла
+     */
+    public void writeGroup(List<FileInfo> group, String hash) throws IOException {
+        if (group == null || group.size() < 2) {
+            return;
+        }
+
+        FileInfo first = group.get(0);
+        long groupWasted = first.getSize() * (group.size() - 1);
+        int groupNumber = groupsWritten + 1;
+
+        if (format == Format.JSON_LINES) {
+            StringBuilder line = new StringBuilder(128 + group.size() * 128);
+            line.append("{\"group\":").append(groupNumber);
+            line.append(",\"hash\":");
+            Json.appendString(line, hash);
+            line.append(",\"size\":").append(first.getSize());
+            line.append(",\"count\":").append(group.size());
+            line.append(",\"wastedBytes\":").append(groupWasted);
+            line.append(",\"files\":");
+            Json.appendFileInfos(line, group);
+            line.append("}\n");
+            out.write(line.toString());
+        } else {
+            for (FileInfo fileInfo : group) {
+                out.write(String.valueOf(groupNumber));
+                out.write(',');
+                out.write(hash);
+                out.write(',');
+                out.write(String.valueOf(fileInfo.getSize()));
+                out.write(',');
+                out.write(String.valueOf(group.size()));
+                out.write(',');
+                out.write(String.valueOf(groupWasted));
+                out.write(',');
+                writeCsvField(fileInfo.getPath());
+                out.write(',');
+                out.write(fileInfo.getLastModified() != null ? fileInfo.getLastModified().toString() : "");
+                out.write('\n');
+            }
+        }
+
+        groupsWritten++;
+        filesWritten += group.size();
+        wastedBytes += groupWasted;
+    }
+
+    private void writeCsvField(String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    public int getGroupsWritten() {
+        return groupsWritten;
+    }
+
+    public int getFilesWritten() {
+        return filesWritten;
+    }
+
+    public long getWastedBytes() {
+        return wastedBytes;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Хеши и объемы групп в параллельных массивах - для сортировки без построения групп
+     */
+    private static class GroupOrder {
+        private final List<String> hashes = new ArrayList<>();
+        private long[] wasted = new long[1024];
+
+        void add(String hash, int fileCount, long wastedBytes) {
+            if (hashes.size() == wasted.length) {
+                wasted = Arrays.copyOf(wasted, wasted.length * 2);
+            }
+            wasted[hashes.size()] = wastedBytes;
+            hashes.add(hash);
+        }
+
+        int[] sortedIndexes() {
+            Integer[] order = new Integer[hashes.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> {
+                int byWasted = Long.compare(wasted[b], wasted[a]);
+                return byWasted != 0 ? byWasted : hashes.get(a).compareTo(hashes.get(b));
+            });
+
+            int[] result = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                result[i] = order[i];
+            }
+            return result;
+        }
+    }
+}
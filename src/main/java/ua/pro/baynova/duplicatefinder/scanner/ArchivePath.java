@@ -0,0 +1,91 @@
+package ua.pro.baynova.duplicatefinder.scanner;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Виртуальные пути к записям внутри zip-архивов вида {@code archive.zip!/inner/path}.
+ * "!/" может встретиться и в обычном пути ({@code /data/wow!/a.txt}), поэтому
+ * записью архива путь считается, только если часть до "!/" - существующий архив.
+ */
+public final class ArchivePath {
+
+    public static final String SEPARATOR = "!/";
+
+    private static final Set<String> ARCHIVE_EXTENSIONS = Set.of(".zip", ".jar", ".war", ".ear");
+
+    private ArchivePath() {
+    }
+
+    /**
+     * Проверяет является ли файл архивом zip-формата (по расширению)
+     */
+    public static boolean isArchive(String fileName) {
+        String lower = fileName.toLowerCase();
+        int dot = lower.lastIndexOf('.');
+        return dot >= 0 && ARCHIVE_EXTENSIONS.contains(lower.substring(dot));
+    }
+
+    /**
+     * Проверяет указывает ли путь на запись внутри архива (часть до "!/" - архив на диске)
+     */
+    public static boolean isArchiveEntry(String path) {
+        if (path == null) {
+            return false;
+        }
+        int index = separatorIndex(path);
+        return index >= 0 && new File(path.substring(0, index)).isFile();
+    }
+
+    /**
+     * Строит виртуальный путь записи
+     * @param archivePath путь к архиву на диске
+     * @param entryName имя записи внутри архива
+     */
+    public static String of(String archivePath, String entryName) {
+        return archivePath + SEPARATOR + entryName;
+    }
+
+    /**
+     * Путь к самому архиву на диске
+     */
+    public static String archivePart(String virtualPath) {
+        int index = separatorIndex(virtualPath);
+        if (index < 0) {
+            throw new IllegalArgumentException("Путь не указывает на запись архива: " + virtualPath);
+        }
+        return virtualPath.substring(0, index);
+    }
+
+    /**
+     * Имя записи внутри архива
+     */
+    public static String entryPart(String virtualPath) {
+        int index = separatorIndex(virtualPath);
+        if (index < 0) {
+            throw new IllegalArgumentException("Путь не указывает на запись архива: " + virtualPath);
+        }
+        return virtualPath.substring(index + SEPARATOR.length());
+    }
+
+    /**
+     * Позиция "!/", отделяющего архив: первая, перед которой стоит существующий архив,
+     * иначе первая, перед которой стоит имя с расширением архива (архив мог быть удален)
+     * @return позиция или -1
+     */
+    private static int separatorIndex(String path) {
+        int byExtension = -1;
+        for (int index = path.indexOf(SEPARATOR); index >= 0; index = path.indexOf(SEPARATOR, index + 1)) {
+            String prefix = path.substring(0, index);
+            if (isArchive(prefix)) {
+                if (new File(prefix).isFile()) {
+                    return index;
+                }
+                if (byExtension < 0) {
+                    byExtension = index;
+                }
+            }
+        }
+        return byExtension;
+    }
+}
@@ -0,0 +1,110 @@
+package ua.pro.baynova.duplicatefinder.scanner;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Таблица путей на диске - для деревьев, пути которых не помещаются даже в {@link PathTable}.
+ * Пути дописываются подряд в файл данных (длина + байты UTF-8), а смещение каждого
+ * пути - в файл смещений по 8 байт на номер. В куче остаются только буферы записи,
+ * поэтому память не зависит от количества путей.
+ *
+ * Пути добавляются последовательно, чтение по номеру - после добавления
+ * (первый {@link #get(int)} сбрасывает буферы записи). Методы синхронизированы.
+ */
+public class DiskPathTable implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path dataFile;
+    private final Path offsetsFile;
+    private final DataOutputStream dataOut;
+    private final DataOutputStream offsetsOut;
+
+    private RandomAccessFile dataReader;
+    private RandomAccessFile offsetsReader;
+    private long dataSize = 0;
+    private int count = 0;
+
+    /**
+     * @param workDirectory директория для файлов таблицы (удаляются при закрытии)
+     */
+    public DiskPathTable(Path workDirectory) throws IOException {
+        if (workDirectory == null) {
+            throw new IllegalArgumentException("Директория не может быть null");
+        }
+
+        this.dataFile = Files.createTempFile(workDirectory, "paths", ".dat");
+        this.offsetsFile = Files.createTempFile(workDirectory, "paths", ".idx");
+        this.dataOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dataFile), BUFFER_SIZE));
+        this.offsetsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(offsetsFile), BUFFER_SIZE));
+    }
+
+    /**
+     * Добавляет путь и возвращает его номер
+     */
+    public synchronized int add(String path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("Путь не может быть null");
+        }
+        if (dataReader != null) {
+            throw new IllegalStateException("Таблица уже читается - добавлять пути нельзя");
+        }
+        if (count == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Таблица путей переполнена: " + count + " путей");
+        }
+
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        offsetsOut.writeLong(dataSize);
+        dataOut.writeInt(bytes.length);
+        dataOut.write(bytes);
+        dataSize += 4 + bytes.length;
+        return count++;
+    }
+
+    /**
+     * Возвращает путь по номеру (два позиционированных чтения)
+     */
+    public synchronized String get(int id) throws IOException {
+        if (id < 0 || id >= count) {
+            throw new IndexOutOfBoundsException("Нет пути с номером " + id);
+        }
+
+        if (dataReader == null) {
+            dataOut.flush();
+            offsetsOut.flush();
+            dataReader = new RandomAccessFile(dataFile.toFile(), "r");
+            offsetsReader = new RandomAccessFile(offsetsFile.toFile(), "r");
+        }
+
+        offsetsReader.seek(8L * id);
+        dataReader.seek(offsetsReader.readLong());
+        byte[] bytes = new byte[dataReader.readInt()];
+        dataReader.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Закрывает файлы таблицы и удаляет их
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            dataOut.close();
+            offsetsOut.close();
+            if (dataReader != null) {
+                dataReader.close();
+                offsetsReader.close();
+            }
+        } finally {
+            Files.deleteIfExists(dataFile);
+            Files.deleteIfExists(offsetsFile);
+        }
+    }
+}
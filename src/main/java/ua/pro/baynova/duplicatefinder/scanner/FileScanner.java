@@ -1,19 +1,33 @@
 package ua.pro.baynova.duplicatefinder.scanner;
 
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class FileScanner {
 
+    private static final int STREAM_BUFFER_SIZE = 1024;
+
     private final Predicate<Path> fileFilter;
+    private final ScanFilter scanFilter;
     private final boolean followSymlinks;
     private final int maxDepth;
+    private final boolean scanArchives;
 
     /**
      * Создает сканер с настройками по умолчанию
@@ -29,9 +43,37 @@ public class FileScanner {
      * @param maxDepth максимальная глубина обхода
      */
     public FileScanner(Predicate<Path> fileFilter, boolean followSymlinks, int maxDepth) {
-        this.fileFilter = fileFilter != null ? fileFilter : (path -> true);
+        this(fileFilter, followSymlinks, maxDepth, false);
+    }
+
+    /**
+     * Создает сканер с настройками
+     * @param fileFilter фильтр файлов (какие файлы включать)
+     * @param followSymlinks следовать ли символьным ссылкам
+     * @param maxDepth максимальная глубина обхода
+     * @param scanArchives добавлять ли записи zip/jar архивов как отдельные файлы
+     *                     с виртуальными путями {@code archive.zip!/inner/path}
+     */
+    public FileScanner(Predicate<Path> fileFilter, boolean followSymlinks, int maxDepth, boolean scanArchives) {
+        this(ScanFilter.acceptAll(), fileFilter, followSymlinks, maxDepth, scanArchives);
+    }
+
+    /**
+     * Создает сканер с фильтром по атрибутам
+     * @param scanFilter фильтр файлов и правила отсечения директорий
+     * @param fileFilter дополнительный предикат по пути (может быть null),
+     *                   проверяется только для файлов, прошедших scanFilter
+     * @param followSymlinks следовать ли символьным ссылкам
+     * @param maxDepth максимальная глубина обхода
+     * @param scanArchives добавлять ли записи zip/jar архивов как отдельные файлы
+     */
+    public FileScanner(ScanFilter scanFilter, Predicate<Path> fileFilter, boolean followSymlinks,
+                       int maxDepth, boolean scanArchives) {
+        this.scanFilter = scanFilter != null ? scanFilter : ScanFilter.acceptAll();
+        this.fileFilter = fileFilter;
         this.followSymlinks = followSymlinks;
         this.maxDepth = maxDepth;
+        this.scanArchives = scanArchives;
     }
 
     /**
@@ -40,6 +82,129 @@ public class FileScanner {
      * @return список файлов для обработки
      */
     public List<FileTask> scanDirectory(String directoryPath) throws IOException {
+        List<FileTask> fileTasks = new ArrayList<>();
+        scanDirectory(directoryPath, fileTasks::add);
+        return fileTasks;
+    }
+
+    /**
+     * Сканирует директорию, передавая каждый найденный файл получателю сразу во время обхода.
+     * Список всех файлов не накапливается.
+     * @param directoryPath путь к директории
+     * @param sink получатель задач (вызывается в потоке обхода)
+     * @return количество переданных задач
+     */
+    public int scanDirectory(String directoryPath, Consumer<FileTask> sink) throws IOException {
+        return scanDirectory(directoryPath, sink, () -> false);
+    }
+
+    /**
+     * Сканирует директорию с возможностью досрочной остановки
+     * @param directoryPath путь к директории
+     * @param sink получатель задач (вызывается в потоке обхода)
+     * @param stopRequested проверяется перед каждым файлом и директорией; true - обход прекращается
+     * @return количество переданных задач
+     */
+    public int scanDirectory(String directoryPath, Consumer<FileTask> sink, BooleanSupplier stopRequested)
+            throws IOException {
+        Path startPath = resolveStartPath(directoryPath);
+        int[] found = {0};
+
+        System.out.println("Сканируем директорию: " + startPath.toAbsolutePath());
+
+        try {
+            Files.walkFileTree(startPath, getVisitOptions(), maxDepth, new FileVisitor(startPath, task -> {
+                found[0]++;
+                sink.accept(task);
+            }, stopRequested));
+        } catch (IOException e) {
+            throw new IOException("Ошибка при сканировании директории: " + e.getMessage(), e);
+        }
+
+        System.out.println("Сканирование завершено. Найдено файлов: " + found[0]);
+        return found[0];
+    }
+
+    /**
+     * Ленивый обход: задачи выдаются по мере обхода дерева фоновым потоком.
+     * Между обходом и потребителем - ограниченный буфер, поэтому память не зависит
+     * от размера дерева, а медленный потребитель притормаживает обход.
+     * Закрытие потока (close/try-with-resources) останавливает обход досрочно.
+     * Ошибка обхода выбрасывается потребителю как UncheckedIOException.
+     * @param directoryPath путь к директории
+     * @return поток задач, который нужно закрыть
+     */
+    public Stream<FileTask> streamDirectory(String directoryPath) throws IOException {
+        Path startPath = resolveStartPath(directoryPath);
+        StreamingSink streamingSink = new StreamingSink(STREAM_BUFFER_SIZE);
+
+        System.out.println("Потоковое сканирование директории: " + startPath.toAbsolutePath());
+
+        Thread walker = new Thread(() -> {
+            try {
+                Files.walkFileTree(startPath, getVisitOptions(), maxDepth,
+                        new FileVisitor(startPath, streamingSink, streamingSink::isClosed));
+            } catch (IOException e) {
+                streamingSink.fail(new IOException("Ошибка при сканировании директории: " + e.getMessage(), e));
+            } catch (RuntimeException e) {
+                streamingSink.fail(e);
+            } finally {
+                streamingSink.finish();
+            }
+        }, "file-scanner-walker");
+        walker.setDaemon(true);
+        walker.start();
+
+        Spliterator<FileTask> spliterator = Spliterators.spliteratorUnknownSize(streamingSink,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(streamingSink::close);
+    }
+
+    /**
+     * Сканирует директорию в компактные пакеты: пути складываются в общую таблицу,
+     * а размеры, времена и номера путей - в примитивные массивы пакета.
+     * Объекты FileTask и LocalDateTime на каждый файл не создаются.
+     * @param directoryPath путь к директории
+     * @param paths таблица путей, куда добавляются найденные файлы
+     * @param batchSize сколько файлов в одном пакете
+     * @param sink получатель заполненных пакетов (последний может быть неполным)
+     * @return количество найденных файлов
+     */
+    public int scanBatches(String directoryPath, PathTable paths, int batchSize, Consumer<ScanBatch> sink)
+            throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным");
+        }
+
+        Path startPath = resolveStartPath(directoryPath);
+        ScanBatch[] current = {new ScanBatch(paths, batchSize)};
+        int[] found = {0};
+
+        System.out.println("Пакетное сканирование директории: " + startPath.toAbsolutePath());
+
+        try {
+            Files.walkFileTree(startPath, getVisitOptions(), maxDepth, new FileVisitor(startPath,
+                    (path, size, lastModifiedMillis) -> {
+                        current[0].add(paths.add(path), size, lastModifiedMillis);
+                        found[0]++;
+                        if (current[0].isFull()) {
+                            sink.accept(current[0]);
+                            current[0] = new ScanBatch(paths, batchSize);
+                        }
+                    }, () -> false));
+        } catch (IOException e) {
+            throw new IOException("Ошибка при сканировании директории: " + e.getMessage(), e);
+        }
+
+        if (current[0].size() > 0) {
+            sink.accept(current[0]);
+        }
+
+        System.out.println("Сканирование завершено. Найдено файлов: " + found[0]);
+        return found[0];
+    }
+
+    private Path resolveStartPath(String directoryPath) throws IOException {
         if (directoryPath == null || directoryPath.trim().isEmpty()) {
             throw new IllegalArgumentException("Путь к директории не может быть пустым");
         }
@@ -54,18 +219,74 @@ public class FileScanner {
             throw new IOException("Указанный путь не является директорией: " + directoryPath);
         }
 
-        List<FileTask> fileTasks = new ArrayList<>();
+        return startPath;
+    }
 
-        System.out.println("Сканируем директорию: " + startPath.toAbsolutePath());
+    /**
+     * Создает задачу для одного файла с теми же фильтрами, что и при обходе директории
+     * @param file путь к файлу
+     * @return задача или null если файл не проходит фильтр или не является обычным файлом
+     */
+    public FileTask scanFile(Path file) throws IOException {
+        BasicFileAttributes attrs = followSymlinks
+                ? Files.readAttributes(file, BasicFileAttributes.class)
+                : Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
 
-        try {
-            Files.walkFileTree(startPath, getVisitOptions(), maxDepth, new FileVisitor(fileTasks));
-        } catch (IOException e) {
-            throw new IOException("Ошибка при сканировании директории: " + e.getMessage(), e);
+        if (!attrs.isRegularFile() || !accepts(file, attrs)) {
+            return null;
         }
 
-        System.out.println("Сканирование завершено. Найдено файлов: " + fileTasks.size());
-        return fileTasks;
+        return new FileTask(file.toAbsolutePath().toString(), attrs.size(), attrs.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * То же, что {@link #scanFile(Path)}, но с учетом отсечения директорий: файл внутри
+     * отсеченной директории (между root и файлом) не принимается, как и при обходе root
+     * @param root корень обхода - сам он не отсекается
+     */
+    public FileTask scanFile(Path root, Path file) throws IOException {
+        if (isInPrunedDirectory(root, file)) {
+            return null;
+        }
+        return scanFile(file);
+    }
+
+    /**
+     * Проверяет правило отсечения для одной директории
+     */
+    public boolean prunesDirectory(Path directory, BasicFileAttributes attrs) {
+        return scanFilter.prunesDirectory(directory, attrs);
+    }
+
+    /**
+     * Лежит ли путь внутри отсеченной директории. Проверяются директории строго между
+     * root и path - сам root не отсекается, как и при обходе
+     */
+    public boolean isInPrunedDirectory(Path root, Path path) {
+        Path absoluteRoot = root.toAbsolutePath();
+        Path parent = path.toAbsolutePath().getParent();
+
+        while (parent != null && parent.startsWith(absoluteRoot) && !parent.equals(absoluteRoot)) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(parent, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (scanFilter.prunesDirectory(parent, attrs)) {
+                    return true;
+                }
+            } catch (IOException e) {
+                // директория уже исчезла - файл все равно не прочитается
+                return false;
+            }
+            parent = parent.getParent();
+        }
+        return false;
+    }
+
+    /**
+     * Сначала дешевые проверки по атрибутам, затем пользовательский предикат
+     */
+    private boolean accepts(Path file, BasicFileAttributes attrs) {
+        return scanFilter.acceptsFile(file, attrs) && (fileFilter == null || fileFilter.test(file));
     }
 
     /**
@@ -78,20 +299,42 @@ public class FileScanner {
         return java.util.Set.of();
     }
 
+    /**
+     * Получатель найденного файла в виде примитивных полей
+     */
+    @FunctionalInterface
+    private interface TaskSink {
+        void accept(String path, long size, long lastModifiedMillis);
+    }
+
     /**
      * Visitor для обхода файлового дерева
      */
     private class FileVisitor extends SimpleFileVisitor<Path> {
-        private final List<FileTask> fileTasks;
+        private final Path startPath;
+        private final TaskSink fileTasks;
+        private final BooleanSupplier stopRequested;
         private int visitedFiles = 0;
         private int skippedFiles = 0;
+        private int prunedDirectories = 0;
+
+        public FileVisitor(Path startPath, Consumer<FileTask> fileTasks, BooleanSupplier stopRequested) {
+            this(startPath, (path, size, lastModifiedMillis) ->
+                    fileTasks.accept(new FileTask(path, size, lastModifiedMillis)), stopRequested);
+        }
 
-        public FileVisitor(List<FileTask> fileTasks) {
+        public FileVisitor(Path startPath, TaskSink fileTasks, BooleanSupplier stopRequested) {
+            this.startPath = startPath;
             this.fileTasks = fileTasks;
+            this.stopRequested = stopRequested;
         }
 
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            if (stopRequested.getAsBoolean()) {
+                return FileVisitResult.TERMINATE;
+            }
+
             visitedFiles++;
 
             if (visitedFiles % 1000 == 0) {
@@ -102,24 +345,20 @@ public class FileScanner {
                 return FileVisitResult.CONTINUE;
             }
 
-            if (!fileFilter.test(file)) {
+            if (!accepts(file, attrs)) {
                 skippedFiles++;
                 return FileVisitResult.CONTINUE;
             }
 
             try {
-                LocalDateTime lastModified = LocalDateTime.ofInstant(
-                        attrs.lastModifiedTime().toInstant(),
-                        ZoneId.systemDefault()
-                );
+                String path = file.toAbsolutePath().toString();
+                long lastModifiedMillis = attrs.lastModifiedTime().toMillis();
 
-                FileTask task = new FileTask(
-                        file.toAbsolutePath().toString(),
-                        attrs.size(),
-                        lastModified
-                );
+                fileTasks.accept(path, attrs.size(), lastModifiedMillis);
 
-                fileTasks.add(task);
+                if (scanArchives && ArchivePath.isArchive(file.getFileName().toString())) {
+                    addArchiveEntries(path, lastModifiedMillis);
+                }
 
             } catch (Exception e) {
                 System.err.println("Ошибка обработки файла " + file + ": " + e.getMessage());
@@ -128,6 +367,33 @@ public class FileScanner {
             return FileVisitResult.CONTINUE;
         }
 
+        /**
+         * Добавляет записи архива как отдельные задачи. Читается только
+         * центральный каталог архива, содержимое записей не распаковывается.
+         */
+        private void addArchiveEntries(String archivePath, long archiveModifiedMillis) {
+            try (ZipFile zipFile = new ZipFile(archivePath)) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+
+                    if (entry.isDirectory() || entry.getSize() <= 0) {
+                        continue;
+                    }
+
+                    long entryModified = entry.getLastModifiedTime() != null
+                            ? entry.getLastModifiedTime().toMillis()
+                            : archiveModifiedMillis;
+
+                    fileTasks.accept(ArchivePath.of(archivePath, entry.getName()), entry.getSize(), entryModified);
+                }
+
+            } catch (IOException e) {
+                System.err.println("Не удалось прочитать архив " + archivePath + ": " + e.getMessage());
+            }
+        }
+
         @Override
         public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
             System.err.println("Не удалось обработать файл: " + file + " - " + exc.getMessage());
@@ -136,6 +402,14 @@ public class FileScanner {
 
         @Override
         public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            if (stopRequested.getAsBoolean()) {
+                return FileVisitResult.TERMINATE;
+            }
+            // корень обхода не отсекается, даже если подходит под правило
+            if (!dir.equals(startPath) && scanFilter.prunesDirectory(dir, attrs)) {
+                prunedDirectories++;
+                return FileVisitResult.SKIP_SUBTREE;
+            }
             return FileVisitResult.CONTINUE;
         }
 
@@ -148,6 +422,95 @@ public class FileScanner {
         }
     }
 
+    /**
+     * Буфер между потоком обхода и потребителем ленивого потока задач
+     */
+    private static class StreamingSink implements Consumer<FileTask>, Iterator<FileTask> {
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> queue;
+        private volatile boolean closed = false;
+        private volatile RuntimeException failure;
+        private Object next;
+
+        StreamingSink(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void accept(FileTask task) {
+            offer(task);
+        }
+
+        void finish() {
+            offer(END);
+        }
+
+        void fail(IOException e) {
+            failure = new UncheckedIOException(e);
+        }
+
+        void fail(RuntimeException e) {
+            failure = e;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        void close() {
+            closed = true;
+            queue.clear();
+        }
+
+        private void offer(Object item) {
+            try {
+                while (!closed) {
+                    if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                if (closed) {
+                    return false;
+                }
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    return false;
+                }
+            }
+
+            if (next == END) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public FileTask next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FileTask task = (FileTask) next;
+            next = null;
+            return task;
+        }
+    }
+
     /**
      * Информация о файле для обработки
      * Простая структура данных без логики
@@ -155,12 +518,19 @@ public class FileScanner {
     public static class FileTask {
         private final String path;
         private final long size;
-        private final LocalDateTime lastModified;
+        private final long lastModifiedMillis;
 
         public FileTask(String path, long size, LocalDateTime lastModified) {
+            this(path, size, FileInfo.toEpochMillis(lastModified));
+        }
+
+        /**
+         * @param lastModifiedMillis время изменения в миллисекундах эпохи (или FileInfo.NO_TIME)
+         */
+        public FileTask(String path, long size, long lastModifiedMillis) {
             this.path = path;
             this.size = size;
-            this.lastModified = lastModified;
+            this.lastModifiedMillis = lastModifiedMillis;
         }
 
         public String getPath() {
@@ -172,7 +542,11 @@ public class FileScanner {
         }
 
         public LocalDateTime getLastModified() {
-            return lastModified;
+            return FileInfo.fromEpochMillis(lastModifiedMillis);
+        }
+
+        public long getLastModifiedMillis() {
+            return lastModifiedMillis;
         }
 
         @Override
@@ -201,7 +575,9 @@ public class FileScanner {
         }
 
         /**
-         * Фильтр по минимальному размеру файла
+         * Фильтр по минимальному размеру файла.
+         * Делает отдельный системный вызов на каждый файл - при обходе дешевле
+         * {@link ScanFilter.Builder#minSize(long)}, который берет размер из уже прочитанных атрибутов.
          */
         public static Predicate<Path> minSize(long minBytes) {
             return path -> {
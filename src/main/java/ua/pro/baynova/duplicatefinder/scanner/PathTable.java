@@ -0,0 +1,80 @@
+package ua.pro.baynova.duplicatefinder.scanner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Таблица путей: каждый путь получает номер, а сами пути лежат подряд
+ * в одном массиве байтов UTF-8. Вместо объекта String (заголовок, массив, поля)
+ * на каждый файл - только байты пути и одно смещение.
+ *
+ * Таблица только растет. Методы синхронизированы: обход добавляет пути,
+ * потоки хеширования читают их одновременно.
+ */
+public class PathTable {
+
+    private byte[] data;
+    private int[] offsets;
+    private int count = 0;
+
+    public PathTable() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedPaths ожидаемое количество путей (для начального размера)
+     */
+    public PathTable(int expectedPaths) {
+        int capacity = Math.max(16, expectedPaths);
+        this.offsets = new int[capacity + 1];
+        this.data = new byte[capacity * 64];
+    }
+
+    /**
+     * Добавляет путь и возвращает его номер
+     */
+    public synchronized int add(String path) {
+        if (path == null) {
+            throw new IllegalArgumentException("Путь не может быть null");
+        }
+
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        int start = offsets[count];
+
+        if (start + bytes.length > data.length) {
+            long grown = Math.max((long) data.length * 2, (long) start + bytes.length);
+            if (grown > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Таблица путей переполнена: " + count + " путей");
+            }
+            data = Arrays.copyOf(data, (int) grown);
+        }
+        if (count + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+
+        System.arraycopy(bytes, 0, data, start, bytes.length);
+        offsets[count + 1] = start + bytes.length;
+        return count++;
+    }
+
+    /**
+     * Возвращает путь по номеру
+     */
+    public synchronized String get(int id) {
+        if (id < 0 || id >= count) {
+            throw new IndexOutOfBoundsException("Нет пути с номером " + id);
+        }
+        return new String(data, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Сколько байт занимают массивы таблицы
+     */
+    public synchronized long getMemoryBytes() {
+        return data.length + 4L * offsets.length;
+    }
+}
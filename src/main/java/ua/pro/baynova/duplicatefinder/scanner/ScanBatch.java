@@ -0,0 +1,123 @@
+package ua.pro.baynova.duplicatefinder.scanner;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Пакет найденных файлов в виде параллельных примитивных массивов:
+ * номер пути в {@link PathTable}, размер и время изменения в миллисекундах эпохи.
+ * На файл уходит 20 байт вместо объекта FileTask с LocalDateTime.
+ * FileTask создается только по запросу, например для задачи хеширования.
+ */
+public class ScanBatch {
+
+    private final PathTable paths;
+    private final int[] pathIds;
+    private final long[] sizes;
+    private final long[] lastModifiedMillis;
+    private int count = 0;
+    private long totalBytes = 0;
+
+    public ScanBatch(PathTable paths, int capacity) {
+        if (paths == null) {
+            throw new IllegalArgumentException("Таблица путей не может быть null");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Емкость пакета должна быть положительной");
+        }
+
+        this.paths = paths;
+        this.pathIds = new int[capacity];
+        this.sizes = new long[capacity];
+        this.lastModifiedMillis = new long[capacity];
+    }
+
+    /**
+     * Добавляет файл в пакет
+     */
+    public void add(int pathId, long size, long modifiedMillis) {
+        if (isFull()) {
+            throw new IllegalStateException("Пакет заполнен: " + count + " файлов");
+        }
+
+        pathIds[count] = pathId;
+        sizes[count] = size;
+        lastModifiedMillis[count] = modifiedMillis;
+        totalBytes += size;
+        count++;
+    }
+
+    public boolean isFull() {
+        return count == pathIds.length;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return pathIds.length;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public PathTable getPaths() {
+        return paths;
+    }
+
+    public int getPathId(int i) {
+        checkIndex(i);
+        return pathIds[i];
+    }
+
+    public String getPath(int i) {
+        return paths.get(getPathId(i));
+    }
+
+    public long getSize(int i) {
+        checkIndex(i);
+        return sizes[i];
+    }
+
+    public long getLastModifiedMillis(int i) {
+        checkIndex(i);
+        return lastModifiedMillis[i];
+    }
+
+    /**
+     * Собирает FileTask для совместимости с существующим API
+     */
+    public FileScanner.FileTask toTask(int i) {
+        return new FileScanner.FileTask(getPath(i), getSize(i), getLastModifiedMillis(i));
+    }
+
+    /**
+     * Задачи пакета по одной - объекты создаются только по мере обхода
+     */
+    public Iterator<FileScanner.FileTask> taskIterator() {
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public FileScanner.FileTask next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return toTask(next++);
+            }
+        };
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Нет файла с номером " + i + " в пакете из " + count);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package ua.pro.baynova.duplicatefinder.scanner;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Фильтр обхода, работающий на уже прочитанных атрибутах файла - без лишних системных вызовов.
+ * Правила для директорий проверяются в preVisitDirectory, и отсеянное поддерево
+ * (node_modules, .git, снапшоты) не обходится вовсе.
+ *
+ * Все правила компилируются один раз в build(): расширения - в хеш-множество,
+ * glob и regex по имени - в одно регулярное выражение на каждую группу.
+ */
+public final class ScanFilter {
+
+    private static final ScanFilter ACCEPT_ALL = builder().build();
+
+    private final long minSize;
+    private final long maxSize;
+    private final long modifiedAfterMillis;
+    private final long modifiedBeforeMillis;
+    private final boolean excludeHiddenFiles;
+    private final Set<String> includeExtensions;
+    private final Set<String> excludeExtensions;
+    private final Pattern includeNames;
+    private final Pattern excludeNames;
+
+    private final boolean pruneHiddenDirectories;
+    private final Set<String> pruneDirectoryNames;
+    private final Pattern pruneDirectoryPattern;
+
+    private ScanFilter(Builder builder) {
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.modifiedAfterMillis = builder.modifiedAfterMillis;
+        this.modifiedBeforeMillis = builder.modifiedBeforeMillis;
+        this.excludeHiddenFiles = builder.excludeHiddenFiles;
+        this.includeExtensions = builder.includeExtensions.isEmpty() ? null : Set.copyOf(builder.includeExtensions);
+        this.excludeExtensions = builder.excludeExtensions.isEmpty() ? null : Set.copyOf(builder.excludeExtensions);
+        this.includeNames = combine(builder.includeNamePatterns);
+        this.excludeNames = combine(builder.excludeNamePatterns);
+        this.pruneHiddenDirectories = builder.pruneHiddenDirectories;
+        this.pruneDirectoryNames = builder.pruneDirectoryNames.isEmpty() ? null : Set.copyOf(builder.pruneDirectoryNames);
+        this.pruneDirectoryPattern = combine(builder.pruneDirectoryPatterns);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Фильтр, пропускающий все
+     */
+    public static ScanFilter acceptAll() {
+        return ACCEPT_ALL;
+    }
+
+    /**
+     * Фильтр индексатора по умолчанию: без скрытых и пустых файлов
+     */
+    public static ScanFilter defaults() {
+        return builder().excludeHiddenFiles().minSize(1).build();
+    }
+
+    /**
+     * Проверяет файл по атрибутам, полученным при обходе
+     */
+    public boolean acceptsFile(Path file, BasicFileAttributes attrs) {
+        long size = attrs.size();
+        if (size < minSize || size > maxSize) {
+            return false;
+        }
+
+        if (modifiedAfterMillis != Long.MIN_VALUE || modifiedBeforeMillis != Long.MAX_VALUE) {
+            long modified = attrs.lastModifiedTime().toMillis();
+            if (modified < modifiedAfterMillis || modified > modifiedBeforeMillis) {
+                return false;
+            }
+        }
+
+        Path namePath = file.getFileName();
+        if (namePath == null) {
+            return true;
+        }
+        String name = namePath.toString();
+
+        if (excludeHiddenFiles && name.startsWith(".")) {
+            return false;
+        }
+
+        if (includeExtensions != null || excludeExtensions != null) {
+            String extension = extensionOf(name);
+            if (includeExtensions != null && !includeExtensions.contains(extension)) {
+                return false;
+            }
+            if (excludeExtensions != null && excludeExtensions.contains(extension)) {
+                return false;
+            }
+        }
+
+        if (includeNames != null && !includeNames.matcher(name).matches()) {
+            return false;
+        }
+        return excludeNames == null || !excludeNames.matcher(name).matches();
+    }
+
+    /**
+     * Проверяет нужно ли пропустить поддерево директории целиком
+     */
+    public boolean prunesDirectory(Path directory, BasicFileAttributes attrs) {
+        Path namePath = directory.getFileName();
+        if (namePath == null) {
+            return false;
+        }
+        String name = namePath.toString();
+
+        if (pruneHiddenDirectories && name.startsWith(".")) {
+            return true;
+        }
+        if (pruneDirectoryNames != null && pruneDirectoryNames.contains(name)) {
+            return true;
+        }
+        return pruneDirectoryPattern != null && pruneDirectoryPattern.matcher(name).matches();
+    }
+
+    private static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+
+    private static Pattern combine(List<String> regexes) {
+        if (regexes.isEmpty()) {
+            return null;
+        }
+        StringJoiner joiner = new StringJoiner("|");
+        for (String regex : regexes) {
+            joiner.add("(?:" + regex + ")");
+        }
+        return Pattern.compile(joiner.toString());
+    }
+
+    /**
+     * Переводит glob (*, ?, [..], [!..], {a,b}) в регулярное выражение для имени файла.
+     * Внутри [..] символы берутся буквально, ведущий ! означает отрицание класса.
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inGroup = false;
+
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                case '[' -> i = appendBracket(glob, i, regex);
+                case ']' -> regex.append("\\]");
+                case '{' -> {
+                    regex.append("(?:");
+                    inGroup = true;
+                }
+                case '}' -> {
+                    regex.append(')');
+                    inGroup = false;
+                }
+                case ',' -> regex.append(inGroup ? "|" : ",");
+                case '\\' -> {
+                    if (i + 1 < glob.length()) {
+                        regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                    }
+                }
+                default -> {
+                    if ("().+^$|".indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+                }
+            }
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Переводит класс символов glob, начинающийся в позиции start, и возвращает позицию
+     * закрывающей скобки. Незакрытая [ считается обычным символом.
+     */
+    private static int appendBracket(String glob, int start, StringBuilder regex) {
+        int i = start + 1;
+        boolean negated = i < glob.length() && glob.charAt(i) == '!';
+        if (negated) {
+            i++;
+        }
+        // ] сразу после [ или [! - буквальный символ, а не конец класса
+        int end = glob.indexOf(']', i < glob.length() && glob.charAt(i) == ']' ? i + 1 : i);
+        if (end < 0) {
+            regex.append("\\[");
+            return start;
+        }
+
+        regex.append(negated ? "[^" : "[");
+        for (int j = i; j < end; j++) {
+            char c = glob.charAt(j);
+            if ("\\^[]&".indexOf(c) >= 0) {
+                regex.append('\\');
+            }
+            regex.append(c);
+        }
+        regex.append(']');
+        return end;
+    }
+
+    public static class Builder {
+        private long minSize = 0;
+        private long maxSize = Long.MAX_VALUE;
+        private long modifiedAfterMillis = Long.MIN_VALUE;
+        private long modifiedBeforeMillis = Long.MAX_VALUE;
+        private boolean excludeHiddenFiles = false;
+        private final Set<String> includeExtensions = new HashSet<>();
+        private final Set<String> excludeExtensions = new HashSet<>();
+        private final List<String> includeNamePatterns = new ArrayList<>();
+        private final List<String> excludeNamePatterns = new ArrayList<>();
+        private boolean pruneHiddenDirectories = false;
+        private final Set<String> pruneDirectoryNames = new HashSet<>();
+        private final List<String> pruneDirectoryPatterns = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        public Builder minSize(long bytes) {
+            this.minSize = bytes;
+            return this;
+        }
+
+        public Builder maxSize(long bytes) {
+            this.maxSize = bytes;
+            return this;
+        }
+
+        public Builder modifiedAfter(Instant instant) {
+            this.modifiedAfterMillis = instant.toEpochMilli();
+            return this;
+        }
+
+        public Builder modifiedBefore(Instant instant) {
+            this.modifiedBeforeMillis = instant.toEpochMilli();
+            return this;
+        }
+
+        public Builder excludeHiddenFiles() {
+            this.excludeHiddenFiles = true;
+            return this;
+        }
+
+        /**
+         * Только файлы с указанными расширениями (с точкой или без, регистр не важен)
+         */
+        public Builder includeExtensions(String... extensions) {
+            for (String extension : extensions) {
+                includeExtensions.add(normalizeExtension(extension));
+            }
+            return this;
+        }
+
+        public Builder excludeExtensions(String... extensions) {
+            for (String extension : extensions) {
+                excludeExtensions.add(normalizeExtension(extension));
+            }
+            return this;
+        }
+
+        /**
+         * Только файлы, имя которых подходит под один из glob-шаблонов
+         */
+        public Builder includeNameGlob(String... globs) {
+            for (String glob : globs) {
+                includeNamePatterns.add(globToRegex(glob));
+            }
+            return this;
+        }
+
+        public Builder excludeNameGlob(String... globs) {
+            for (String glob : globs) {
+                excludeNamePatterns.add(globToRegex(glob));
+            }
+            return this;
+        }
+
+        public Builder includeNameRegex(String regex) {
+            includeNamePatterns.add(regex);
+            return this;
+        }
+
+        public Builder excludeNameRegex(String regex) {
+            excludeNamePatterns.add(regex);
+            return this;
+        }
+
+        /**
+         * Не заходить в директории, имя которых начинается с точки
+         */
+        public Builder pruneHiddenDirectories() {
+            this.pruneHiddenDirectories = true;
+            return this;
+        }
+
+        /**
+         * Не заходить в директории с указанными именами (например node_modules, .git)
+         */
+        public Builder pruneDirectories(String... names) {
+            pruneDirectoryNames.addAll(Arrays.asList(names));
+            return this;
+        }
+
+        /**
+         * Не заходить в директории, имя которых подходит под glob (например .snapshot*)
+         */
+        public Builder pruneDirectoryGlob(String... globs) {
+            for (String glob : globs) {
+                pruneDirectoryPatterns.add(globToRegex(glob));
+            }
+            return this;
+        }
+
+        public ScanFilter build() {
+            if (minSize > maxSize) {
+                throw new IllegalArgumentException("Минимальный размер больше максимального");
+            }
+            return new ScanFilter(this);
+        }
+
+        private static String normalizeExtension(String extension) {
+            String normalized = extension.startsWith(".") ? extension.substring(1) : extension;
+            return normalized.toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package ua.pro.baynova.duplicatefinder.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ua.pro.baynova.duplicatefinder.index.IndexStorage;
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.util.Json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Локальный HTTP-сервер запросов к загруженному индексу.
+ * Слушает только loopback-интерфейс. Запросы обслуживаются пулом потоков
+ * и читают индекс параллельно (SimpleFileIndex использует read-write блокировку).
+ *
+ * GET /duplicates?path=...  - дубликаты конкретного файла
+ * GET /hash/{hash}          - есть ли такое содержимое и где оно лежит
+ * GET /stats                - статистика индекса
+ *
+ * Без TCP_NODELAY заголовки и тело уходят разными пакетами и каждый ответ ждет
+ * delayed ACK клиента (~40 мс). Встроенный HttpServer читает настройку
+ * {@code sun.net.httpserver.nodelay} один раз, при первой загрузке своей реализации,
+ * и она действует на всю JVM. Поэтому класс ее не меняет: при встраивании сервера
+ * задайте флаг запуска {@code -Dsun.net.httpserver.nodelay=true}. Отдельный запуск
+ * через {@link #main(String[])} включает его сам, если флаг не задан.
+ */
+public class IndexQueryServer implements AutoCloseable {
+
+    private static final int BACKLOG = 1024;
+
+    private final SimpleFileIndex fileIndex;
+    private final int port;
+    private final int numberOfThreads;
+
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    private volatile CachedStatistics cachedStatistics;
+
+    public IndexQueryServer(SimpleFileIndex fileIndex, int port) {
+        this(fileIndex, port, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param fileIndex индекс для запросов
+     * @param port порт (0 - выбрать свободный)
+     * @param numberOfThreads потоков обработки запросов
+     */
+    public IndexQueryServer(SimpleFileIndex fileIndex, int port, int numberOfThreads) {
+        if (fileIndex == null) {
+            throw new IllegalArgumentException("Индекс не может быть null");
+        }
+        if (numberOfThreads <= 0) {
+            throw new IllegalArgumentException("Количество потоков должно быть положительным");
+        }
+
+        this.fileIndex = fileIndex;
+        this.port = port;
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    public synchronized void start() throws IOException {
+        if (httpServer != null) {
+            throw new IllegalStateException("Сервер уже запущен");
+        }
+
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        executor = Executors.newFixedThreadPool(numberOfThreads);
+
+        httpServer.createContext("/duplicates", this::handleDuplicates);
+        httpServer.createContext("/hash/", this::handleHashLookup);
+        httpServer.createContext("/stats", this::handleStatistics);
+        httpServer.setExecutor(executor);
+        httpServer.start();
+
+        System.out.println("Сервер запросов запущен: http://127.0.0.1:" + getPort() +
+                " (потоков: " + numberOfThreads + ", файлов в индексе: " + fileIndex.size() + ")");
+    }
+
+    /**
+     * Фактический порт (полезно если сервер запущен с портом 0)
+     */
+    public int getPort() {
+        return httpServer != null ? httpServer.getAddress().getPort() : port;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (httpServer == null) {
+            return;
+        }
+
+        httpServer.stop(0);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        httpServer = null;
+        System.out.println("Сервер запросов остановлен");
+    }
+
+    private void handleDuplicates(HttpExchange exchange) throws IOException {
+        String path = queryParameter(exchange, "path");
+        if (path == null || path.isEmpty()) {
+            sendJson(exchange, 400, "{\"error\":\"Не указан параметр path\"}");
+            return;
+        }
+
+        List<FileInfo> duplicates = fileIndex.findDuplicatesOf(path);
+
+        StringBuilder sb = new StringBuilder(128 + duplicates.size() * 128);
+        sb.append("{\"path\":");
+        Json.appendString(sb, path);
+        sb.append(",\"indexed\":").append(fileIndex.contains(path));
+        sb.append(",\"duplicates\":");
+        Json.appendFileInfos(sb, duplicates);
+        sb.append('}');
+
+        sendJson(exchange, 200, sb.toString());
+    }
+
+    private void handleHashLookup(HttpExchange exchange) throws IOException {
+        String hash = exchange.getRequestURI().getPath().substring("/hash/".length());
+        if (hash.isEmpty()) {
+            sendJson(exchange, 400, "{\"error\":\"Не указан хеш\"}");
+            return;
+        }
+
+        List<FileInfo> files = fileIndex.findByHash(hash.toLowerCase());
+
+        StringBuilder sb = new StringBuilder(128 + files.size() * 128);
+        sb.append("{\"hash\":");
+        Json.appendString(sb, hash);
+        sb.append(",\"exists\":").append(!files.isEmpty());
+        sb.append(",\"files\":");
+        Json.appendFileInfos(sb, files);
+        sb.append('}');
+
+        sendJson(exchange, 200, sb.toString());
+    }
+
+    private void handleStatistics(HttpExchange exchange) throws IOException {
+        sendJson(exchange, 200, statisticsJson());
+    }
+
+    /**
+     * Статистика считается проходом по всему индексу, поэтому результат
+     * кешируется до следующего изменения индекса
+     */
+    private String statisticsJson() {
+        long modificationCount = fileIndex.getModificationCount();
+        CachedStatistics cached = cachedStatistics;
+
+        if (cached != null && cached.modificationCount == modificationCount) {
+            return cached.json;
+        }
+
+        SimpleFileIndex.IndexStatistics stats = fileIndex.getStatistics();
+        String json = "{\"totalFiles\":" + stats.getTotalFiles() +
+                ",\"totalSize\":" + stats.getTotalSize() +
+                ",\"duplicateGroups\":" + stats.getDuplicateGroups() +
+                ",\"duplicateFiles\":" + stats.getDuplicateFiles() +
+                ",\"duplicateSize\":" + stats.getDuplicateSize() + "}";
+
+        cachedStatistics = new CachedStatistics(modificationCount, json);
+        return json;
+    }
+
+    private String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            if (key.equals(name)) {
+                return eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            }
+        }
+        return null;
+    }
+
+    private void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static class CachedStatistics {
+        private final long modificationCount;
+        private final String json;
+
+        CachedStatistics(long modificationCount, String json) {
+            this.modificationCount = modificationCount;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Запуск: IndexQueryServer &lt;файл индекса&gt; [порт] [потоков]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Использование: IndexQueryServer <файл индекса> [порт] [потоков]");
+            System.exit(1);
+        }
+
+        // процесс принадлежит только серверу - настройку на всю JVM можно задать здесь;
+        // явный флаг запуска не переопределяется
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
+        SimpleFileIndex index = IndexStorage.load(Paths.get(args[0]));
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8765;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        IndexQueryServer server = new IndexQueryServer(index, port, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+    }
+}
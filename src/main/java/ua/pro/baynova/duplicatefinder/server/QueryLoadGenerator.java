@@ -0,0 +1,186 @@
+package ua.pro.baynova.duplicatefinder.server;
+
+import ua.pro.baynova.duplicatefinder.index.IndexStorage;
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Локальный генератор нагрузки для IndexQueryServer.
+ * Несколько клиентских потоков в цикле отправляют смесь запросов
+ * (поиск по хешу, дубликаты файла, статистика) и замеряют задержку каждого.
+ */
+public class QueryLoadGenerator {
+
+    private final String baseUrl;
+    private final List<String> requestPaths;
+    private final int numberOfClients;
+
+    /**
+     * @param port порт сервера на 127.0.0.1
+     * @param index индекс, который обслуживает сервер (по нему берется ключ /hash/)
+     * @param sampleFiles файлы, по которым строятся запросы
+     * @param numberOfClients количество параллельных клиентов
+     */
+    public QueryLoadGenerator(int port, SimpleFileIndex index, List<FileInfo> sampleFiles, int numberOfClients) {
+        if (index == null) {
+            throw new IllegalArgumentException("Индекс не может быть null");
+        }
+        if (sampleFiles == null || sampleFiles.isEmpty()) {
+            throw new IllegalArgumentException("Нужен хотя бы один файл для построения запросов");
+        }
+
+        this.baseUrl = "http://127.0.0.1:" + port;
+        this.numberOfClients = numberOfClients;
+        this.requestPaths = new ArrayList<>();
+
+        for (FileInfo file : sampleFiles) {
+            requestPaths.add("/hash/" + index.keyOf(file));
+            requestPaths.add("/duplicates?path=" + URLEncoder.encode(file.getPath(), StandardCharsets.UTF_8));
+        }
+        requestPaths.add("/stats");
+    }
+
+    /**
+     * Запускает нагрузку
+     * @param requestsPerClient сколько запросов отправит каждый клиент
+     * @return задержки и пропускная способность
+     */
+    public LoadReport run(int requestsPerClient) throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(numberOfClients);
+        List<Future<long[]>> futures = new ArrayList<>();
+        long startTime = System.nanoTime();
+
+        for (int client = 0; client < numberOfClients; client++) {
+            int offset = client;
+            futures.add(clients.submit(() -> runClient(offset, requestsPerClient)));
+        }
+
+        long[] latencies = new long[numberOfClients * requestsPerClient];
+        int count = 0;
+        int errors = 0;
+
+        try {
+            for (Future<long[]> future : futures) {
+                for (long latency : future.get()) {
+                    if (latency < 0) {
+                        errors++;
+                    } else {
+                        latencies[count++] = latency;
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Клиент нагрузки упал: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            clients.shutdownNow();
+        }
+
+        long totalNanos = System.nanoTime() - startTime;
+        return new LoadReport(Arrays.copyOf(latencies, count), errors, totalNanos);
+    }
+
+    private long[] runClient(int offset, int requests) {
+        long[] latencies = new long[requests];
+        byte[] buffer = new byte[8192];
+
+        for (int i = 0; i < requests; i++) {
+            String path = requestPaths.get((offset + i * numberOfClients) % requestPaths.size());
+            long start = System.nanoTime();
+
+            try {
+                HttpURLConnection connection = (HttpURLConnection) URI.create(baseUrl + path).toURL().openConnection();
+                try (InputStream in = connection.getInputStream()) {
+                    while (in.read(buffer) != -1) {
+                        // дочитываем ответ, чтобы соединение вернулось в keep-alive пул
+                    }
+                }
+                latencies[i] = connection.getResponseCode() == 200 ? System.nanoTime() - start : -1;
+            } catch (IOException e) {
+                latencies[i] = -1;
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * Результаты нагрузочного прогона
+     */
+    public static class LoadReport {
+        private final long[] sortedLatencies;
+        private final int errors;
+        private final long totalNanos;
+
+        public LoadReport(long[] latencies, int errors, long totalNanos) {
+            this.sortedLatencies = latencies.clone();
+            Arrays.sort(this.sortedLatencies);
+            this.errors = errors;
+            this.totalNanos = totalNanos;
+        }
+
+        public int getRequests() { return sortedLatencies.length; }
+        public int getErrors() { return errors; }
+
+        public double getThroughput() {
+            return totalNanos > 0 ? sortedLatencies.length * 1e9 / totalNanos : 0;
+        }
+
+        /**
+         * Перцентиль задержки в микросекундах
+         * @param percentile от 0 до 100
+         */
+        public double getPercentileMicros(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+            index = Math.max(0, Math.min(sortedLatencies.length - 1, index));
+            return sortedLatencies[index] / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Результаты нагрузки:\n" +
+                            "  Запросов: %d (ошибок: %d)\n" +
+                            "  Пропускная способность: %.0f запросов/сек\n" +
+                            "  p50: %.0f мкс\n" +
+                            "  p90: %.0f мкс\n" +
+                            "  p99: %.0f мкс\n" +
+                            "  max: %.0f мкс",
+                    getRequests(), errors, getThroughput(),
+                    getPercentileMicros(50), getPercentileMicros(90),
+                    getPercentileMicros(99), getPercentileMicros(100)
+            );
+        }
+    }
+
+    /**
+     * Запуск: QueryLoadGenerator &lt;файл индекса&gt; &lt;порт&gt; [клиентов] [запросов на клиента]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Использование: QueryLoadGenerator <файл индекса> <порт> [клиентов] [запросов]");
+            System.exit(1);
+        }
+
+        SimpleFileIndex index = IndexStorage.load(Paths.get(args[0]));
+        int port = Integer.parseInt(args[1]);
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+
+        QueryLoadGenerator generator = new QueryLoadGenerator(port, index, index.getAllFiles(), clients);
+        System.out.println(generator.run(requests));
+    }
+}
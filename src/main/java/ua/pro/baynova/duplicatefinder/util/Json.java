@@ -0,0 +1,71 @@
+package ua.pro.baynova.duplicatefinder.util;
+
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.util.List;
+
+/**
+ * Минимальная сборка JSON без внешних зависимостей
+ */
+public final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Добавляет строку в кавычках с экранированием спецсимволов
+     */
+    public static StringBuilder appendString(StringBuilder sb, String value) {
+        if (value == null) {
+            return sb.append("null");
+        }
+
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Добавляет объект с полями файла
+     */
+    public static StringBuilder appendFileInfo(StringBuilder sb, FileInfo fileInfo) {
+        sb.append("{\"path\":");
+        appendString(sb, fileInfo.getPath());
+        sb.append(",\"hash\":");
+        appendString(sb, fileInfo.getHash());
+        sb.append(",\"size\":").append(fileInfo.getSize());
+        sb.append(",\"lastModified\":");
+        appendString(sb, fileInfo.getLastModified() != null ? fileInfo.getLastModified().toString() : null);
+        return sb.append('}');
+    }
+
+    /**
+     * Добавляет массив файлов
+     */
+    public static StringBuilder appendFileInfos(StringBuilder sb, List<FileInfo> files) {
+        sb.append('[');
+        for (int i = 0; i < files.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendFileInfo(sb, files.get(i));
+        }
+        return sb.append(']');
+    }
+}
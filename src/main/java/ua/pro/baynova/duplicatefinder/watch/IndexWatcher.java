@@ -0,0 +1,339 @@
+package ua.pro.baynova.duplicatefinder.watch;
+
+import ua.pro.baynova.duplicatefinder.concurrent.MultiThreadHashCalculator;
+import ua.pro.baynova.duplicatefinder.index.IndexScope;
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Поддерживает индекс в актуальном состоянии без полной переиндексации.
+ * Следит за деревом через WatchService, собирает события в пачки с задержкой
+ * (debounce), перехеширует только затронутые файлы и применяет изменения к индексу.
+ * При OVERFLOW пересканируется только директория, в которой потерялись события.
+ */
+public class IndexWatcher implements AutoCloseable {
+
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+    private static final long DEFAULT_MAX_BATCH_DELAY_MILLIS = 5000;
+
+    private final SimpleFileIndex fileIndex;
+    private final FileScanner fileScanner;
+    private final MultiThreadHashCalculator hashCalculator;
+    private final long debounceMillis;
+    private final long maxBatchDelayMillis;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final Set<Path> pendingPaths = new LinkedHashSet<>();
+    private final Set<Path> pendingRescans = new LinkedHashSet<>();
+
+    private final AtomicInteger updatedFiles = new AtomicInteger(0);
+    private final AtomicInteger removedFiles = new AtomicInteger(0);
+    private final AtomicInteger overflowRescans = new AtomicInteger(0);
+
+    private Path root;
+    private WatchService watchService;
+    private Thread watcherThread;
+    private volatile boolean running = false;
+
+    public IndexWatcher(SimpleFileIndex fileIndex, FileScanner fileScanner,
+                        MultiThreadHashCalculator hashCalculator) {
+        this(fileIndex, fileScanner, hashCalculator, DEFAULT_DEBOUNCE_MILLIS, DEFAULT_MAX_BATCH_DELAY_MILLIS);
+    }
+
+    /**
+     * @param fileIndex индекс, который нужно поддерживать
+     * @param fileScanner сканер с теми же фильтрами, что использовались при индексации
+     * @param hashCalculator калькулятор для перехеширования измененных файлов
+     * @param debounceMillis пауза без событий, после которой пачка применяется
+     * @param maxBatchDelayMillis максимальное время накопления пачки при непрерывных событиях
+     */
+    public IndexWatcher(SimpleFileIndex fileIndex, FileScanner fileScanner,
+                        MultiThreadHashCalculator hashCalculator,
+                        long debounceMillis, long maxBatchDelayMillis) {
+        if (fileIndex == null || fileScanner == null || hashCalculator == null) {
+            throw new IllegalArgumentException("Индекс, сканер и калькулятор не могут быть null");
+        }
+
+        this.fileIndex = fileIndex;
+        this.fileScanner = fileScanner;
+        this.hashCalculator = hashCalculator;
+        this.debounceMillis = debounceMillis;
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+    }
+
+    /**
+     * Регистрирует дерево директорий и запускает фоновый поток наблюдения.
+     * Включает у индекса вторичные индексы ({@link SimpleFileIndex#enableSecondaryIndexes()}):
+     * удаления и OVERFLOW ищут записи поддерева, а без них это полный обход индекса.
+     * Вторичные индексы остаются включенными и после остановки - это дополнительная
+     * память и работа на каждую запись.
+     * @param directoryPath корень уже проиндексированного дерева
+     */
+    public synchronized void start(String directoryPath) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Наблюдение уже запущено");
+        }
+
+        Path root = Paths.get(directoryPath).toAbsolutePath();
+        if (!Files.isDirectory(root)) {
+            throw new IOException("Указанный путь не является директорией: " + directoryPath);
+        }
+        this.root = root;
+
+        fileIndex.enableSecondaryIndexes();
+
+        watchService = root.getFileSystem().newWatchService();
+        registerTree(root);
+
+        running = true;
+        watcherThread = new Thread(this::watchLoop, "index-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+
+        System.out.println("Наблюдение запущено: " + root + " (директорий: " + watchedDirectories.size() + ")");
+    }
+
+    /**
+     * Останавливает наблюдение. Накопленные, но не примененные события отбрасываются.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+
+        if (watchService != null) {
+            watchService.close();
+        }
+
+        if (watcherThread != null) {
+            try {
+                watcherThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        System.out.println("Наблюдение остановлено");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getUpdatedFiles() { return updatedFiles.get(); }
+    public int getRemovedFiles() { return removedFiles.get(); }
+    public int getOverflowRescans() { return overflowRescans.get(); }
+
+    private void watchLoop() {
+        long firstPendingAt = 0;
+
+        while (running) {
+            try {
+                WatchKey key = pendingPaths.isEmpty() && pendingRescans.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    if (pendingPaths.isEmpty() && pendingRescans.isEmpty()) {
+                        firstPendingAt = System.currentTimeMillis();
+                    }
+                    collectEvents(key);
+                }
+
+                boolean quiet = key == null;
+                boolean batchTooOld = System.currentTimeMillis() - firstPendingAt >= maxBatchDelayMillis;
+
+                if ((quiet || batchTooOld) && (!pendingPaths.isEmpty() || !pendingRescans.isEmpty())) {
+                    applyPendingChanges();
+                }
+
+            } catch (ClosedWatchServiceException e) {
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                System.err.println("Ошибка обработки изменений, пачка будет повторена: " + e.getMessage());
+            }
+        }
+
+        running = false;
+    }
+
+    private void collectEvents(WatchKey key) {
+        Path directory = watchedDirectories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null) {
+                continue;
+            }
+
+            if (event.kind() == OVERFLOW) {
+                pendingRescans.add(directory);
+                continue;
+            }
+
+            Path changed = directory.resolve((Path) event.context());
+            pendingPaths.add(changed);
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+    }
+
+    private void applyPendingChanges() throws InterruptedException {
+        List<FileScanner.FileTask> toHash = new ArrayList<>();
+        Set<String> toRemove = new LinkedHashSet<>();
+
+        for (Path directory : pendingRescans) {
+            overflowRescans.incrementAndGet();
+            System.out.println("Потеряны события (OVERFLOW), пересканируем: " + directory);
+            collectDirectoryChanges(directory, toHash, toRemove);
+        }
+
+        for (Path path : pendingPaths) {
+            if (pendingRescans.stream().anyMatch(path::startsWith)) {
+                continue;
+            }
+
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                collectDirectoryChanges(path, toHash, toRemove);
+            } else if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                collectFileChange(path, toHash, toRemove);
+            } else {
+                toRemove.addAll(indexedPathsUnder(path));
+            }
+        }
+
+        List<FileInfo> rehashed = hashCalculator.processFiles(toHash);
+
+        for (String path : toRemove) {
+            if (fileIndex.remove(path)) {
+                removedFiles.incrementAndGet();
+            }
+        }
+        for (FileInfo fileInfo : rehashed) {
+            fileIndex.addOrUpdate(fileInfo);
+            updatedFiles.incrementAndGet();
+        }
+
+        // очищаем только после применения: при ошибке пачка повторится на следующей паузе
+        pendingPaths.clear();
+        pendingRescans.clear();
+
+        System.out.printf("Применены изменения: обновлено %d, удалено %d%n", rehashed.size(), toRemove.size());
+    }
+
+    private void collectFileChange(Path file, List<FileScanner.FileTask> toHash, Set<String> toRemove) {
+        String path = file.toAbsolutePath().toString();
+
+        try {
+            FileScanner.FileTask task = fileScanner.scanFile(root, file);
+            if (task == null) {
+                toRemove.add(path);
+            } else if (isChanged(task)) {
+                toHash.add(task);
+            }
+        } catch (IOException e) {
+            toRemove.add(path);
+        }
+    }
+
+    /**
+     * Целевое пересканирование одной директории: новые и измененные файлы
+     * уходят на хеширование, исчезнувшие - на удаление из индекса
+     */
+    private void collectDirectoryChanges(Path directory, List<FileScanner.FileTask> toHash, Set<String> toRemove) {
+        try {
+            if (isPruned(directory)) {
+                toRemove.addAll(indexedPathsUnder(directory));
+                return;
+            }
+            registerTree(directory);
+
+            List<FileScanner.FileTask> tasks = fileScanner.scanDirectory(directory.toString());
+            Set<String> present = new HashSet<>();
+
+            for (FileScanner.FileTask task : tasks) {
+                present.add(task.getPath());
+                if (isChanged(task)) {
+                    toHash.add(task);
+                }
+            }
+
+            for (String indexed : indexedPathsUnder(directory)) {
+                if (!present.contains(indexed)) {
+                    toRemove.add(indexed);
+                }
+            }
+
+        } catch (IOException e) {
+            System.err.println("Не удалось пересканировать " + directory + ": " + e.getMessage());
+            toRemove.addAll(indexedPathsUnder(directory));
+        }
+    }
+
+    private boolean isChanged(FileScanner.FileTask task) {
+        FileInfo existing = fileIndex.getByPath(task.getPath());
+        return existing == null
+                || existing.getSize() != task.getSize()
+                || existing.getLastModifiedMillis() != task.getLastModifiedMillis();
+    }
+
+    private List<String> indexedPathsUnder(Path path) {
+        String exact = path.toAbsolutePath().toString();
+        List<String> result = new ArrayList<>();
+
+        if (fileIndex.contains(exact)) {
+            result.add(exact);
+        }
+        for (FileInfo fileInfo : fileIndex.findInScope(IndexScope.underDirectory(exact))) {
+            result.add(fileInfo.getPath());
+        }
+        return result;
+    }
+
+    /**
+     * Отсечена ли директория правилами сканера - сама или одна из директорий над ней внутри корня
+     */
+    private boolean isPruned(Path directory) throws IOException {
+        if (directory.equals(root)) {
+            return false;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(directory, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        return fileScanner.prunesDirectory(directory, attrs) || fileScanner.isInPrunedDirectory(root, directory);
+    }
+
+    /**
+     * Регистрирует директории поддерева, кроме отсеченных сканером - в них не ставятся наблюдения
+     */
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(start) && fileScanner.prunesDirectory(dir, attrs)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                System.err.println("Не удалось зарегистрировать: " + file + " - " + exc.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,86 @@
+package ua.pro.baynova.duplicatefinder.app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class DuplicateFinderCliTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем DuplicateFinderCli ===\n");
+
+        try {
+            testCommands();
+            System.out.println("\n✅ Все тесты DuplicateFinderCli пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testCommands() throws Exception {
+        System.out.println("--- Тест 1: Команды index, dupes, query, compare ---");
+
+        Path root = Files.createTempDirectory("cli-test");
+        Path a = Files.createDirectories(root.resolve("a"));
+        Path b = Files.createDirectories(root.resolve("b"));
+        Files.writeString(a.resolve("one.txt"), "same content");
+        Files.writeString(b.resolve("copy.txt"), "same content");
+        Files.writeString(a.resolve("unique.txt"), "only in a");
+        Files.writeString(b.resolve("other.log"), "only in b");
+        Path indexFile = root.resolve("index.dfi");
+
+        String[] indexOutput = new String[1];
+        int indexCode = run(indexOutput, "index", root.toString(), "--threads", "2", "--output", indexFile.toString());
+        boolean indexed = indexCode == 0 && indexOutput[0].startsWith("{\"command\":\"index\"")
+                && indexOutput[0].contains("\"files\":4") && indexOutput[0].contains("\"duplicateGroups\":1")
+                && indexOutput[0].contains("\"timeToFirstByteMillis\":") && Files.isRegularFile(indexFile);
+
+        String[] dupesOutput = new String[1];
+        run(dupesOutput, "dupes", "--index", indexFile.toString(), "--top", "5");
+        String[] externalOutput = new String[1];
+        run(externalOutput, "dupes", root.toString(), "--engine", "external", "--exclude-ext", "dfi");
+        boolean dupes = dupesOutput[0].contains("\"groupCount\":1") && dupesOutput[0].contains("copy.txt")
+                && externalOutput[0].contains("\"groupCount\":1") && externalOutput[0].contains("one.txt");
+
+        String[] queryOutput = new String[1];
+        run(queryOutput, "query", indexFile.toString(), "--path", a.resolve("one.txt").toString());
+        String[] scopeOutput = new String[1];
+        run(scopeOutput, "query", indexFile.toString(), "--ext", "log");
+        boolean query = queryOutput[0].contains("\"duplicates\":[{\"path\":") && queryOutput[0].contains("copy.txt")
+                && scopeOutput[0].contains("\"groups\":[]");
+
+        String[] compareOutput = new String[1];
+        run(compareOutput, "compare", a.toString(), b.toString());
+        boolean compare = compareOutput[0].contains("\"sharedBytes\":12")
+                && compareOutput[0].contains("unique.txt") && compareOutput[0].contains("other.log");
+
+        String[] usageOutput = new String[1];
+        boolean usage = run(usageOutput, "index") == 2 && usageOutput[0].isEmpty()
+                && run(usageOutput, "dupes", root.toString(), "--engine", "external", "--top", "3") == 2;
+
+        System.out.println("index: " + indexOutput[0]);
+        System.out.println("dupes external: " + externalOutput[0]);
+
+        if (indexed && dupes && query && compare && usage) {
+            System.out.println("✅ Все команды выводят JSON, неверные аргументы дают код 2");
+        } else {
+            System.out.printf("❌ index: %b, dupes: %b, query: %b, compare: %b, usage: %b%n",
+                    indexed, dupes, query, compare, usage);
+        }
+    }
+
+    /**
+     * Запускает команду и возвращает код выхода; stdout команды - в output[0]
+     */
+    private static int run(String[] output, String... args) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int code = DuplicateFinderCli.run(args, new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+        output[0] = out.toString(StandardCharsets.UTF_8).trim();
+        return code;
+    }
+}
@@ -0,0 +1,93 @@
+package ua.pro.baynova.duplicatefinder.compare;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class DirectoryComparatorTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем DirectoryComparator ===\n");
+
+        try {
+            testCompareTrees();
+            testOverlappingTrees();
+            System.out.println("\n✅ Все тесты DirectoryComparator пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testCompareTrees() throws Exception {
+        System.out.println("--- Тест 1: Сравнение двух деревьев ---");
+
+        Path treeA = createTree("tree_a",
+                "shared.txt", "content present in both trees",
+                "same_size_a.txt", "size twin A",
+                "a_only.txt", "only in the first tree, unique length",
+                "a_dup.txt", "only in the first tree, unique length");
+        Path treeB = createTree("tree_b",
+                "copy_of_shared.txt", "content present in both trees",
+                "same_size_b.txt", "size twin B",
+                "b_only.txt", "tiny");
+
+        DirectoryComparator.ComparisonResult result =
+                new DirectoryComparator(2, "MD5").compare(treeA.toString(), treeB.toString());
+
+        System.out.println("Общее: " + result.shared);
+
+        if (result.shared.size() == 1 && result.hashedFiles == 4
+                && result.onlyInA.size() == 3 && result.onlyInB.size() == 2) {
+            System.out.println("✅ Хешированы только файлы общих размеров, результат верный");
+        } else {
+            System.out.printf("❌ Неверный результат: hashed=%d, onlyA=%d, onlyB=%d%n",
+                    result.hashedFiles, result.onlyInA.size(), result.onlyInB.size());
+        }
+
+        System.out.println();
+    }
+
+    private static void testOverlappingTrees() throws Exception {
+        System.out.println("--- Тест 2: Вложенные деревья ---");
+
+        Path treeA = createTree("tree_outer",
+                "outer.txt", "outer tree content",
+                "outer_twin.txt", "content of the inner file");
+        Path treeB = Files.createDirectories(treeA.resolve("inner"));
+        treeB.toFile().deleteOnExit();
+        Path inner = treeB.resolve("inner.txt");
+        Files.writeString(inner, "content of the inner file");
+        inner.toFile().deleteOnExit();
+
+        // inner.txt лежит в обоих деревьях, B целиком внутри A
+        DirectoryComparator.ComparisonResult result =
+                new DirectoryComparator(2, "MD5").compare(treeA.toString(), treeB.toString());
+
+        System.out.println("Общее: " + result.shared);
+
+        boolean innerInBoth = result.shared.size() == 1
+                && result.shared.get(0).getFilesA().size() == 2
+                && result.shared.get(0).getFilesB().size() == 1
+                && result.shared.get(0).getFilesB().get(0).getPath().equals(inner.toString());
+
+        if (innerInBoth && result.onlyInB.isEmpty() && result.onlyInA.size() == 1 && result.hashedFiles == 2) {
+            System.out.println("✅ Файлы пересечения отнесены к обоим деревьям и хешированы один раз");
+        } else {
+            System.out.printf("❌ Неверный результат: shared=%s, onlyA=%d, onlyB=%d, hashed=%d%n",
+                    result.shared, result.onlyInA.size(), result.onlyInB.size(), result.hashedFiles);
+        }
+
+        System.out.println();
+    }
+
+    private static Path createTree(String prefix, String... namesAndContents) throws Exception {
+        Path dir = Files.createTempDirectory(prefix);
+        dir.toFile().deleteOnExit();
+        for (int i = 0; i < namesAndContents.length; i += 2) {
+            Path file = dir.resolve(namesAndContents[i]);
+            Files.writeString(file, namesAndContents[i + 1]);
+            file.toFile().deleteOnExit();
+        }
+        return dir;
+    }
+}
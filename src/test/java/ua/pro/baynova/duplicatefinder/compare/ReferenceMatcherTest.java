@@ -0,0 +1,100 @@
+package ua.pro.baynova.duplicatefinder.compare;
+
+import ua.pro.baynova.duplicatefinder.concurrent.MultiThreadFileIndexer;
+import ua.pro.baynova.duplicatefinder.index.IndexStorage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ReferenceMatcherTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем ReferenceMatcher ===\n");
+
+        try {
+            testMatchAgainstSavedReference();
+            testMatchByPrimaryDigest();
+            System.out.println("\n✅ Все тесты ReferenceMatcher пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testMatchAgainstSavedReference() throws Exception {
+        System.out.println("--- Тест 1: Сверка с сохраненным эталоном ---");
+
+        Path reference = Files.createTempDirectory("reference");
+        Files.writeString(reference.resolve("archived.txt"), "archived content");
+        Files.writeString(reference.resolve("other.txt"), "other archived file");
+
+        MultiThreadFileIndexer indexer = new MultiThreadFileIndexer(2);
+        indexer.indexDirectory(reference.toString());
+
+        Path indexFile = Files.createTempFile("reference", ".dfi");
+        indexFile.toFile().deleteOnExit();
+        IndexStorage.save(indexer.getFileIndex(), indexFile);
+
+        // эталон удален с диска - сверка обязана обойтись без его чтения
+        Files.delete(reference.resolve("archived.txt"));
+        Files.delete(reference.resolve("other.txt"));
+        Files.delete(reference);
+
+        Path incoming = Files.createTempDirectory("incoming");
+        Files.writeString(incoming.resolve("copy.txt"), "archived content");
+        Files.writeString(incoming.resolve("same_size.txt"), "ARCHIVED CONTENT");
+        Files.writeString(incoming.resolve("unique.txt"), "completely new file of a different size");
+        for (String name : new String[]{"copy.txt", "same_size.txt", "unique.txt"}) {
+            incoming.resolve(name).toFile().deleteOnExit();
+        }
+        incoming.toFile().deleteOnExit();
+
+        ReferenceMatcher matcher = ReferenceMatcher.fromIndexFile(indexFile, 2, "MD5");
+        ReferenceMatcher.MatchResult result = matcher.match(incoming.toString());
+
+        System.out.println("Совпадения: " + result.matches);
+
+        if (result.scannedFiles == 3 && result.candidateFiles == 2 && result.matches.size() == 1
+                && result.matches.get(0).getNewFile().getPath().endsWith("copy.txt")) {
+            System.out.println("✅ Найдена копия, хешированы только кандидаты по размеру");
+        } else {
+            System.out.println("❌ Неверный результат сверки");
+        }
+
+        System.out.println();
+    }
+
+    private static void testMatchByPrimaryDigest() throws Exception {
+        System.out.println("--- Тест 2: Эталон с другим ключом группировки ---");
+
+        Path reference = Files.createTempDirectory("reference_sha");
+        Files.writeString(reference.resolve("archived.txt"), "archived content");
+
+        MultiThreadFileIndexer indexer = new MultiThreadFileIndexer(2);
+        indexer.setAdditionalAlgorithms("SHA-256");
+        indexer.indexDirectory(reference.toString());
+        indexer.getFileIndex().setPrimaryDigest("SHA-256");
+
+        Path indexFile = Files.createTempFile("reference_sha", ".dfi");
+        indexFile.toFile().deleteOnExit();
+        IndexStorage.save(indexer.getFileIndex(), indexFile);
+        reference.resolve("archived.txt").toFile().deleteOnExit();
+        reference.toFile().deleteOnExit();
+
+        Path incoming = Files.createTempDirectory("incoming_sha");
+        Files.writeString(incoming.resolve("copy.txt"), "archived content");
+        incoming.resolve("copy.txt").toFile().deleteOnExit();
+        incoming.toFile().deleteOnExit();
+
+        ReferenceMatcher.MatchResult result = ReferenceMatcher.fromIndexFile(indexFile, 2, "MD5")
+                .match(incoming.toString());
+
+        if (result.candidateFiles == 1 && result.matches.size() == 1) {
+            System.out.println("✅ Кандидаты сверяются по SHA-256, как сгруппирован эталон");
+        } else {
+            System.out.println("❌ Совпадений: " + result.matches.size() + " из " + result.candidateFiles);
+        }
+
+        System.out.println();
+    }
+}
@@ -0,0 +1,124 @@
+package ua.pro.baynova.duplicatefinder.concurrent;
+
+import ua.pro.baynova.duplicatefinder.hash.HashCalculator;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+public class CancellationTokenTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем отмену и прогресс ===\n");
+
+        try {
+            Path dir = createFiles(8, 256 * 1024);
+            testChunkLevelCancellation(dir);
+            testCancelDuringProcessing(dir);
+            testTimeBudget(dir);
+            testProgressEta();
+            System.out.println("\n✅ Все тесты отмены и прогресса пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testChunkLevelCancellation(Path dir) throws Exception {
+        System.out.println("--- Тест 1: Отмена внутри чтения файла ---");
+
+        CancellationToken token = new CancellationToken();
+        long[] bytesRead = {0};
+
+        try {
+            new HashCalculator("MD5").calculateHash(dir.resolve("file0.bin").toString(), null, bytes -> {
+                bytesRead[0] += bytes;
+                token.cancel();
+                token.throwIfCancelled();
+            });
+            System.out.println("❌ Хеширование не остановилось");
+        } catch (CancellationException e) {
+            if (bytesRead[0] <= 8192) {
+                System.out.println("✅ Чтение остановлено после первого блока (" + bytesRead[0] + " байт)");
+            } else {
+                System.out.println("❌ Прочитано слишком много: " + bytesRead[0]);
+            }
+        }
+
+        System.out.println();
+    }
+
+    private static void testCancelDuringProcessing(Path dir) throws Exception {
+        System.out.println("--- Тест 2: Отмена во время параллельной обработки ---");
+
+        List<FileScanner.FileTask> tasks = new FileScanner().scanDirectory(dir.toString());
+        MultiThreadHashCalculator calculator = new MultiThreadHashCalculator(1, "MD5");
+        CancellationToken token = new CancellationToken();
+
+        List<FileInfo> results = calculator.processFiles(tasks, fileInfo -> token.cancel(), token);
+
+        if (!results.isEmpty() && results.size() < tasks.size()
+                && results.size() + calculator.getCancelledFiles() == tasks.size()) {
+            System.out.printf("✅ Готово %d файлов, отменено %d%n", results.size(), calculator.getCancelledFiles());
+        } else {
+            System.out.printf("❌ Неверный итог отмены: готово %d, отменено %d из %d%n",
+                    results.size(), calculator.getCancelledFiles(), tasks.size());
+        }
+
+        System.out.println();
+    }
+
+    private static void testTimeBudget(Path dir) throws Exception {
+        System.out.println("--- Тест 3: Исчерпанный бюджет времени ---");
+
+        MultiThreadFileIndexer indexer = new MultiThreadFileIndexer(2);
+        MultiThreadFileIndexer.IndexingResult result =
+                indexer.indexDirectory(dir.toString(), CancellationToken.withTimeout(Duration.ZERO));
+
+        if (result.cancelled && result.getProcessedCount() == 0) {
+            System.out.println("✅ Индексация с нулевым бюджетом остановлена сразу");
+        } else {
+            System.out.println("❌ Бюджет времени не соблюден: обработано " + result.getProcessedCount());
+        }
+
+        System.out.println();
+    }
+
+    private static void testProgressEta() throws Exception {
+        System.out.println("--- Тест 4: Байты и ETA ---");
+
+        ProgressTracker tracker = new ProgressTracker(4, 4_000_000);
+        tracker.addBytes(1_000_000);
+        Thread.sleep(300);
+        tracker.getRecentBytesPerSecond();
+        tracker.addBytes(1_000_000);
+
+        long eta = tracker.getEtaMillis();
+        System.out.println(tracker);
+
+        if (tracker.getBytesRemaining() == 2_000_000 && eta > 0 && eta < 10_000) {
+            System.out.println("✅ Осталось 2 MB, ETA " + eta + " мс");
+        } else {
+            System.out.println("❌ Неверный прогресс: осталось " + tracker.getBytesRemaining() + ", ETA " + eta);
+        }
+
+        System.out.println();
+    }
+
+    private static Path createFiles(int count, int size) throws Exception {
+        Path dir = Files.createTempDirectory("cancellation");
+        dir.toFile().deleteOnExit();
+        for (int i = 0; i < count; i++) {
+            byte[] content = new byte[size];
+            content[0] = (byte) i;
+            Path file = dir.resolve("file" + i + ".bin");
+            Files.write(file, content);
+            file.toFile().deleteOnExit();
+        }
+        return dir;
+    }
+}
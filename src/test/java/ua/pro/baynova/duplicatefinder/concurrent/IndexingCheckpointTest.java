@@ -0,0 +1,79 @@
+package ua.pro.baynova.duplicatefinder.concurrent;
+
+import ua.pro.baynova.duplicatefinder.hash.HashCalculator;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class IndexingCheckpointTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем IndexingCheckpoint ===\n");
+
+        try {
+            testResumeFromJournal();
+            System.out.println("\n✅ Все тесты IndexingCheckpoint пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testResumeFromJournal() throws Exception {
+        System.out.println("--- Тест 1: Продолжение прерванной индексации ---");
+
+        Path dir = Files.createTempDirectory("checkpoint");
+        Path done = dir.resolve("done.txt");
+        Path changed = dir.resolve("changed.txt");
+        Path pending = dir.resolve("pending.txt");
+        Files.writeString(done, "already hashed before the crash");
+        Files.writeString(changed, "hashed, but modified after the crash");
+        Files.writeString(pending, "never reached");
+        for (Path file : new Path[]{done, changed, pending}) {
+            file.toFile().deleteOnExit();
+        }
+        dir.toFile().deleteOnExit();
+
+        Path journal = dir.resolveSibling(dir.getFileName() + ".journal");
+        journal.toFile().deleteOnExit();
+
+        // имитируем первый запуск, убитый после двух файлов и посреди третьей записи
+        List<FileScanner.FileTask> tasks = new FileScanner().scanDirectory(dir.toString());
+        HashCalculator calculator = new HashCalculator("MD5");
+        try (IndexingCheckpoint checkpoint = IndexingCheckpoint.open(journal, dir.toString())) {
+            for (FileScanner.FileTask task : tasks) {
+                if (!task.getPath().endsWith("pending.txt")) {
+                    checkpoint.record(new FileInfo(task.getPath(), calculator.calculateHash(task.getPath()),
+                            task.getSize(), task.getLastModified(), LocalDateTime.now()));
+                }
+            }
+        }
+        Files.write(journal, new byte[]{1, 0, 42}, StandardOpenOption.APPEND);
+        Files.writeString(changed, "hashed, but MODIFIED after the crash, now longer");
+
+        MultiThreadFileIndexer indexer = new MultiThreadFileIndexer(2);
+        indexer.setCheckpointFile(journal);
+        MultiThreadFileIndexer.IndexingResult result = indexer.indexDirectory(dir.toString());
+
+        String changedHash = indexer.getFileIndex().getAllFiles().stream()
+                .filter(file -> file.getPath().endsWith("changed.txt"))
+                .map(FileInfo::getHash)
+                .findFirst().orElse("");
+
+        if (result.resumedFiles == 1 && result.getProcessedCount() == 3
+                && changedHash.equals(calculator.calculateHash(changed.toString()))
+                && !Files.exists(journal)) {
+            System.out.println("✅ Неизменившийся файл взят из журнала, остальные перехешированы, журнал удален");
+        } else {
+            System.out.printf("❌ Неверное продолжение: resumed=%d, processed=%d, journal=%s%n",
+                    result.resumedFiles, result.getProcessedCount(), Files.exists(journal));
+        }
+
+        System.out.println();
+    }
+}
@@ -2,7 +2,15 @@ package ua.pro.baynova.duplicatefinder.concurrent;
 
 import ua.pro.baynova.duplicatefinder.model.FileInfo;
 import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 public class MultiThreadHashTest {
 
@@ -12,6 +20,8 @@ public class MultiThreadHashTest {
         try {
             testBasicMultithreading();
             testPerformanceComparison();
+            testInFlightBudget();
+            testStalledRead();
 
             System.out.println("\n✅ Многопоточное хеширование работает!");
 
@@ -85,6 +95,111 @@ public class MultiThreadHashTest {
         }
     }
 
+    private static void testInFlightBudget() throws Exception {
+        System.out.println("\n--- Тест 3: Ограничение работы в полете ---");
+
+        Path dir = Files.createTempDirectory("backpressure");
+        dir.toFile().deleteOnExit();
+        for (int i = 0; i < 200; i++) {
+            Path file = dir.resolve("file" + i + ".txt");
+            Files.writeString(file, "content " + (i % 50));
+            file.toFile().deleteOnExit();
+        }
+
+        MultiThreadHashCalculator calculator = new MultiThreadHashCalculator(2, "MD5");
+        calculator.setInFlightBudget(4, 1024 * 1024);
+
+        List<FileInfo> listed = calculator.processFiles(new FileScanner().scanDirectory(dir.toString()));
+        int listPeak = calculator.getPeakInFlightTasks();
+
+        int[] streamed = {0};
+        int processed;
+        try (Stream<FileScanner.FileTask> tasks = new FileScanner().streamDirectory(dir.toString())) {
+            processed = calculator.processStream(tasks, fileInfo -> streamed[0]++, new CancellationToken());
+        }
+        int streamPeak = calculator.getPeakInFlightTasks();
+
+        if (listed.size() == 200 && processed == 200 && streamed[0] == 200 && listPeak <= 4 && streamPeak <= 4) {
+            System.out.printf("✅ 200 файлов обработано, в полете не больше %d задач%n", Math.max(listPeak, streamPeak));
+        } else {
+            System.out.printf("❌ Бюджет нарушен: список %d (пик %d), поток %d (пик %d)%n",
+                    listed.size(), listPeak, processed, streamPeak);
+        }
+    }
+
+    private static void testStalledRead() throws Exception {
+        System.out.println("\n--- Тест 4: Зависшее чтение и замена потока ---");
+
+        Path dir = Files.createTempDirectory("stalled");
+        dir.toFile().deleteOnExit();
+        for (int i = 0; i < 10; i++) {
+            Path file = dir.resolve("file" + i + ".txt");
+            Files.writeString(file, "content " + i);
+            file.toFile().deleteOnExit();
+        }
+
+        // первая задача "зависает" без реакции на прерывание - как read на отвалившемся NFS
+        AtomicBoolean stalled = new AtomicBoolean(false);
+        AtomicBoolean released = new AtomicBoolean(false);
+        CancellationToken stallingToken = new CancellationToken() {
+            @Override
+            public void throwIfCancelled() {
+                if (Thread.currentThread().getName().startsWith("hash-worker")
+                        && stalled.compareAndSet(false, true)) {
+                    while (!released.get()) {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException ignored) {
+                            // прерывание игнорируется намеренно
+                        }
+                    }
+                }
+                super.throwIfCancelled();
+            }
+        };
+
+        List<FileScanner.FileTask> tasks = new FileScanner().scanDirectory(dir.toString());
+        MultiThreadHashCalculator calculator = new MultiThreadHashCalculator(1, "MD5");
+        calculator.setReadTimeout(300);
+
+        long start = System.currentTimeMillis();
+        List<FileInfo> results = calculator.processFiles(tasks, fileInfo -> { }, stallingToken);
+        long duration = System.currentTimeMillis() - start;
+        List<String> stragglers = calculator.getStragglers();
+
+        // поток первого запуска все еще висит - второй запуск на том же калькуляторе
+        // не должен считать его своим и обязан завершить свой пул штатно
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(errors, true, StandardCharsets.UTF_8));
+        List<FileInfo> secondRun;
+        try {
+            secondRun = calculator.processFiles(tasks);
+        } finally {
+            System.setErr(originalErr);
+        }
+        released.set(true);
+        boolean secondClean = secondRun.size() == tasks.size()
+                && !errors.toString(StandardCharsets.UTF_8).contains("Оставлено зависших потоков");
+
+        System.out.printf("Обработано: %d, зависших: %s, время: %d мс%n", results.size(), stragglers, duration);
+
+        if (results.size() == tasks.size() - 1 && stragglers.size() == 1
+                && results.stream().noneMatch(f -> f.getPath().equals(stragglers.get(0)))
+                && calculator.getCancelledFiles() == 0 && duration < 5000) {
+            System.out.println("✅ Зависший файл пропущен по таймауту, остальные обработаны новым потоком");
+        } else {
+            System.out.println("❌ Зависшее чтение не обработано сторожем");
+        }
+
+        if (secondClean) {
+            System.out.println("✅ Следующий запуск не унаследовал зависший поток");
+        } else {
+            System.out.println("❌ Второй запуск: " + secondRun.size() + " файлов, stderr: "
+                    + errors.toString(StandardCharsets.UTF_8));
+        }
+    }
+
     private static long calculateTotalSize(List<FileScanner.FileTask> files) {
         return files.stream().mapToLong(FileScanner.FileTask::getSize).sum();
     }
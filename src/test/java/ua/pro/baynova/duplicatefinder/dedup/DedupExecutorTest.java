@@ -0,0 +1,169 @@
+package ua.pro.baynova.duplicatefinder.dedup;
+
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class DedupExecutorTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем DedupExecutor ===\n");
+
+        try {
+            testDryRun();
+            testHardLinkAndUndo();
+            testMoveSkipsChangedFiles();
+            testArchiveEntryIsNotKeeper();
+            System.out.println("\n✅ Все тесты DedupExecutor пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testDryRun() throws Exception {
+        System.out.println("--- Тест 1: Пробный прогон ничего не меняет ---");
+
+        Path dir = Files.createTempDirectory("dedup-dry");
+        SimpleFileIndex index = createIndex(dir);
+
+        DedupExecutor executor = new DedupExecutor(DedupExecutor.Action.DELETE, 2, 1);
+        executor.setDryRun(true);
+        DedupExecutor.DedupResult result = executor.execute(index);
+
+        if (result.actionsPerformed.get() == 2 && Files.exists(dir.resolve("b.txt"))
+                && Files.exists(dir.resolve("c.txt")) && index.size() == 3) {
+            System.out.println("✅ Найдено 2 копии, файлы и индекс не тронуты");
+        } else {
+            System.out.println("❌ Пробный прогон изменил файлы или посчитал неверно");
+        }
+
+        deleteRecursively(dir);
+        System.out.println();
+    }
+
+    private static void testHardLinkAndUndo() throws Exception {
+        System.out.println("--- Тест 2: Жесткие ссылки и отмена ---");
+
+        Path dir = Files.createTempDirectory("dedup-link");
+        SimpleFileIndex index = createIndex(dir);
+        Path journal = Files.createTempFile("dedup-undo", ".log");
+        // файл пользователя с именем, похожим на временное, не должен пострадать
+        Path userFile = dir.resolve("b.txt.dedup-tmp");
+        Files.writeString(userFile, "user data");
+
+        DedupExecutor executor = new DedupExecutor(DedupExecutor.Action.HARD_LINK, 2, 1);
+        executor.setUndoJournal(journal);
+        DedupExecutor.DedupResult result = executor.execute(index);
+
+        boolean linked = Files.isSameFile(dir.resolve("a.txt"), dir.resolve("b.txt"))
+                && Files.isSameFile(dir.resolve("a.txt"), dir.resolve("c.txt"));
+
+        DedupExecutor.DedupResult again = executor.execute(index);
+
+        int restored = DedupExecutor.undo(journal);
+        boolean separated = !Files.isSameFile(dir.resolve("a.txt"), dir.resolve("b.txt"))
+                && !Files.isSameFile(dir.resolve("a.txt"), dir.resolve("c.txt"))
+                && Files.readString(dir.resolve("c.txt")).equals("same content");
+        boolean untouched = Files.readString(userFile).equals("user data");
+
+        if (result.actionsPerformed.get() == 2 && linked && again.skippedAlreadyLinked.get() == 2
+                && restored == 2 && separated && untouched) {
+            System.out.println("✅ Копии заменены ссылками, повтор пропущен, отмена разделила файлы");
+        } else {
+            System.out.printf("❌ Ссылки: %b, повтор: %d, восстановлено: %d, разделены: %b, чужой файл цел: %b%n",
+                    linked, again.skippedAlreadyLinked.get(), restored, separated, untouched);
+        }
+
+        Files.deleteIfExists(journal);
+        deleteRecursively(dir);
+        System.out.println();
+    }
+
+    private static void testMoveSkipsChangedFiles() throws Exception {
+        System.out.println("--- Тест 3: Перенос в карантин с перепроверкой ---");
+
+        Path dir = Files.createTempDirectory("dedup-move");
+        Path quarantine = Files.createTempDirectory("dedup-quarantine");
+        SimpleFileIndex index = createIndex(dir);
+
+        // c.txt изменился после индексации
+        Files.setLastModifiedTime(dir.resolve("c.txt"), FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+
+        DedupExecutor executor = new DedupExecutor(DedupExecutor.Action.MOVE, 2, 1);
+        executor.setQuarantineDirectory(quarantine);
+        DedupExecutor.DedupResult result = executor.execute(index);
+
+        Path moved = quarantine.resolve(dir.toAbsolutePath().getRoot().relativize(dir.toAbsolutePath()).resolve("b.txt").toString());
+
+        if (result.actionsPerformed.get() == 1 && result.skippedChanged.get() == 1
+                && !Files.exists(dir.resolve("b.txt")) && Files.exists(moved)
+                && Files.exists(dir.resolve("c.txt")) && !index.contains(dir.resolve("b.txt").toString())) {
+            System.out.println("✅ b.txt перенесен, измененный c.txt пропущен");
+        } else {
+            System.out.println("❌ Неверный результат переноса: " + result);
+        }
+
+        deleteRecursively(dir);
+        deleteRecursively(quarantine);
+    }
+
+    private static void testArchiveEntryIsNotKeeper() throws Exception {
+        System.out.println("\n--- Тест 4: Запись архива не мешает обработать обычные копии ---");
+
+        Path dir = Files.createTempDirectory("dedup-archive");
+        SimpleFileIndex index = createIndex(dir);
+
+        // путь записи архива меньше путей обычных копий
+        Path archive = dir.resolve("0.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("a.txt"));
+            zip.write("same content".getBytes());
+            zip.closeEntry();
+        }
+        long now = System.currentTimeMillis();
+        index.addOrUpdate(new FileInfo(archive + "!/a.txt", "samehash", 12, now, now));
+
+        DedupExecutor executor = new DedupExecutor(DedupExecutor.Action.DELETE, 2, 1);
+        DedupExecutor.DedupResult result = executor.execute(index);
+
+        if (result.actionsPerformed.get() == 2 && result.skippedArchiveEntries.get() == 1
+                && result.skippedChanged.get() == 0 && Files.exists(dir.resolve("a.txt"))
+                && !Files.exists(dir.resolve("b.txt")) && Files.exists(archive)) {
+            System.out.println("✅ Оставлен a.txt, копии удалены, запись архива учтена отдельно");
+        } else {
+            System.out.println("❌ Неверный результат: " + result);
+        }
+
+        deleteRecursively(dir);
+    }
+
+    private static SimpleFileIndex createIndex(Path dir) throws Exception {
+        SimpleFileIndex index = new SimpleFileIndex();
+        index.setVerbose(false);
+
+        for (String name : new String[]{"a.txt", "b.txt", "c.txt"}) {
+            Path file = dir.resolve(name);
+            Files.writeString(file, "same content");
+            LocalDateTime modified = LocalDateTime.ofInstant(
+                    Files.getLastModifiedTime(file).toInstant(), ZoneId.systemDefault());
+            index.addOrUpdate(new FileInfo(file.toString(), "samehash", Files.size(file), modified, LocalDateTime.now()));
+        }
+        return index;
+    }
+
+    private static void deleteRecursively(Path dir) throws Exception {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ua.pro.baynova.duplicatefinder.distributed;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ShardCoordinatorTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем ShardCoordinator ===\n");
+
+        try {
+            testShardedIndexing();
+            System.out.println("\n✅ Все тесты ShardCoordinator пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testShardedIndexing() throws Exception {
+        System.out.println("--- Тест 1: Индексация двумя процессами-воркерами ---");
+
+        Path root = Files.createTempDirectory("sharded");
+        root.toFile().deleteOnExit();
+
+        for (String shard : new String[]{"alpha", "beta", "gamma", "delta"}) {
+            Path dir = Files.createDirectories(root.resolve(shard).resolve("nested"));
+            Files.writeString(dir.resolve("shared.txt"), "content shared by every shard");
+            Files.writeString(dir.resolve("own.txt"), "content unique to " + shard);
+            dir.resolve("shared.txt").toFile().deleteOnExit();
+            dir.resolve("own.txt").toFile().deleteOnExit();
+            dir.toFile().deleteOnExit();
+            dir.getParent().toFile().deleteOnExit();
+        }
+        Files.writeString(root.resolve("top.txt"), "content shared by every shard");
+        root.resolve("top.txt").toFile().deleteOnExit();
+
+        ShardCoordinator.ShardingResult result = new ShardCoordinator(root.toString()).run(2, 1, 120);
+
+        System.out.printf("Шардов: %d, копий: %d (отменено %d), файлов: %d, групп: %d%n",
+                result.shardCount, result.stolenShards, result.cancelledCopies,
+                result.fileIndex.size(), result.getDuplicateGroupsCount());
+
+        if (result.shardCount == 5 && result.fileIndex.size() == 9
+                && result.getDuplicateGroupsCount() == 1 && result.duplicateGroups.get(0).size() == 5
+                && result.errors.isEmpty() && result.failedFiles.isEmpty()
+                && result.cancelledCopies <= result.stolenShards) {
+            System.out.println("✅ Частичные индексы слиты в один, дубликаты между шардами найдены");
+        } else {
+            System.out.println("❌ Неверный результат слияния");
+        }
+
+        System.out.println();
+    }
+}
@@ -1,8 +1,18 @@
 package ua.pro.baynova.duplicatefinder.hash;
 
+import ua.pro.baynova.duplicatefinder.scanner.ArchivePath;
+
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class HashCalculatorTest {
 
@@ -14,6 +24,9 @@ public class HashCalculatorTest {
         testDifferentAlgorithms();
         testErrorHandling();
         testPerformance();
+        testXattrCache();
+        testMultipleDigests();
+        testArchiveEntries();
 
         System.out.println("\n✅ Все тесты HashCalculator пройдены!");
     }
@@ -217,4 +230,135 @@ public class HashCalculatorTest {
 
         System.out.println();
     }
+
+    private static void testXattrCache() {
+        System.out.println("--- Тест 6: Кеш хеша в расширенном атрибуте ---");
+
+        try {
+            File tempFile = File.createTempFile("xattr_cache", ".txt");
+            tempFile.deleteOnExit();
+            Files.writeString(tempFile.toPath(), "cached content");
+
+            HashCalculator calculator = new HashCalculator();
+            calculator.setXattrCacheEnabled(true);
+
+            String first = calculator.calculateHash(tempFile);
+            String second = calculator.calculateHash(tempFile);
+            boolean cached = calculator.isLastHashFromCache();
+
+            if (!cached) {
+                if (first.equals(second) && first.equals(new HashCalculator().calculateHash(tempFile))) {
+                    System.out.println("⚠️ Файловая система без xattr - кеш молча пропущен, хеш верный");
+                } else {
+                    System.out.println("❌ Без xattr хеш посчитан неверно");
+                }
+                System.out.println();
+                return;
+            }
+
+            Files.writeString(tempFile.toPath(), "changed content");
+            Files.setLastModifiedTime(tempFile.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 5000));
+            String third = calculator.calculateHash(tempFile);
+
+            if (first.equals(second) && !calculator.isLastHashFromCache() && !third.equals(first)
+                    && third.equals(new HashCalculator().calculateHash(tempFile))) {
+                System.out.println("✅ Повторный хеш взят из xattr, измененный файл перечитан");
+            } else {
+                System.out.println("❌ Кеш в xattr работает неверно");
+            }
+
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка теста кеша: " + e.getMessage());
+        }
+
+        System.out.println();
+    }
+
+    private static void testMultipleDigests() {
+        System.out.println("--- Тест 7: Несколько хешей за одно чтение ---");
+
+        try {
+            File tempFile = File.createTempFile("multi_digest", ".bin");
+            tempFile.deleteOnExit();
+            byte[] content = new byte[HashCalculator.BUFFER_SIZE * 3 + 17];
+            for (int i = 0; i < content.length; i++) {
+                content[i] = (byte) (i * 31);
+            }
+            Files.write(tempFile.toPath(), content);
+
+            HashCalculator calculator = new HashCalculator("MD5", "SHA-256", "SHA-1");
+            long[] bytesRead = {0};
+            Map<String, String> digests = calculator.calculateDigests(tempFile.getPath(), null,
+                    bytes -> bytesRead[0] += bytes);
+
+            boolean sameAsSeparate = digests.get("MD5").equals(new HashCalculator("MD5").calculateHash(tempFile))
+                    && digests.get("SHA-256").equals(new HashCalculator("SHA-256").calculateHash(tempFile))
+                    && digests.get("SHA-1").equals(new HashCalculator("SHA-1").calculateHash(tempFile));
+            boolean primaryFirst = List.copyOf(digests.keySet()).equals(List.of("MD5", "SHA-256", "SHA-1"))
+                    && calculator.calculateHash(tempFile).equals(digests.get("MD5"));
+
+            System.out.println("Прочитано байт: " + bytesRead[0] + " из " + content.length);
+
+            if (sameAsSeparate && primaryFirst && bytesRead[0] == content.length) {
+                System.out.println("✅ Три хеша за одно чтение совпадают с отдельными вычислениями");
+            } else {
+                System.out.printf("❌ Совпадение: %b, порядок: %b%n", sameAsSeparate, primaryFirst);
+            }
+
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка теста нескольких хешей: " + e.getMessage());
+        }
+
+        System.out.println();
+    }
+
+    private static void testArchiveEntries() {
+        System.out.println("--- Тест 8: Записи архивов и пути с \"!/\" ---");
+
+        try {
+            Path dir = Files.createTempDirectory("archive_entries");
+            Path archive = dir.resolve("bundle.zip");
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+                for (int i = 0; i < 20; i++) {
+                    zip.putNextEntry(new ZipEntry("entry" + i + ".txt"));
+                    zip.write(("entry content " + i % 2).getBytes(StandardCharsets.UTF_8));
+                    zip.closeEntry();
+                }
+            }
+
+            // обычный файл, в пути которого есть "!/" - не запись архива
+            Path odd = Files.createDirectories(dir.resolve("wow!")).resolve("a.txt");
+            Files.writeString(odd, "entry content 0");
+
+            HashCalculator calculator = new HashCalculator("MD5");
+            String expected = calculator.calculateHash(odd.toString());
+
+            boolean entriesMatch;
+            int openArchives;
+            try (ZipFileCache cache = new ZipFileCache()) {
+                calculator.setZipFileCache(cache);
+                entriesMatch = true;
+                for (int i = 0; i < 20; i += 2) {
+                    String entryPath = archive + "!/entry" + i + ".txt";
+                    entriesMatch &= calculator.calculateHash(entryPath).equals(expected);
+                }
+                openArchives = cache.getOpenCount();
+            }
+
+            boolean detection = !ArchivePath.isArchiveEntry(odd.toString())
+                    && ArchivePath.isArchiveEntry(archive + "!/entry1.txt");
+
+            if (entriesMatch && openArchives == 1 && detection) {
+                System.out.println("✅ Записи читаются из одного открытого архива, путь с \"!/\" хешируется как файл");
+            } else {
+                System.out.printf("❌ Хеши: %b, открыто архивов: %d, распознавание: %b%n",
+                        entriesMatch, openArchives, detection);
+            }
+
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка теста архивов: " + e.getMessage());
+        }
+
+        System.out.println();
+    }
 }
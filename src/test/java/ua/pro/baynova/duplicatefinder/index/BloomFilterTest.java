@@ -0,0 +1,89 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+public class BloomFilterTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем BloomFilter ===\n");
+
+        testFalsePositiveRate();
+        testIndexIntegration();
+
+        System.out.println("\n✅ Все тесты BloomFilter пройдены!");
+    }
+
+    private static void testFalsePositiveRate() {
+        System.out.println("--- Тест 1: Доля ложноположительных ---");
+
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.put(Integer.toHexString(i * 31 + 7) + "abcdef");
+        }
+
+        boolean noFalseNegatives = true;
+        for (int i = 0; i < 100_000; i++) {
+            noFalseNegatives &= filter.mightContain(Integer.toHexString(i * 31 + 7) + "abcdef");
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("missing" + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = falsePositives / 100_000.0;
+
+        System.out.println(filter);
+        System.out.printf("Ложноположительных: %.3f%%%n", rate * 100);
+
+        if (noFalseNegatives && rate < 0.02) {
+            System.out.println("✅ Доля ложноположительных в пределах настройки");
+        } else {
+            System.out.println("❌ Фильтр работает неправильно");
+        }
+
+        System.out.println();
+    }
+
+    private static void testIndexIntegration() {
+        System.out.println("--- Тест 2: Фильтр в индексе ---");
+
+        try {
+            SimpleFileIndex index = new SimpleFileIndex();
+            index.setVerbose(false);
+            index.enableMembershipFilter(10, 0.01);
+
+            LocalDateTime now = LocalDateTime.now();
+            for (int i = 0; i < 1000; i++) {
+                index.addOrUpdate(new FileInfo("/f" + i, "hash" + i, 10, now, now));
+            }
+            index.remove("/f0");
+
+            boolean lookups = index.containsHash("hash999") && !index.containsHash("hash0")
+                    && index.findByHash("nothing").isEmpty() && index.findByHash("hash5").size() == 1;
+
+            Path file = Files.createTempFile("bloom_index", ".dfi");
+            file.toFile().deleteOnExit();
+            IndexStorage.save(index, file);
+            SimpleFileIndex loaded = IndexStorage.load(file);
+
+            boolean persisted = loaded.getMembershipFilter() != null && loaded.containsHash("hash500");
+
+            if (lookups && persisted) {
+                System.out.println("✅ Фильтр синхронизирован с индексом и сохраняется вместе с ним");
+            } else {
+                System.out.println("❌ Проблема с фильтром в индексе");
+            }
+
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+        }
+
+        System.out.println();
+    }
+}
@@ -0,0 +1,102 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.util.List;
+import java.util.Map;
+
+public class DirectoryHashIndexTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем DirectoryHashIndex ===\n");
+
+        try {
+            testIdenticalDirectories();
+            testPrimaryDigestKey();
+            System.out.println("\n✅ Все тесты DirectoryHashIndex пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testIdenticalDirectories() {
+        System.out.println("--- Тест 1: Одинаковые директории и свертка групп ---");
+
+        SimpleFileIndex index = new SimpleFileIndex();
+        index.setVerbose(false);
+
+        // три копии проекта, директория с той же src, но другим README, и одиночная копия файла
+        for (String copy : new String[]{"/work/a/proj", "/work/b/proj", "/work/c/proj"}) {
+            add(index, copy + "/src/Main.java", "main", 100);
+            add(index, copy + "/src/Util.java", "util", 200);
+            add(index, copy + "/README", "readme", 50);
+        }
+        add(index, "/work/d/partial/src/Main.java", "main", 100);
+        add(index, "/work/d/partial/src/Util.java", "util", 200);
+        add(index, "/work/d/partial/README", "other readme", 60);
+        add(index, "/work/e/single.txt", "main", 100);
+
+        DirectoryHashIndex directories = DirectoryHashIndex.build(index);
+        List<DirectoryHashIndex.DirectoryGroup> groups = directories.getDuplicateDirectories();
+        groups.forEach(group -> System.out.println("  " + group));
+
+        List<List<FileInfo>> collapsed = index.findDuplicates(directories);
+        System.out.println("Групп файлов: " + index.findDuplicates().size() + " -> " + collapsed.size());
+
+        // по убыванию лишнего объема: src 300 * 3, копии проекта 350 * 2
+        boolean topLevel = groups.size() == 2
+                && groups.get(1).getDirectories().equals(List.of("/work/a", "/work/b", "/work/c"))
+                && groups.get(1).getFileCount() == 3 && groups.get(1).getWastedBytes() == 700
+                && groups.get(0).getDirectories().equals(List.of(
+                        "/work/a/proj/src", "/work/b/proj/src", "/work/c/proj/src", "/work/d/partial/src"));
+        boolean collapsedRight = collapsed.size() == 1 && collapsed.get(0).size() == 2
+                && collapsed.get(0).stream().anyMatch(f -> f.getPath().equals("/work/e/single.txt"));
+        boolean lookup = directories.findIdenticalDirectories("/work/b/proj/").size() == 2
+                && directories.getDigest("/work/d/partial") != null
+                && !directories.getDigest("/work/d/partial").equals(directories.getDigest("/work/a/proj"));
+
+        if (topLevel && collapsedRight && lookup) {
+            System.out.println("✅ Найдены верхние копии директорий, вложенные группы свернуты");
+        } else {
+            System.out.printf("❌ Верхние: %b, свертка: %b, поиск: %b%n", topLevel, collapsedRight, lookup);
+        }
+    }
+
+    private static void testPrimaryDigestKey() {
+        System.out.println("\n--- Тест 2: Хеш директорий по ключу группировки индекса ---");
+
+        SimpleFileIndex index = new SimpleFileIndex();
+        index.setVerbose(false);
+
+        // быстрый хеш совпадает, а SHA-256 различается - после setPrimaryDigest это разные файлы
+        long now = System.currentTimeMillis();
+        for (String dir : new String[]{"/data/x", "/data/y", "/data/z"}) {
+            String sha = dir.equals("/data/z") ? "sha-other" : "sha-same";
+            index.addOrUpdate(new FileInfo(dir + "/photo.jpg", "fast-same", 500, now, now,
+                    Map.of("SHA-256", sha)));
+        }
+        index.setPrimaryDigest("SHA-256");
+
+        DirectoryHashIndex directories = DirectoryHashIndex.build(index);
+        List<DirectoryHashIndex.DirectoryGroup> groups = directories.getDuplicateDirectories();
+        groups.forEach(group -> System.out.println("  " + group));
+
+        List<List<FileInfo>> collapsed = index.findDuplicates(directories);
+
+        boolean groupsRight = groups.size() == 1
+                && groups.get(0).getDirectories().equals(List.of("/data/x", "/data/y"));
+        boolean collapsedRight = index.findDuplicates().size() == 1 && collapsed.isEmpty();
+
+        if (groupsRight && collapsedRight) {
+            System.out.println("✅ Директории сравниваются по тому же ключу, что и группы файлов");
+        } else {
+            System.out.printf("❌ Группы директорий: %b, свертка: %b%n", groupsRight, collapsedRight);
+        }
+    }
+
+    private static void add(SimpleFileIndex index, String path, String hash, long size) {
+        long now = System.currentTimeMillis();
+        index.addOrUpdate(new FileInfo(path, hash, size, now, now));
+    }
+}
@@ -0,0 +1,94 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ExternalDuplicateFinderTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем ExternalDuplicateFinder ===\n");
+
+        try {
+            testMatchesInMemoryGrouping();
+            System.out.println("\n✅ Все тесты ExternalDuplicateFinder пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testMatchesInMemoryGrouping() throws Exception {
+        System.out.println("--- Тест 1: Группы совпадают с поиском в памяти ---");
+
+        int records = 30000;
+        String[] digests = new String[700];
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        for (int i = 0; i < digests.length; i++) {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : md5.digest(("content " + i).getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            digests[i] = hex.toString();
+        }
+
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < records; i++) {
+            expected.merge(key(i % 500 * 10L, digests[i % 700]), 1, Integer::sum);
+        }
+        long expectedGroups = expected.values().stream().filter(count -> count > 1).count();
+        int expectedFiles = expected.values().stream().filter(count -> count > 1).mapToInt(Integer::intValue).sum();
+
+        Path workDirectory = Files.createTempDirectory("external-sort");
+        int[] files = {0};
+        boolean[] consistent = {true};
+        String[] previousKey = {""};
+
+        int groups;
+        int runs;
+        int passes;
+        try (ExternalDuplicateFinder finder = new ExternalDuplicateFinder(workDirectory, "MD5", 64 * 1024, 3)) {
+            finder.setMaxFanIn(8);
+
+            for (int i = 0; i < records; i++) {
+                finder.add(i % 500 * 10L, digests[i % 700], i);
+            }
+
+            groups = finder.findDuplicates((size, hexDigest, pathIds) -> {
+                files[0] += pathIds.length;
+                for (int pathId : pathIds) {
+                    consistent[0] &= pathId % 500 * 10L == size && digests[pathId % 700].equals(hexDigest);
+                }
+                // группы идут по возрастанию (размер, хеш)
+                String key = String.format("%020d:%s", size, hexDigest);
+                consistent[0] &= key.compareTo(previousKey[0]) > 0;
+                previousKey[0] = key;
+            });
+            runs = finder.getRunCount();
+            passes = finder.getMergePasses();
+        }
+
+        boolean cleaned;
+        try (var remaining = Files.list(workDirectory)) {
+            cleaned = remaining.findAny().isEmpty();
+        }
+        Files.deleteIfExists(workDirectory);
+
+        System.out.printf("Прогонов: %d, проходов слияния: %d, групп: %d, файлов: %d%n", runs, passes, groups, files[0]);
+
+        if (groups == expectedGroups && files[0] == expectedFiles && consistent[0]
+                && runs > 8 && passes > 1 && cleaned) {
+            System.out.println("✅ Внешняя сортировка нашла те же группы, временные файлы удалены");
+        } else {
+            System.out.printf("❌ Ожидалось %d групп и %d файлов, согласованность: %b, очищено: %b%n",
+                    expectedGroups, expectedFiles, consistent[0], cleaned);
+        }
+    }
+
+    private static String key(long size, String digest) {
+        return size + ":" + digest;
+    }
+}
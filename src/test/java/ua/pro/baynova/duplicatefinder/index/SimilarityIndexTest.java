@@ -0,0 +1,120 @@
+package ua.pro.baynova.duplicatefinder.index;
+
+import ua.pro.baynova.duplicatefinder.hash.HashCalculator;
+import ua.pro.baynova.duplicatefinder.hash.MinHashSketcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+public class SimilarityIndexTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем SimilarityIndex ===\n");
+
+        testSimilarFilesFound();
+        testRemove();
+        testSignatureLengthChecked();
+
+        System.out.println("\n✅ Все тесты SimilarityIndex пройдены!");
+    }
+
+    private static void testSimilarFilesFound() {
+        System.out.println("--- Тест 1: Поиск похожих файлов ---");
+
+        try {
+            byte[] base = randomBytes(512 * 1024, 42);
+
+            byte[] edited = new byte[base.length + 100];
+            System.arraycopy(base, 0, edited, 0, 200 * 1024);
+            System.arraycopy(randomBytes(100, 7), 0, edited, 200 * 1024, 100);
+            System.arraycopy(base, 200 * 1024, edited, 200 * 1024 + 100, base.length - 200 * 1024);
+
+            File original = createTempFile("similar_original", base);
+            File modified = createTempFile("similar_modified", edited);
+            File different = createTempFile("similar_different", randomBytes(512 * 1024, 99));
+
+            SimilarityIndex index = new SimilarityIndex();
+            HashCalculator calculator = new HashCalculator();
+
+            for (File file : new File[]{original, modified, different}) {
+                MinHashSketcher sketcher = new MinHashSketcher(index.getSignatureLength());
+                calculator.calculateHash(file, sketcher);
+                index.addOrUpdate(file.getAbsolutePath(), sketcher.finish());
+            }
+
+            List<SimilarityIndex.SimilarFile> similar = index.findSimilar(original.getAbsolutePath(), 0.8);
+            System.out.println("Похожие на оригинал: " + similar);
+
+            if (similar.size() == 1 && similar.get(0).getPath().equals(modified.getAbsolutePath())) {
+                System.out.println("✅ Измененная копия найдена, другой файл отсеян");
+            } else {
+                System.out.println("❌ Неверный набор похожих файлов");
+            }
+
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+        }
+
+        System.out.println();
+    }
+
+    private static void testRemove() {
+        System.out.println("--- Тест 2: Удаление из индекса ---");
+
+        SimilarityIndex index = new SimilarityIndex();
+        MinHashSketcher sketcher = new MinHashSketcher(index.getSignatureLength());
+        byte[] data = randomBytes(64 * 1024, 1);
+        sketcher.update(data, 0, data.length);
+
+        index.addOrUpdate("/a.bin", sketcher.finish());
+        index.addOrUpdate("/b.bin", index.getSignature("/a.bin"));
+
+        boolean foundBefore = !index.findSimilar("/a.bin", 0.9).isEmpty();
+        index.remove("/b.bin");
+        boolean foundAfter = !index.findSimilar("/a.bin", 0.9).isEmpty();
+
+        if (foundBefore && !foundAfter && index.size() == 1) {
+            System.out.println("✅ Удаление работает");
+        } else {
+            System.out.println("❌ Проблема с удалением");
+        }
+
+        System.out.println();
+    }
+
+    private static void testSignatureLengthChecked() {
+        System.out.println("--- Тест 3: Сигнатура другой длины ---");
+
+        SimilarityIndex index = new SimilarityIndex();
+        MinHashSketcher sketcher = new MinHashSketcher(index.getSignatureLength() / 2);
+        byte[] data = randomBytes(4 * 1024, 2);
+        sketcher.update(data, 0, data.length);
+
+        try {
+            index.findSimilar(sketcher.finish(), 0.5);
+            System.out.println("❌ Короткая сигнатура не отклонена");
+        } catch (IllegalArgumentException e) {
+            System.out.println("✅ Короткая сигнатура отклонена: " + e.getMessage());
+        }
+
+        System.out.println();
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static File createTempFile(String prefix, byte[] content) throws IOException {
+        File file = File.createTempFile(prefix, ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+}
@@ -1,8 +1,16 @@
 package ua.pro.baynova.duplicatefinder.index;
 
 import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.stream.Collectors;
 
 public class SimpleFileIndexTest {
 
@@ -13,6 +21,11 @@ public class SimpleFileIndexTest {
         testDuplicateDetection();
         testStatistics();
         testEdgeCases();
+        testParallelMatchesSequential();
+        testTopKAndPagination();
+        testScopedQueries();
+        testPrimaryDigest();
+        testTimesIndependentOfTimeZone();
 
         System.out.println("\n✅ Все тесты SimpleFileIndex пройдены!");
     }
@@ -250,4 +263,218 @@ public class SimpleFileIndexTest {
 
         System.out.println();
     }
+
+    private static void testParallelMatchesSequential() {
+        System.out.println("--- Тест 5: Параллельный поиск совпадает с последовательным ---");
+
+        SimpleFileIndex index = new SimpleFileIndex();
+        index.setVerbose(false);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 60000; i++) {
+            index.addOrUpdate(new FileInfo("/data/file" + i, "hash" + (i % 25000), 100 + i % 25000, now, now));
+        }
+
+        index.setParallelThreshold(Integer.MAX_VALUE);
+        long start = System.currentTimeMillis();
+        List<List<FileInfo>> sequential = index.findDuplicates();
+        SimpleFileIndex.IndexStatistics sequentialStats = index.getStatistics();
+        long sequentialTime = System.currentTimeMillis() - start;
+
+        index.setParallelThreshold(0);
+        start = System.currentTimeMillis();
+        List<List<FileInfo>> parallel = index.findDuplicates();
+        SimpleFileIndex.IndexStatistics parallelStats = index.getStatistics();
+        long parallelTime = System.currentTimeMillis() - start;
+
+        System.out.printf("Групп: %d, последовательно %d мс, параллельно %d мс%n",
+                parallel.size(), sequentialTime, parallelTime);
+
+        if (sequential.equals(parallel) && sequential.size() == 25000
+                && sequentialStats.toString().equals(parallelStats.toString())
+                && parallelStats.getDuplicateFiles() == 35000) {
+            System.out.println("✅ Группы, их порядок и статистика совпадают");
+        } else {
+            System.out.println("❌ Параллельный результат отличается от последовательного");
+        }
+
+        System.out.println();
+    }
+
+    private static void testTopKAndPagination() {
+        System.out.println("--- Тест 6: Первые K групп и постраничный обход ---");
+
+        SimpleFileIndex index = new SimpleFileIndex();
+        index.setVerbose(false);
+        long now = System.currentTimeMillis();
+
+        // группа i: (i % 5 + 2) файла размером (i * 37 % 101 + 1) байт
+        for (int i = 0; i < 50; i++) {
+            for (int copy = 0; copy < i % 5 + 2; copy++) {
+                index.addOrUpdate(new FileInfo("/g" + i + "/copy" + copy, "hash" + i, i * 37 % 101 + 1, now, now));
+            }
+        }
+        index.addOrUpdate(new FileInfo("/unique", "unique", 5000, now, now));
+
+        List<String> expected = index.findDuplicates().stream()
+                .sorted(Comparator.<List<FileInfo>>comparingLong(g -> g.get(0).getSize() * (g.size() - 1)).reversed()
+                        .thenComparing(g -> g.get(0).getHash()))
+                .map(g -> g.get(0).getHash())
+                .collect(Collectors.toList());
+
+        List<String> top = index.findTopDuplicateGroups(5, SimpleFileIndex.GroupRanking.WASTED_BYTES).stream()
+                .map(g -> g.get(0).getHash())
+                .collect(Collectors.toList());
+
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            SimpleFileIndex.DuplicatePage page = index.findDuplicatePage(
+                    SimpleFileIndex.GroupRanking.WASTED_BYTES, cursor, 7);
+            page.getGroups().forEach(g -> paged.add(g.get(0).getHash()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        String firstCursor = index.findDuplicatePage(SimpleFileIndex.GroupRanking.FILE_COUNT, null, 3).getNextCursor();
+        index.remove("/g0/copy0");
+        boolean stale = index.findDuplicatePage(SimpleFileIndex.GroupRanking.FILE_COUNT, firstCursor, 3).isStale();
+
+        System.out.println("Первые 5 по лишнему объему: " + top);
+
+        if (top.equals(expected.subList(0, 5)) && paged.equals(expected) && pages == 8 && stale) {
+            System.out.println("✅ Первые K и страницы совпадают с полной сортировкой, изменение индекса замечено");
+        } else {
+            System.out.printf("❌ Страниц %d, групп %d из %d, устаревание: %b%n", pages, paged.size(), expected.size(), stale);
+        }
+
+        System.out.println();
+    }
+
+    private static void testScopedQueries() {
+        System.out.println("--- Тест 7: Запросы по директории, расширению и размеру ---");
+
+        SimpleFileIndex plain = new SimpleFileIndex();
+        SimpleFileIndex indexed = new SimpleFileIndex();
+        indexed.enableSecondaryIndexes();
+        long now = System.currentTimeMillis();
+
+        for (SimpleFileIndex index : List.of(plain, indexed)) {
+            index.setVerbose(false);
+            index.addOrUpdate(new FileInfo("/projects/x/movie.MP4", "video", 4000, now, now));
+            index.addOrUpdate(new FileInfo("/backup/movie.mp4", "video", 4000, now, now));
+            index.addOrUpdate(new FileInfo("/projects/x/deep/notes.txt", "notes", 10, now, now));
+            index.addOrUpdate(new FileInfo("/projects/x/deep/notes-copy.txt", "notes", 10, now, now));
+            index.addOrUpdate(new FileInfo("/projects/xy/other.txt", "other", 10, now, now));
+            index.addOrUpdate(new FileInfo("/old/other.txt", "other", 10, now, now));
+            index.addOrUpdate(new FileInfo("/tmp/resized.bin", "resized", 1, now, now));
+            index.addOrUpdate(new FileInfo("/tmp/resized.bin", "resized", 4000, now, now));
+        }
+
+        boolean consistent = true;
+        String summary = "";
+        for (SimpleFileIndex index : List.of(plain, indexed)) {
+            List<String> underX = index.findDuplicates(IndexScope.underDirectory("/projects/x/")).stream()
+                    .map(group -> group.get(0).getHash()).collect(Collectors.toList());
+            List<String> mp4 = index.findDuplicates(IndexScope.withExtension(".mp4")).stream()
+                    .map(group -> group.get(0).getHash()).collect(Collectors.toList());
+            int ofSize = index.findInScope(IndexScope.ofSize(4000)).size();
+            int oldSize = index.findInScope(IndexScope.ofSize(1)).size();
+            List<FileInfo> backupCopies = index.findDuplicatesOf("/projects/x/movie.MP4", IndexScope.underDirectory("/backup"));
+
+            String current = underX + " " + mp4 + " " + ofSize + " " + oldSize + " " + backupCopies.size();
+            consistent &= summary.isEmpty() || summary.equals(current);
+            summary = current;
+        }
+
+        indexed.remove("/backup/movie.mp4");
+        boolean removed = indexed.findDuplicates(IndexScope.withExtension("mp4")).isEmpty();
+
+        System.out.println("Результат: " + summary);
+
+        if (consistent && summary.equals("[notes, video] [video] 3 0 1") && removed) {
+            System.out.println("✅ Вторичные индексы дают тот же результат, что и полный обход");
+        } else {
+            System.out.println("❌ Неверный результат запросов по области: " + summary);
+        }
+
+        System.out.println();
+    }
+
+    private static void testPrimaryDigest() {
+        System.out.println("--- Тест 8: Группировка по выбранному алгоритму ---");
+
+        SimpleFileIndex index = new SimpleFileIndex();
+        index.setVerbose(false);
+        long now = System.currentTimeMillis();
+
+        // по MD5 совпадают все три файла, по SHA-256 - только первые два
+        index.addOrUpdate(new FileInfo("/d/a.bin", "md5-same", 100, now, now, Map.of("MD5", "md5-same", "SHA-256", "sha-1")));
+        index.addOrUpdate(new FileInfo("/d/b.bin", "md5-same", 100, now, now, Map.of("MD5", "md5-same", "SHA-256", "sha-1")));
+        index.addOrUpdate(new FileInfo("/d/c.bin", "md5-same", 100, now, now, Map.of("MD5", "md5-same", "SHA-256", "sha-2")));
+
+        boolean byMd5 = index.findDuplicates().size() == 1 && index.findDuplicates().get(0).size() == 3;
+
+        index.setPrimaryDigest("SHA-256");
+        boolean bySha = index.findDuplicates().size() == 1 && index.findDuplicates().get(0).size() == 2
+                && index.findByHash("sha-1").size() == 2 && index.findDuplicatesOf("/d/c.bin").isEmpty();
+
+        boolean restored = false;
+        try {
+            Path file = Files.createTempFile("primary-digest", ".idx");
+            IndexStorage.save(index, file);
+            SimpleFileIndex loaded = IndexStorage.load(file);
+            Files.deleteIfExists(file);
+
+            restored = "SHA-256".equals(loaded.getPrimaryDigest())
+                    && loaded.findDuplicates().get(0).size() == 2
+                    && loaded.getByPath("/d/c.bin").getDigest("SHA-256").equals("sha-2");
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка сохранения: " + e.getMessage());
+        }
+
+        if (byMd5 && bySha && restored) {
+            System.out.println("✅ Ключ группировки переключается без перечитывания, хеши сохраняются в файле индекса");
+        } else {
+            System.out.printf("❌ MD5: %b, SHA-256: %b, загрузка: %b%n", byMd5, bySha, restored);
+        }
+
+        System.out.println();
+    }
+
+    private static void testTimesIndependentOfTimeZone() {
+        System.out.println("--- Тест 9: Время в файле индекса не зависит от часового пояса ---");
+
+        TimeZone original = TimeZone.getDefault();
+        boolean same = false;
+        try {
+            Path file = Files.createTempFile("time-zone", ".idx");
+
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Kyiv"));
+            SimpleFileIndex index = new SimpleFileIndex();
+            index.setVerbose(false);
+            index.addOrUpdate(new FileInfo("/tz/a.txt", "hash", 10, 1700000000123L, FileInfo.NO_TIME));
+            IndexStorage.save(index, file);
+
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            FileInfo loaded = IndexStorage.load(file).getByPath("/tz/a.txt");
+            Files.deleteIfExists(file);
+
+            same = loaded.getLastModifiedMillis() == 1700000000123L
+                    && loaded.getIndexedAtMillis() == FileInfo.NO_TIME;
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка сохранения: " + e.getMessage());
+        } finally {
+            TimeZone.setDefault(original);
+        }
+
+        if (same) {
+            System.out.println("✅ Миллисекунды эпохи сохраняются без изменений");
+        } else {
+            System.out.println("❌ Время изменилось после загрузки в другом часовом поясе");
+        }
+
+        System.out.println();
+    }
 }
@@ -11,6 +11,7 @@ public class FileInfoTest {
         testValidation();
         testNeedsReindexing();
         testFileNameExtraction();
+        testMillisecondPrecision();
 
         System.out.println("\n✅ Все тесты FileInfo пройдены!");
     }
@@ -122,4 +123,23 @@ public class FileInfoTest {
 
         System.out.println("✅ Извлечение имени файла работает\n");
     }
+
+    private static void testMillisecondPrecision() {
+        System.out.println("--- Тест 5: Время хранится с точностью до миллисекунды ---");
+
+        LocalDateTime modified = LocalDateTime.of(2024, 1, 1, 12, 0, 0, 123_456_789);
+        FileInfo fileInfo = new FileInfo("/test.txt", "hash", 100, modified, modified);
+
+        LocalDateTime expected = LocalDateTime.of(2024, 1, 1, 12, 0, 0, 123_000_000);
+        boolean truncated = expected.equals(fileInfo.getLastModified()) && expected.equals(fileInfo.getIndexedAt());
+        boolean sameMillisecond = !fileInfo.needsReindexing(modified.plusNanos(500_000));
+        boolean nextMillisecond = fileInfo.needsReindexing(modified.plusNanos(1_000_000));
+
+        if (truncated && sameMillisecond && nextMillisecond) {
+            System.out.println("✅ Доли миллисекунды отброшены, сравнение по миллисекундам\n");
+        } else {
+            System.out.printf("❌ Усечение: %b, та же миллисекунда: %b, следующая: %b%n%n",
+                    truncated, sameMillisecond, nextMillisecond);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package ua.pro.baynova.duplicatefinder.report;
+
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public class DuplicateReportWriterTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем DuplicateReportWriter ===\n");
+
+        try {
+            SimpleFileIndex index = createIndex();
+            testJsonLinesSortedByWaste(index);
+            testCsvEscaping(index);
+            testPrimaryDigestKey();
+            System.out.println("\n✅ Все тесты DuplicateReportWriter пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testJsonLinesSortedByWaste(SimpleFileIndex index) throws Exception {
+        System.out.println("--- Тест 1: JSON Lines по убыванию лишнего объема ---");
+
+        Path report = Files.createTempFile("duplicates", ".jsonl");
+        report.toFile().deleteOnExit();
+
+        DuplicateReportWriter writer = DuplicateReportWriter.writeReport(
+                index, report, DuplicateReportWriter.Format.JSON_LINES, true);
+        List<String> lines = Files.readAllLines(report);
+
+        lines.forEach(line -> System.out.println("  " + line));
+
+        if (lines.size() == 2 && writer.getWastedBytes() == 2000 + 300
+                && lines.get(0).contains("\"hash\":\"big\"") && lines.get(0).contains("\"wastedBytes\":2000")
+                && lines.get(1).contains("\"count\":4")) {
+            System.out.println("✅ Группы записаны построчно, крупнейшие потери первыми");
+        } else {
+            System.out.println("❌ Неверный JSON Lines отчет");
+        }
+
+        System.out.println();
+    }
+
+    private static void testCsvEscaping(SimpleFileIndex index) throws Exception {
+        System.out.println("--- Тест 2: CSV с экранированием ---");
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DuplicateReportWriter writer = new DuplicateReportWriter(buffer, DuplicateReportWriter.Format.CSV)) {
+            writer.writeIndex(index, false);
+        }
+
+        String[] rows = buffer.toString(StandardCharsets.UTF_8).split("\n");
+
+        if (rows.length == 1 + 6 && rows[0].startsWith("group,hash")
+                && buffer.toString(StandardCharsets.UTF_8).contains("\"/data/a,b \"\"quoted\"\".txt\"")) {
+            System.out.println("✅ Одна строка на файл, поля с запятыми и кавычками экранированы");
+        } else {
+            System.out.println("❌ Неверный CSV:\n" + buffer.toString(StandardCharsets.UTF_8));
+        }
+
+        System.out.println();
+    }
+
+    private static void testPrimaryDigestKey() throws Exception {
+        System.out.println("--- Тест 3: Хеш группы по ключу группировки индекса ---");
+
+        SimpleFileIndex index = new SimpleFileIndex();
+        index.setVerbose(false);
+        long now = System.currentTimeMillis();
+        index.addOrUpdate(new FileInfo("/data/one.bin", "md5-one", 10, now, now, Map.of("SHA-256", "sha-same")));
+        index.addOrUpdate(new FileInfo("/data/two.bin", "md5-two", 10, now, now, Map.of("SHA-256", "sha-same")));
+        index.setPrimaryDigest("SHA-256");
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (DuplicateReportWriter writer = new DuplicateReportWriter(json, DuplicateReportWriter.Format.JSON_LINES)) {
+            writer.writeIndex(index, false);
+        }
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        try (DuplicateReportWriter writer = new DuplicateReportWriter(csv, DuplicateReportWriter.Format.CSV)) {
+            writer.writeIndex(index, true);
+        }
+
+        String jsonText = json.toString(StandardCharsets.UTF_8);
+        String csvText = csv.toString(StandardCharsets.UTF_8);
+
+        if (jsonText.contains("\"hash\":\"sha-same\"") && csvText.contains("1,sha-same,10")
+                && !csvText.contains("md5-")) {
+            System.out.println("✅ В отчете ключ группы, а не основной хеш файла");
+        } else {
+            System.out.println("❌ Неверный хеш группы:\n" + jsonText + csvText);
+        }
+
+        System.out.println();
+    }
+
+    private static SimpleFileIndex createIndex() {
+        SimpleFileIndex index = new SimpleFileIndex();
+        index.setVerbose(false);
+        LocalDateTime now = LocalDateTime.now();
+
+        index.addOrUpdate(new FileInfo("/data/small1.txt", "small", 100, now, now));
+        index.addOrUpdate(new FileInfo("/data/small2.txt", "small", 100, now, now));
+        index.addOrUpdate(new FileInfo("/data/small3.txt", "small", 100, now, now));
+        index.addOrUpdate(new FileInfo("/data/a,b \"quoted\".txt", "small", 100, now, now));
+        index.addOrUpdate(new FileInfo("/data/big1.bin", "big", 2000, now, now));
+        index.addOrUpdate(new FileInfo("/data/big2.bin", "big", 2000, now, now));
+        index.addOrUpdate(new FileInfo("/data/unique.txt", "unique", 50, now, now));
+        return index;
+    }
+}
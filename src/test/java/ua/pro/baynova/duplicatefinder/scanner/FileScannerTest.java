@@ -1,7 +1,18 @@
 package ua.pro.baynova.duplicatefinder.scanner;
 
+import ua.pro.baynova.duplicatefinder.hash.HashCalculator;
+
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 public class FileScannerTest {
 
@@ -11,6 +22,11 @@ public class FileScannerTest {
         testBasicScanning();
         testWithFilters();
         testErrorHandling();
+        testArchiveScanning();
+        testStreamingScan();
+        testScanFilterAndPruning();
+        testBatchScanning();
+        testGlobCharacterClasses();
 
         System.out.println("\n✅ Все тесты FileScanner пройдены!");
     }
@@ -117,8 +133,202 @@ public class FileScannerTest {
         System.out.println();
     }
 
+    private static void testArchiveScanning() {
+        System.out.println("--- Тест 4: Сканирование архивов ---");
+
+        try {
+            Path dir = Files.createTempDirectory("scanner_archive");
+            dir.toFile().deleteOnExit();
+
+            byte[] content = "Shared content inside and outside archive".getBytes(StandardCharsets.UTF_8);
+            Path loose = dir.resolve("loose.txt");
+            Files.write(loose, content);
+            loose.toFile().deleteOnExit();
+
+            Path archive = dir.resolve("bundle.zip");
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+                zip.putNextEntry(new ZipEntry("inner/copy.txt"));
+                zip.write(content);
+                zip.closeEntry();
+            }
+            archive.toFile().deleteOnExit();
+
+            FileScanner scanner = new FileScanner(null, false, 10, true);
+            List<FileScanner.FileTask> files = scanner.scanDirectory(dir.toString());
+
+            String entryPath = ArchivePath.of(archive.toAbsolutePath().toString(), "inner/copy.txt");
+            boolean entryFound = files.stream().anyMatch(file -> file.getPath().equals(entryPath));
+
+            HashCalculator calculator = new HashCalculator();
+            boolean sameHash = calculator.calculateHash(entryPath)
+                    .equals(calculator.calculateHash(loose.toString()));
+
+            if (files.size() == 3 && entryFound && sameHash) {
+                System.out.println("✅ Запись архива найдена и совпадает с обычным файлом");
+            } else {
+                System.out.println("❌ Проблема со сканированием архива: " + files);
+            }
+
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка теста архивов: " + e.getMessage());
+        }
+
+        System.out.println();
+    }
+
+    private static void testStreamingScan() {
+        System.out.println("--- Тест 5: Ленивое потоковое сканирование ---");
+
+        FileScanner scanner = new FileScanner();
+
+        try {
+            List<String> eager = scanner.scanDirectory(".").stream()
+                    .map(FileScanner.FileTask::getPath)
+                    .collect(Collectors.toList());
+
+            List<String> lazy;
+            try (Stream<FileScanner.FileTask> stream = scanner.streamDirectory(".")) {
+                lazy = stream.map(FileScanner.FileTask::getPath).collect(Collectors.toList());
+            }
+
+            List<FileScanner.FileTask> firstTwo;
+            try (Stream<FileScanner.FileTask> stream = scanner.streamDirectory(".")) {
+                firstTwo = stream.limit(2).collect(Collectors.toList());
+            }
+
+            if (eager.equals(lazy) && firstTwo.size() == Math.min(2, eager.size())) {
+                System.out.println("✅ Поток выдает те же файлы и останавливается досрочно");
+            } else {
+                System.out.println("❌ Потоковое сканирование отличается: " + eager.size() + " vs " + lazy.size());
+            }
+
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка потокового сканирования: " + e.getMessage());
+        }
+
+        System.out.println();
+    }
+
+    private static void testScanFilterAndPruning() {
+        System.out.println("--- Тест 6: Фильтр по атрибутам и отсечение директорий ---");
+
+        try {
+            Path root = Files.createTempDirectory("scan_filter");
+            Files.createDirectories(root.resolve("node_modules/lib"));
+            Files.createDirectories(root.resolve(".git"));
+            Files.createDirectories(root.resolve("src"));
+            Files.writeString(root.resolve("node_modules/lib/index.js"), "module code");
+            Files.writeString(root.resolve(".git/config"), "git config");
+            Files.writeString(root.resolve("src/Main.java"), "class Main {}");
+            Files.writeString(root.resolve("src/notes.TXT"), "notes");
+            Files.writeString(root.resolve("src/empty.java"), "");
+            Files.writeString(root.resolve("src/Main.class"), "bytecode");
+
+            ScanFilter filter = ScanFilter.builder()
+                    .minSize(1)
+                    .includeExtensions("java", ".txt")
+                    .excludeNameGlob("*Test*.java")
+                    .pruneDirectories("node_modules")
+                    .pruneHiddenDirectories()
+                    .build();
+
+            List<String> found = new FileScanner(filter, null, false, 20, false).scanDirectory(root.toString()).stream()
+                    .map(task -> getFileName(task.getPath()))
+                    .sorted()
+                    .collect(Collectors.toList());
+
+            // корень с подходящим под правило именем все равно обходится
+            int fromPrunedRoot = new FileScanner(ScanFilter.builder().pruneDirectories("node_modules").build(), null,
+                    false, 20, false).scanDirectory(root.resolve("node_modules").toString()).size();
+
+            System.out.println("Найдено: " + found);
+
+            if (found.equals(List.of("Main.java", "notes.TXT")) && fromPrunedRoot == 1
+                    && ScanFilter.globToRegex("*.{jpg,png}").equals(".*\\.(?:jpg|png)")) {
+                System.out.println("✅ Фильтр применен по атрибутам, поддеревья отсечены");
+            } else {
+                System.out.println("❌ Неверный результат фильтрации: " + found + ", корень: " + fromPrunedRoot);
+            }
+
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка теста фильтра: " + e.getMessage());
+        }
+
+        System.out.println();
+    }
+
+    private static void testBatchScanning() {
+        System.out.println("--- Тест 7: Компактные пакеты сканирования ---");
+
+        try {
+            Path root = Files.createTempDirectory("scan_batches");
+            for (int i = 0; i < 25; i++) {
+                Files.writeString(root.resolve("file_" + i + ".txt"), "content " + i);
+            }
+
+            PathTable paths = new PathTable(4);
+            List<ScanBatch> batches = new ArrayList<>();
+            int found = new FileScanner().scanBatches(root.toString(), paths, 10, batches::add);
+
+            List<FileScanner.FileTask> tasks = new FileScanner().scanDirectory(root.toString());
+            boolean sameAsTasks = true;
+            for (ScanBatch batch : batches) {
+                for (int i = 0; i < batch.size(); i++) {
+                    FileScanner.FileTask task = batch.toTask(i);
+                    Path file = Path.of(task.getPath());
+                    sameAsTasks &= tasks.stream().anyMatch(t -> t.getPath().equals(task.getPath())
+                            && t.getSize() == task.getSize()
+                            && t.getLastModifiedMillis() == task.getLastModifiedMillis())
+                            && Files.getLastModifiedTime(file).toMillis() == batch.getLastModifiedMillis(i);
+                }
+            }
+
+            System.out.printf("Пакетов: %d, путей: %d, память таблицы путей: %d байт%n",
+                    batches.size(), paths.size(), paths.getMemoryBytes());
+
+            if (found == 25 && batches.size() == 3 && batches.get(2).size() == 5
+                    && paths.size() == 25 && sameAsTasks) {
+                System.out.println("✅ Пакеты совпадают с обычным сканированием");
+            } else {
+                System.out.println("❌ Неверные пакеты: найдено " + found + ", пакетов " + batches.size());
+            }
+
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+            }
+
+        } catch (IOException e) {
+            System.err.println("❌ Ошибка пакетного сканирования: " + e.getMessage());
+        }
+
+        System.out.println();
+    }
+
     private static String getFileName(String path) {
         int lastSeparator = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\'));
         return lastSeparator >= 0 ? path.substring(lastSeparator + 1) : path;
     }
+
+    private static void testGlobCharacterClasses() {
+        System.out.println("--- Тест 8: Классы символов в glob ---");
+
+        Pattern negated = Pattern.compile(ScanFilter.globToRegex("file[!abc].txt"));
+        Pattern caret = Pattern.compile(ScanFilter.globToRegex("v[^1].txt"));
+        Pattern range = Pattern.compile(ScanFilter.globToRegex("img[0-9].jpg"));
+
+        boolean negatedRight = negated.matcher("filed.txt").matches()
+                && !negated.matcher("filea.txt").matches()
+                && !negated.matcher("fileb.txt").matches();
+        boolean caretRight = caret.matcher("v^.txt").matches() && caret.matcher("v1.txt").matches()
+                && !caret.matcher("v2.txt").matches();
+        boolean rangeRight = range.matcher("img7.jpg").matches() && !range.matcher("imgx.jpg").matches();
+
+        if (negatedRight && caretRight && rangeRight) {
+            System.out.println("✅ [!..] исключает символы, ^ внутри класса буквальный");
+        } else {
+            System.out.printf("❌ Отрицание: %b, ^: %b, диапазон: %b%n", negatedRight, caretRight, rangeRight);
+        }
+
+        System.out.println();
+    }
 }
\ No newline at end of file
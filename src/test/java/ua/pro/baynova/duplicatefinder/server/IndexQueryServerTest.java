@@ -0,0 +1,102 @@
+package ua.pro.baynova.duplicatefinder.server;
+
+import ua.pro.baynova.duplicatefinder.index.IndexStorage;
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+public class IndexQueryServerTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем IndexQueryServer ===\n");
+        // то же, что флаг -Dsun.net.httpserver.nodelay=true: без него каждый ответ ждет delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        try {
+            SimpleFileIndex index = testStorageRoundTrip();
+            testQueriesAndLoad(index);
+            System.out.println("\n✅ Все тесты IndexQueryServer пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static SimpleFileIndex testStorageRoundTrip() throws Exception {
+        System.out.println("--- Тест 1: Сохранение и загрузка индекса ---");
+
+        SimpleFileIndex index = new SimpleFileIndex();
+        index.setVerbose(false);
+        LocalDateTime now = LocalDateTime.now();
+
+        for (int i = 0; i < 10_000; i++) {
+            index.addOrUpdate(new FileInfo("/data/file" + i + ".bin", "hash" + (i % 5000), 1000 + i % 5000, now, now));
+        }
+
+        Path file = Files.createTempFile("index", ".dfi");
+        file.toFile().deleteOnExit();
+        IndexStorage.save(index, file);
+
+        SimpleFileIndex loaded = IndexStorage.load(file);
+        FileInfo original = index.getByPath("/data/file42.bin");
+
+        if (loaded.size() == index.size() && original.equals(loaded.getByPath("/data/file42.bin"))
+                && loaded.findDuplicates().size() == 5000) {
+            System.out.println("✅ Загруженный индекс совпадает с сохраненным");
+        } else {
+            System.out.println("❌ Загруженный индекс отличается");
+        }
+
+        System.out.println();
+        return loaded;
+    }
+
+    private static void testQueriesAndLoad(SimpleFileIndex index) throws Exception {
+        System.out.println("--- Тест 2: Запросы и нагрузка ---");
+
+        try (IndexQueryServer server = new IndexQueryServer(index, 0, 4)) {
+            server.start();
+            String base = "http://127.0.0.1:" + server.getPort();
+
+            String lookup = get(base + "/hash/hash7");
+            String duplicates = get(base + "/duplicates?path=%2Fdata%2Ffile7.bin");
+            String missing = get(base + "/hash/nothing");
+            String stats = get(base + "/stats");
+
+            if (lookup.contains("\"exists\":true") && lookup.contains("/data/file5007.bin")
+                    && duplicates.contains("/data/file5007.bin")
+                    && missing.contains("\"exists\":false")
+                    && stats.contains("\"totalFiles\":10000")) {
+                System.out.println("✅ Ответы сервера корректны");
+            } else {
+                System.out.println("❌ Неверные ответы сервера:\n" + lookup + "\n" + duplicates + "\n" + stats);
+            }
+
+            QueryLoadGenerator generator = new QueryLoadGenerator(
+                    server.getPort(), index, index.getAllFiles().subList(0, 1000), 4);
+            generator.run(500);
+            QueryLoadGenerator.LoadReport report = generator.run(2000);
+            System.out.println(report);
+
+            if (report.getErrors() == 0) {
+                System.out.println("✅ Нагрузка обработана без ошибок");
+            } else {
+                System.out.println("❌ Ошибок под нагрузкой: " + report.getErrors());
+            }
+        }
+
+        System.out.println();
+    }
+
+    private static String get(String url) throws Exception {
+        try (InputStream in = URI.create(url).toURL().openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
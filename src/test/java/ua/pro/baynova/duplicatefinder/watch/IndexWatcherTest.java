@@ -0,0 +1,154 @@
+package ua.pro.baynova.duplicatefinder.watch;
+
+import ua.pro.baynova.duplicatefinder.concurrent.MultiThreadFileIndexer;
+import ua.pro.baynova.duplicatefinder.concurrent.MultiThreadHashCalculator;
+import ua.pro.baynova.duplicatefinder.index.SimpleFileIndex;
+import ua.pro.baynova.duplicatefinder.model.FileInfo;
+import ua.pro.baynova.duplicatefinder.scanner.FileScanner;
+import ua.pro.baynova.duplicatefinder.scanner.ScanFilter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+public class IndexWatcherTest {
+
+    public static void main(String[] args) {
+        System.out.println("=== Тестируем IndexWatcher ===\n");
+
+        try {
+            testIncrementalUpdates();
+            testPrunedDirectories();
+            testFailedBatchRetried();
+            System.out.println("\n✅ Все тесты IndexWatcher пройдены!");
+        } catch (Exception e) {
+            System.err.println("❌ Ошибка теста: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static void testIncrementalUpdates() throws Exception {
+        System.out.println("--- Тест 1: Инкрементальное обновление индекса ---");
+
+        Path dir = Files.createTempDirectory("watch_test");
+        Path original = dir.resolve("original.txt");
+        Files.writeString(original, "watched duplicate content");
+
+        MultiThreadFileIndexer indexer = new MultiThreadFileIndexer(2);
+
+        try (IndexWatcher watcher = indexer.watchDirectory(dir.toString())) {
+            SimpleFileIndex index = indexer.getFileIndex();
+
+            Path copy = dir.resolve("copy.txt");
+            Files.writeString(copy, "watched duplicate content");
+
+            boolean added = waitFor(() -> index.findDuplicatesOf(original.toString()).size() == 1);
+            System.out.println(added ? "✅ Новый дубликат попал в индекс"
+                    : "❌ Новый файл не был проиндексирован");
+
+            Files.delete(copy);
+
+            boolean removed = waitFor(() -> !index.contains(copy.toString()) && watcher.getRemovedFiles() == 1);
+            System.out.println(removed ? "✅ Удаленный файл исчез из индекса"
+                    : "❌ Удаленный файл остался в индексе");
+        } finally {
+            Files.deleteIfExists(original);
+            Files.deleteIfExists(dir);
+        }
+
+        System.out.println();
+    }
+
+    private static void testPrunedDirectories() throws Exception {
+        System.out.println("--- Тест 2: Отсеченные директории не отслеживаются ---");
+
+        Path dir = Files.createTempDirectory("watch_prune");
+        Files.createDirectories(dir.resolve("node_modules/pkg"));
+        Files.writeString(dir.resolve("main.txt"), "project file");
+
+        MultiThreadFileIndexer indexer = new MultiThreadFileIndexer(2);
+        indexer.setScanFilter(ScanFilter.builder().pruneDirectories("node_modules").build());
+
+        try (IndexWatcher watcher = indexer.watchDirectory(dir.toString())) {
+            SimpleFileIndex index = indexer.getFileIndex();
+
+            // файл в уже существующей отсеченной директории и в новой, созданной после запуска
+            Files.writeString(dir.resolve("node_modules/pkg/index.js"), "module code");
+            Files.createDirectories(dir.resolve("lib/node_modules"));
+            Files.writeString(dir.resolve("lib/node_modules/dep.js"), "dependency code");
+            // обычный файл после них - когда он появился в индексе, пачка уже применена
+            Files.writeString(dir.resolve("lib/util.txt"), "utility file");
+
+            boolean applied = waitFor(() -> index.contains(dir.resolve("lib/util.txt").toString()));
+            Thread.sleep(1000);
+
+            if (applied && index.size() == 2) {
+                System.out.println("✅ Файлы в node_modules не попали в индекс");
+            } else {
+                System.out.println("❌ Пачка применена: " + applied + ", файлов в индексе: " + index.size());
+            }
+        } finally {
+            deleteTree(dir);
+        }
+
+        System.out.println();
+    }
+
+    private static void testFailedBatchRetried() throws Exception {
+        System.out.println("--- Тест 3: Пачка с ошибкой применяется повторно ---");
+
+        Path dir = Files.createTempDirectory("watch_retry");
+        SimpleFileIndex index = new SimpleFileIndex();
+        AtomicInteger calls = new AtomicInteger(0);
+
+        // первая пачка падает при хешировании
+        MultiThreadHashCalculator failingOnce = new MultiThreadHashCalculator(1, "MD5") {
+            @Override
+            public List<FileInfo> processFiles(List<FileScanner.FileTask> fileTasks) throws InterruptedException {
+                if (calls.incrementAndGet() == 1) {
+                    throw new IllegalStateException("сбой хеширования");
+                }
+                return super.processFiles(fileTasks);
+            }
+        };
+
+        try (IndexWatcher watcher = new IndexWatcher(index, new FileScanner(), failingOnce, 200, 1000)) {
+            watcher.start(dir.toString());
+            Path file = dir.resolve("late.txt");
+            Files.writeString(file, "file from the failed batch");
+
+            boolean retried = waitFor(() -> index.contains(file.toString()));
+            if (retried && calls.get() >= 2) {
+                System.out.println("✅ Изменения не потеряны после ошибки");
+            } else {
+                System.out.println("❌ Файл не попал в индекс, вызовов хеширования: " + calls.get());
+            }
+        } finally {
+            deleteTree(dir);
+        }
+
+        System.out.println();
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+}